@@ -25,6 +25,9 @@ import android.net.Uri;
 import android.os.Build;
 import android.os.Bundle;
 import android.os.Handler;
+import android.os.PowerManager;
+import android.os.Process;
+import android.os.SystemClock;
 import android.util.DisplayMetrics;
 import android.util.Log;
 import android.view.View;
@@ -38,8 +41,17 @@ import androidx.annotation.Nullable;
 import com.github.nkzawa.socketio.client.Socket;
 import com.test.myownrtcapp.webrtc.AppRTCAudioManager;
 import com.test.myownrtcapp.webrtc.AppRTCClient;
+import com.test.myownrtcapp.webrtc.CallBootstrapTimings;
+import com.test.myownrtcapp.webrtc.CallQualityMetrics;
+import com.test.myownrtcapp.webrtc.CallQualityReportStore;
+import com.test.myownrtcapp.webrtc.CallSetupTimeline;
+import com.test.myownrtcapp.webrtc.CallSetupTimelineStore;
+import com.test.myownrtcapp.webrtc.MappedY4mVideoCapturer;
 import com.test.myownrtcapp.webrtc.PeerConnectionClient;
+import com.test.myownrtcapp.webrtc.RtcStatsSnapshot;
+import com.test.myownrtcapp.webrtc.SyntheticVideoCapturer;
 import com.test.myownrtcapp.webrtc.WebRTCClient;
+import com.test.myownrtcapp.webrtc.Y4mVideoRecorder;
 import com.test.myownrtcapp.webrtc.util.AppRTCUtils;
 
 
@@ -48,26 +60,26 @@ import org.webrtc.Camera1Enumerator;
 import org.webrtc.Camera2Enumerator;
 import org.webrtc.CameraEnumerator;
 import org.webrtc.EglBase;
-import org.webrtc.FileVideoCapturer;
 import org.webrtc.IceCandidate;
 import org.webrtc.Logging;
 import org.webrtc.PeerConnectionFactory;
 import org.webrtc.RendererCommon.ScalingType;
 import org.webrtc.ScreenCapturerAndroid;
 import org.webrtc.SessionDescription;
-import org.webrtc.StatsReport;
 import org.webrtc.SurfaceViewRenderer;
 import org.webrtc.VideoCapturer;
-import org.webrtc.VideoFileRenderer;
-import org.webrtc.VideoFrame;
 import org.webrtc.VideoSink;
 
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
 
 /**
  * Activity for peer connection call setup, call waiting
@@ -101,6 +113,8 @@ public class CallActivity extends Activity implements AppRTCClient.SignalingEven
   public static final String EXTRA_AECDUMP_ENABLED = "org.appspot.apprtc.AECDUMP";
   public static final String EXTRA_SAVE_INPUT_AUDIO_TO_FILE_ENABLED =
       "org.appspot.apprtc.SAVE_INPUT_AUDIO_TO_FILE";
+  public static final String EXTRA_COMPRESS_SAVED_INPUT_AUDIO =
+      "org.appspot.apprtc.COMPRESS_SAVED_INPUT_AUDIO";
   public static final String EXTRA_OPENSLES_ENABLED = "org.appspot.apprtc.OPENSLES";
   public static final String EXTRA_DISABLE_BUILT_IN_AEC = "org.appspot.apprtc.DISABLE_BUILT_IN_AEC";
   public static final String EXTRA_DISABLE_BUILT_IN_AGC = "org.appspot.apprtc.DISABLE_BUILT_IN_AGC";
@@ -112,12 +126,19 @@ public class CallActivity extends Activity implements AppRTCClient.SignalingEven
   public static final String EXTRA_CMDLINE = "org.appspot.apprtc.CMDLINE";
   public static final String EXTRA_RUNTIME = "org.appspot.apprtc.RUNTIME";
   public static final String EXTRA_VIDEO_FILE_AS_CAMERA = "org.appspot.apprtc.VIDEO_FILE_AS_CAMERA";
+  // Motion complexity of generated frames used instead of a camera, e.g. "high".
+  public static final String EXTRA_SYNTHETIC_CAMERA = "org.appspot.apprtc.SYNTHETIC_CAMERA";
   public static final String EXTRA_SAVE_REMOTE_VIDEO_TO_FILE =
       "org.appspot.apprtc.SAVE_REMOTE_VIDEO_TO_FILE";
   public static final String EXTRA_SAVE_REMOTE_VIDEO_TO_FILE_WIDTH =
       "org.appspot.apprtc.SAVE_REMOTE_VIDEO_TO_FILE_WIDTH";
   public static final String EXTRA_SAVE_REMOTE_VIDEO_TO_FILE_HEIGHT =
       "org.appspot.apprtc.SAVE_REMOTE_VIDEO_TO_FILE_HEIGHT";
+  public static final String EXTRA_SAVE_LOCAL_VIDEO_TO_FILE =
+      "org.appspot.apprtc.SAVE_LOCAL_VIDEO_TO_FILE";
+  // Frame rate of the saved videos, 0 for every frame.
+  public static final String EXTRA_SAVE_VIDEO_TO_FILE_FPS =
+      "org.appspot.apprtc.SAVE_VIDEO_TO_FILE_FPS";
   public static final String EXTRA_USE_VALUES_FROM_INTENT =
       "org.appspot.apprtc.USE_VALUES_FROM_INTENT";
   public static final String EXTRA_DATA_CHANNEL_ENABLED = "org.appspot.apprtc.DATA_CHANNEL_ENABLED";
@@ -128,6 +149,16 @@ public class CallActivity extends Activity implements AppRTCClient.SignalingEven
   public static final String EXTRA_NEGOTIATED = "org.appspot.apprtc.NEGOTIATED";
   public static final String EXTRA_ID = "org.appspot.apprtc.ID";
   public static final String EXTRA_ENABLE_RTCEVENTLOG = "org.appspot.apprtc.ENABLE_RTCEVENTLOG";
+  public static final String EXTRA_ICE_CANDIDATE_BATCH_WINDOW_MS =
+      "org.appspot.apprtc.ICE_CANDIDATE_BATCH_WINDOW_MS";
+  public static final String EXTRA_REUSE_PEER_CONNECTION_FACTORY =
+      "org.appspot.apprtc.REUSE_PEER_CONNECTION_FACTORY";
+  public static final String EXTRA_ICE_CANDIDATE_POOL_SIZE =
+      "org.appspot.apprtc.ICE_CANDIDATE_POOL_SIZE";
+  public static final String EXTRA_CAPTURE_DEGRADATION =
+      "org.appspot.apprtc.CAPTURE_DEGRADATION";
+  public static final String EXTRA_TRIGGERED_DIAGNOSTICS =
+      "org.appspot.apprtc.TRIGGERED_DIAGNOSTICS";
 
   private static final int CAPTURE_PERMISSION_REQUEST_CODE = 1;
 
@@ -137,39 +168,31 @@ public class CallActivity extends Activity implements AppRTCClient.SignalingEven
 
   // Peer connection statistics callback period in ms.
   private static final int STAT_CALLBACK_PERIOD = 1000;
-
-  private static class ProxyVideoSink implements VideoSink {
-    private VideoSink target;
-
-    @Override
-    synchronized public void onFrame(VideoFrame frame) {
-      if (target == null) {
-        Logging.d(TAG, "Dropping frame in proxy because target is null.");
-        return;
-      }
-
-      target.onFrame(frame);
-    }
-
-    synchronized public void setTarget(VideoSink target) {
-      this.target = target;
-    }
-  }
+  // Queues of the remote video consumers while it is also saved to a file.
+  private static final int DISPLAY_QUEUE_FRAMES = 2;
+  private static final int RECORDING_QUEUE_FRAMES = 8;
+  private static final long RECORDING_BLOCK_TIMEOUT_MS = 10;
 
   private final ProxyVideoSink remoteProxyRenderer = new ProxyVideoSink();
   private final ProxyVideoSink localProxyVideoSink = new ProxyVideoSink();
-  @Nullable private PeerConnectionClient peerConnectionClient;
+  // Used from both the UI thread and the call controller thread.
+  @Nullable private volatile PeerConnectionClient peerConnectionClient;
   @Nullable
-  private AppRTCClient appRtcClient;
+  private volatile AppRTCClient appRtcClient;
   @Nullable
-  private AppRTCClient.SignalingParameters signalingParameters;
+  private volatile AppRTCClient.SignalingParameters signalingParameters;
   @Nullable private AppRTCAudioManager audioManager;
   @Nullable
   private SurfaceViewRenderer pipRenderer;
   @Nullable
   private SurfaceViewRenderer fullscreenRenderer;
   @Nullable
-  private VideoFileRenderer videoFileRenderer;
+  private volatile Y4mVideoRecorder remoteVideoRecorder;
+  @Nullable
+  private volatile Y4mVideoRecorder localVideoRecorder;
+  // Feeds the display and the video file on their own threads.
+  @Nullable
+  private volatile FanOutVideoSink remoteFanOut;
   private final List<VideoSink> remoteSinks = new ArrayList<>();
   private Toast logToast;
   private boolean commandLineRun;
@@ -177,10 +200,32 @@ public class CallActivity extends Activity implements AppRTCClient.SignalingEven
   private AppRTCClient.RoomConnectionParameters roomConnectionParameters;
   @Nullable
   private PeerConnectionClient.PeerConnectionParameters peerConnectionParameters;
-  private boolean connected;
-  private boolean isError;
+  private volatile boolean connected;
+  private volatile boolean isError;
   private boolean callControlFragmentVisible = true;
   private long callStartedTimeMs;
+  private long roomJoinedTimeMs;
+  private final CallBootstrapTimings bootstrapTimings = new CallBootstrapTimings();
+  private final CallSetupTimeline callSetupTimeline = new CallSetupTimeline();
+  private final CallQualityMetrics callQualityMetrics =
+      new CallQualityMetrics(CallQualityMetrics.DEFAULT_CAPACITY);
+  // Records metrics, feeds the degradation controller and formats the HUD
+  // for every stats snapshot, so that none of it delays the peer connection
+  // thread, which also handles SDP and ICE.
+  private final ExecutorService statsExecutor = Executors.newSingleThreadExecutor(
+      r -> new Thread(() -> {
+        Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+        r.run();
+      }, "CallStats"));
+  // Runs signaling and peer connection events; only UI updates are posted to
+  // the main thread.
+  @Nullable
+  private volatile CallControllerThread callController;
+  // Steps the capture format down under CPU or thermal load, if enabled.
+  @Nullable
+  private volatile CaptureDegradationController captureDegradationController;
+  @Nullable
+  private Object thermalStatusListener;
   private boolean micEnabled = true;
   private boolean screencaptureEnabled;
   private static Intent mediaProjectionPermissionResultData;
@@ -237,37 +282,8 @@ public class CallActivity extends Activity implements AppRTCClient.SignalingEven
     });
 
     fullscreenRenderer.setOnClickListener(listener);
-    remoteSinks.add(remoteProxyRenderer);
 
     final Intent intent = getIntent();
-    final EglBase eglBase = EglBase.create();
-
-    // Create video renderers.
-    pipRenderer.init(eglBase.getEglBaseContext(), null);
-    pipRenderer.setScalingType(ScalingType.SCALE_ASPECT_FIT);
-    String saveRemoteVideoToFile = intent.getStringExtra(EXTRA_SAVE_REMOTE_VIDEO_TO_FILE);
-
-    // When saveRemoteVideoToFile is set we save the video from the remote to a file.
-    if (saveRemoteVideoToFile != null) {
-      int videoOutWidth = intent.getIntExtra(EXTRA_SAVE_REMOTE_VIDEO_TO_FILE_WIDTH, 0);
-      int videoOutHeight = intent.getIntExtra(EXTRA_SAVE_REMOTE_VIDEO_TO_FILE_HEIGHT, 0);
-      try {
-        videoFileRenderer = new VideoFileRenderer(
-            saveRemoteVideoToFile, videoOutWidth, videoOutHeight, eglBase.getEglBaseContext());
-        remoteSinks.add(videoFileRenderer);
-      } catch (IOException e) {
-        throw new RuntimeException(
-            "Failed to open video file for output: " + saveRemoteVideoToFile, e);
-      }
-    }
-    fullscreenRenderer.init(eglBase.getEglBaseContext(), null);
-    fullscreenRenderer.setScalingType(ScalingType.SCALE_ASPECT_FILL);
-
-    pipRenderer.setZOrderMediaOverlay(true);
-    pipRenderer.setEnableHardwareScaler(true /* enabled */);
-    fullscreenRenderer.setEnableHardwareScaler(false /* enabled */);
-    // Start with local feed in fullscreen and swap it to the pip when the call is connected.
-    setSwappedFeeds(true /* isSwappedFeeds */);
 
     // Check for mandatory permissions.
     for (String permission : MANDATORY_PERMISSIONS) {
@@ -299,6 +315,61 @@ public class CallActivity extends Activity implements AppRTCClient.SignalingEven
       return;
     }
 
+    callController = new CallControllerThread();
+
+    // Video renderers are initialized once the call bootstrap has been kicked
+    // off, see initVideoRenderers().
+    String saveRemoteVideoToFile = intent.getStringExtra(EXTRA_SAVE_REMOTE_VIDEO_TO_FILE);
+    String saveLocalVideoToFile = intent.getStringExtra(EXTRA_SAVE_LOCAL_VIDEO_TO_FILE);
+    int videoOutFps = intent.getIntExtra(EXTRA_SAVE_VIDEO_TO_FILE_FPS, 0);
+
+    // When saveRemoteVideoToFile is set we save the video from the remote to a file.
+    if (saveRemoteVideoToFile != null) {
+      int videoOutWidth = intent.getIntExtra(EXTRA_SAVE_REMOTE_VIDEO_TO_FILE_WIDTH, 0);
+      int videoOutHeight = intent.getIntExtra(EXTRA_SAVE_REMOTE_VIDEO_TO_FILE_HEIGHT, 0);
+      try {
+        remoteVideoRecorder = new Y4mVideoRecorder(
+            saveRemoteVideoToFile, videoOutWidth, videoOutHeight, videoOutFps);
+      } catch (IOException e) {
+        throw new RuntimeException(
+            "Failed to open video file for output: " + saveRemoteVideoToFile, e);
+      }
+      // A slow file writer must not hold up the display.
+      FanOutVideoSink fanOut = new FanOutVideoSink();
+      fanOut.addConsumer("display", remoteProxyRenderer, DISPLAY_QUEUE_FRAMES,
+          FanOutVideoSink.DropPolicy.DROP_OLDEST, 0,
+          CallQualityMetrics.Metric.DISPLAY_QUEUE_DEPTH,
+          CallQualityMetrics.Metric.DISPLAY_DROPPED_FRAMES);
+      fanOut.addConsumer("recording", remoteVideoRecorder, RECORDING_QUEUE_FRAMES,
+          FanOutVideoSink.DropPolicy.BLOCK_THEN_DROP, RECORDING_BLOCK_TIMEOUT_MS,
+          CallQualityMetrics.Metric.RECORDING_QUEUE_DEPTH,
+          CallQualityMetrics.Metric.RECORDING_DROPPED_FRAMES);
+      remoteFanOut = fanOut;
+      remoteSinks.add(fanOut);
+    } else {
+      remoteSinks.add(remoteProxyRenderer);
+    }
+    // The local video is saved at its capture size.
+    if (saveLocalVideoToFile != null) {
+      try {
+        localVideoRecorder = new Y4mVideoRecorder(saveLocalVideoToFile, 0, 0, videoOutFps);
+      } catch (IOException e) {
+        throw new RuntimeException(
+            "Failed to open video file for output: " + saveLocalVideoToFile, e);
+      }
+    }
+    // Allocated once the intent is validated and the recorders, which may
+    // throw, are open. With factory reuse the EglBase is shared with the warm
+    // factory's codecs and outlives this activity, and the holder counts this
+    // call as a user until the peer connection client releases it.
+    final boolean reuseFactory = intent.getBooleanExtra(EXTRA_REUSE_PEER_CONNECTION_FACTORY, false);
+    final EglBase eglBase = reuseFactory
+        ? PeerConnectionClient.getFactoryHolder().acquireEglBase(this)
+        : EglBase.create();
+
+    // Start with local feed in fullscreen and swap it to the pip when the call is connected.
+    setSwappedFeeds(true /* isSwappedFeeds */);
+
     boolean loopback = intent.getBooleanExtra(EXTRA_LOOPBACK, false);
     boolean tracing = intent.getBooleanExtra(EXTRA_TRACING, false);
 
@@ -334,7 +405,10 @@ public class CallActivity extends Activity implements AppRTCClient.SignalingEven
             intent.getBooleanExtra(EXTRA_DISABLE_BUILT_IN_AGC, false),
             intent.getBooleanExtra(EXTRA_DISABLE_BUILT_IN_NS, false),
             intent.getBooleanExtra(EXTRA_DISABLE_WEBRTC_AGC_AND_HPF, false),
-            intent.getBooleanExtra(EXTRA_ENABLE_RTCEVENTLOG, false), dataChannelParameters);
+            intent.getBooleanExtra(EXTRA_ENABLE_RTCEVENTLOG, false), reuseFactory,
+            intent.getIntExtra(EXTRA_ICE_CANDIDATE_POOL_SIZE, 0),
+            intent.getBooleanExtra(EXTRA_COMPRESS_SAVED_INPUT_AUDIO, false),
+            intent.getBooleanExtra(EXTRA_TRIGGERED_DIAGNOSTICS, false), dataChannelParameters);
     commandLineRun = intent.getBooleanExtra(EXTRA_CMDLINE, false);
     int runTimeMs = intent.getIntExtra(EXTRA_RUNTIME, 0);
 
@@ -345,15 +419,17 @@ public class CallActivity extends Activity implements AppRTCClient.SignalingEven
 
 
     //if (loopback || !DirectRTCClient.IP_PATTERN.matcher(roomId).matches()) {
-      appRtcClient = new WebRTCClient(this);
+      appRtcClient = new WebRTCClient(this, callSetupTimeline);
     /*} else {
       Log.i(TAG, "Using DirectRTCClient because room name looks like an IP.");
       appRtcClient = new DirectRTCClient(this);
     }*/
     // Create connection parameters.
     String urlParameters = intent.getStringExtra(EXTRA_URLPARAMETERS);
+    int iceCandidateBatchWindowMs = intent.getIntExtra(EXTRA_ICE_CANDIDATE_BATCH_WINDOW_MS, 0);
     roomConnectionParameters =
-        new AppRTCClient.RoomConnectionParameters(getString(R.string.pref_room_server_url_default), roomId, loopback, urlParameters);
+        new AppRTCClient.RoomConnectionParameters(getString(R.string.pref_room_server_url_default), roomId, loopback, urlParameters,
+            iceCandidateBatchWindowMs);
 
     // Create CPU monitor
     if (CpuMonitor.isSupported()) {
@@ -387,6 +463,8 @@ public class CallActivity extends Activity implements AppRTCClient.SignalingEven
     if (loopback) {
       options.networkIgnoreMask = 0;
     }
+    peerConnectionClient.setBootstrapTimings(bootstrapTimings);
+    peerConnectionClient.setCallSetupTimeline(callSetupTimeline);
     peerConnectionClient.createPeerConnectionFactory(options);
 
     if (screencaptureEnabled) {
@@ -394,6 +472,24 @@ public class CallActivity extends Activity implements AppRTCClient.SignalingEven
     } else {
       startCall();
     }
+
+    // Room join, factory and peer connection creation are now running on
+    // their own threads, so initialize the renderers in the meantime. Frames
+    // arriving before init are dropped by the renderers.
+    initVideoRenderers(eglBase);
+  }
+
+  private void initVideoRenderers(EglBase eglBase) {
+    bootstrapTimings.markStarted(CallBootstrapTimings.Stage.RENDERERS);
+    pipRenderer.init(eglBase.getEglBaseContext(), null);
+    pipRenderer.setScalingType(ScalingType.SCALE_ASPECT_FIT);
+    fullscreenRenderer.init(eglBase.getEglBaseContext(), null);
+    fullscreenRenderer.setScalingType(ScalingType.SCALE_ASPECT_FILL);
+
+    pipRenderer.setZOrderMediaOverlay(true);
+    pipRenderer.setEnableHardwareScaler(true /* enabled */);
+    fullscreenRenderer.setEnableHardwareScaler(false /* enabled */);
+    bootstrapTimings.markFinished(CallBootstrapTimings.Stage.RENDERERS);
   }
 
   @TargetApi(17)
@@ -497,6 +593,9 @@ public class CallActivity extends Activity implements AppRTCClient.SignalingEven
     if (peerConnectionClient != null && !screencaptureEnabled) {
       peerConnectionClient.stopVideoSource();
     }
+    if (peerConnectionClient != null) {
+      peerConnectionClient.setStatsEventsPaused(true);
+    }
     if (cpuMonitor != null) {
       cpuMonitor.pause();
     }
@@ -510,6 +609,9 @@ public class CallActivity extends Activity implements AppRTCClient.SignalingEven
     if (peerConnectionClient != null && !screencaptureEnabled) {
       peerConnectionClient.startVideoSource();
     }
+    if (peerConnectionClient != null) {
+      peerConnectionClient.setStatsEventsPaused(false);
+    }
     if (cpuMonitor != null) {
       cpuMonitor.resume();
     }
@@ -546,6 +648,10 @@ public class CallActivity extends Activity implements AppRTCClient.SignalingEven
 
   @Override
   public void onCaptureFormatChange(int width, int height, int framerate) {
+    final CaptureDegradationController controller = captureDegradationController;
+    if (controller != null) {
+      controller.disable("capture format set by the user");
+    }
     if (peerConnectionClient != null) {
       peerConnectionClient.changeCaptureFormat(width, height, framerate);
     }
@@ -585,12 +691,31 @@ public class CallActivity extends Activity implements AppRTCClient.SignalingEven
       return;
     }
     callStartedTimeMs = System.currentTimeMillis();
+    callSetupTimeline.start();
+    remoteProxyRenderer.setFirstFrameCallback(
+        () -> callSetupTimeline.mark(CallSetupTimeline.Phase.FIRST_REMOTE_FRAME));
 
     // Start room connection.
 
     logAndToast(getString(R.string.connecting_to, roomConnectionParameters.roomUrl));
+    bootstrapTimings.markStarted(CallBootstrapTimings.Stage.ROOM_JOIN);
     appRtcClient.connectToRoom(roomConnectionParameters);
 
+    // Create the peer connection while the room is being joined. The
+    // capturer is started and local tracks are created on the peer
+    // connection executor right after the factory.
+    VideoCapturer videoCapturer = null;
+    if (peerConnectionParameters.videoCallEnabled) {
+      videoCapturer = createVideoCapturer();
+    }
+    final Y4mVideoRecorder localRecorder = localVideoRecorder;
+    // The recorder only hands the frame to its worker, so it runs inline.
+    final VideoSink localSink = localRecorder == null ? localProxyVideoSink : frame -> {
+      localProxyVideoSink.onFrame(frame);
+      localRecorder.onFrame(frame);
+    };
+    peerConnectionClient.createPeerConnection(localSink, remoteSinks, videoCapturer);
+
     // Create and audio manager that will take care of audio routing,
     // audio modes, audio device enumeration etc.
     audioManager = AppRTCAudioManager.create(getApplicationContext());
@@ -618,9 +743,46 @@ public class CallActivity extends Activity implements AppRTCClient.SignalingEven
     }
     // Enable statistics callback.
     peerConnectionClient.enableStatsEvents(true, STAT_CALLBACK_PERIOD);
+    if (getIntent().getBooleanExtra(EXTRA_CAPTURE_DEGRADATION, false)
+        && peerConnectionParameters.videoCallEnabled && !screencaptureEnabled) {
+      startCaptureDegradation();
+    }
     setSwappedFeeds(false /* isSwappedFeeds */);
   }
 
+  // Should be called from UI thread
+  private void startCaptureDegradation() {
+    final CaptureDegradationController controller =
+        new CaptureDegradationController((width, height, framerate) -> {
+          final PeerConnectionClient client = peerConnectionClient;
+          if (client != null) {
+            client.changeCaptureFormat(width, height, framerate);
+          }
+        }, peerConnectionClient.getCaptureWidth(), peerConnectionClient.getCaptureHeight(),
+            peerConnectionClient.getCaptureFramerate());
+    if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+      startThermalStatusListener(controller);
+    }
+    captureDegradationController = controller;
+  }
+
+  @TargetApi(29)
+  private void startThermalStatusListener(final CaptureDegradationController controller) {
+    PowerManager powerManager = (PowerManager) getSystemService(Context.POWER_SERVICE);
+    PowerManager.OnThermalStatusChangedListener listener = controller::setThermalStatus;
+    controller.setThermalStatus(powerManager.getCurrentThermalStatus());
+    powerManager.addThermalStatusListener(listener);
+    thermalStatusListener = listener;
+  }
+
+  @TargetApi(29)
+  private void stopThermalStatusListener() {
+    PowerManager powerManager = (PowerManager) getSystemService(Context.POWER_SERVICE);
+    powerManager.removeThermalStatusListener(
+        (PowerManager.OnThermalStatusChangedListener) thermalStatusListener);
+    thermalStatusListener = null;
+  }
+
   // This method is called when the audio manager reports audio device change,
   // e.g. from wired headset to speakerphone.
   private void onAudioManagerDevicesChanged(
@@ -633,19 +795,46 @@ public class CallActivity extends Activity implements AppRTCClient.SignalingEven
   // Disconnect from remote resources, dispose of local resources, and exit.
   private void disconnect() {
     activityRunning = false;
+    if (callController != null) {
+      callController.quit();
+      callController = null;
+    }
+    captureDegradationController = null;
+    statsExecutor.shutdown();
+    if (thermalStatusListener != null && Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+      stopThermalStatusListener();
+    }
     remoteProxyRenderer.setTarget(null);
     localProxyVideoSink.setTarget(null);
     if (appRtcClient != null) {
       appRtcClient.disconnectFromRoom();
       appRtcClient = null;
+      if (callSetupTimeline.isStarted()) {
+        new CallSetupTimelineStore(getFilesDir(), CallSetupTimelineStore.DEFAULT_MAX_RECORDS)
+            .record(callSetupTimeline);
+      }
+      if (!callQualityMetrics.isEmpty()) {
+        new CallQualityReportStore(getFilesDir(), CallQualityReportStore.DEFAULT_MAX_RECORDS)
+            .record(callQualityMetrics);
+      }
+    }
+    if (remoteFanOut != null) {
+      // Joins the consumer threads, so that no frame reaches the renderers or
+      // the recorder once they are released below.
+      remoteFanOut.release();
+      remoteFanOut = null;
     }
     if (pipRenderer != null) {
       pipRenderer.release();
       pipRenderer = null;
     }
-    if (videoFileRenderer != null) {
-      videoFileRenderer.release();
-      videoFileRenderer = null;
+    if (remoteVideoRecorder != null) {
+      remoteVideoRecorder.release();
+      remoteVideoRecorder = null;
+    }
+    if (localVideoRecorder != null) {
+      localVideoRecorder.release();
+      localVideoRecorder = null;
     }
     if (fullscreenRenderer != null) {
       fullscreenRenderer.release();
@@ -689,14 +878,27 @@ public class CallActivity extends Activity implements AppRTCClient.SignalingEven
     }
   }
 
-  // Log |msg| and Toast about it.
-  private void logAndToast(String msg) {
+  // Log |msg| and Toast about it. May be called from any thread.
+  private void logAndToast(final String msg) {
     Log.d(TAG, msg);
-    if (logToast != null) {
-      logToast.cancel();
+    runOnUiThread(new Runnable() {
+      @Override
+      public void run() {
+        if (logToast != null) {
+          logToast.cancel();
+        }
+        logToast = Toast.makeText(CallActivity.this, msg, Toast.LENGTH_SHORT);
+        logToast.show();
+      }
+    });
+  }
+
+  // Events arriving after disconnect() are dropped.
+  private void postToController(String eventName, Runnable event) {
+    final CallControllerThread callController = this.callController;
+    if (callController != null) {
+      callController.post(eventName, event);
     }
-    logToast = Toast.makeText(this, msg, Toast.LENGTH_SHORT);
-    logToast.show();
   }
 
   private void reportError(final String description) {
@@ -714,9 +916,18 @@ public class CallActivity extends Activity implements AppRTCClient.SignalingEven
   private @Nullable VideoCapturer createVideoCapturer() {
     final VideoCapturer videoCapturer;
     String videoFileAsCamera = getIntent().getStringExtra(EXTRA_VIDEO_FILE_AS_CAMERA);
-    if (videoFileAsCamera != null) {
+    String syntheticCamera = getIntent().getStringExtra(EXTRA_SYNTHETIC_CAMERA);
+    if (syntheticCamera != null) {
       try {
-        videoCapturer = new FileVideoCapturer(videoFileAsCamera);
+        videoCapturer = new SyntheticVideoCapturer(SyntheticVideoCapturer.MotionComplexity.valueOf(
+            syntheticCamera.toUpperCase(Locale.US)));
+      } catch (IllegalArgumentException e) {
+        reportError("Unknown synthetic camera motion complexity: " + syntheticCamera);
+        return null;
+      }
+    } else if (videoFileAsCamera != null) {
+      try {
+        videoCapturer = new MappedY4mVideoCapturer(videoFileAsCamera);
       } catch (IOException e) {
         reportError("Failed to open video file for emulated camera");
         return null;
@@ -753,18 +964,21 @@ public class CallActivity extends Activity implements AppRTCClient.SignalingEven
 
   // -----Implementation of AppRTCClient.AppRTCSignalingEvents ---------------
   // All callbacks are invoked from websocket signaling looper thread and
-  // are routed to UI thread.
+  // are routed to the call controller thread, or to the UI thread if they
+  // only update the UI.
   private void onConnectedToRoomInternal(final AppRTCClient.SignalingParameters params) {
     final long delta = System.currentTimeMillis() - callStartedTimeMs;
+    final PeerConnectionClient peerConnectionClient = this.peerConnectionClient;
+    if (peerConnectionClient == null) {
+      Log.e(TAG, "Connected to room after the peer connection was closed.");
+      return;
+    }
 
+    bootstrapTimings.markFinished(CallBootstrapTimings.Stage.ROOM_JOIN);
+    roomJoinedTimeMs = System.currentTimeMillis();
     signalingParameters = params;
-    logAndToast("Creating peer connection, delay=" + delta + "ms");
-    VideoCapturer videoCapturer = null;
-    if (peerConnectionParameters.videoCallEnabled) {
-      videoCapturer = createVideoCapturer();
-    }
-    peerConnectionClient.createPeerConnection(
-        localProxyVideoSink, remoteSinks, videoCapturer, signalingParameters);
+    logAndToast("Connected to room, delay=" + delta + "ms");
+    peerConnectionClient.setSignalingParameters(signalingParameters);
 
     if (signalingParameters.initiator) {
       logAndToast("Creating OFFER...");
@@ -796,15 +1010,17 @@ public class CallActivity extends Activity implements AppRTCClient.SignalingEven
   // are routed to UI thread.
   private void onConnectedToRoomInternal(final AppRTCClient.SignalingParameters params,final  Socket socket,final JSONObject jsonObject) {
     final long delta = System.currentTimeMillis() - callStartedTimeMs;
+    final PeerConnectionClient peerConnectionClient = this.peerConnectionClient;
+    if (peerConnectionClient == null) {
+      Log.e(TAG, "Connected to room after the peer connection was closed.");
+      return;
+    }
 
+    bootstrapTimings.markFinished(CallBootstrapTimings.Stage.ROOM_JOIN);
+    roomJoinedTimeMs = System.currentTimeMillis();
     signalingParameters = params;
-    logAndToast("Creating peer connection, delay=" + delta + "ms");
-    VideoCapturer videoCapturer = null;
-    if (peerConnectionParameters.videoCallEnabled) {
-      videoCapturer = createVideoCapturer();
-    }
-    peerConnectionClient.createPeerConnection(
-            localProxyVideoSink, remoteSinks, videoCapturer, signalingParameters);
+    logAndToast("Connected to room, delay=" + delta + "ms");
+    peerConnectionClient.setSignalingParameters(signalingParameters);
 
     if (signalingParameters.initiator) {
       logAndToast("Creating OFFER...");
@@ -833,7 +1049,7 @@ public class CallActivity extends Activity implements AppRTCClient.SignalingEven
 
   @Override
   public void onConnectedToRoom(final AppRTCClient.SignalingParameters params) {
-    runOnUiThread(new Runnable() {
+    postToController("onConnectedToRoom", new Runnable() {
       @Override
       public void run() {
         onConnectedToRoomInternal(params);
@@ -843,7 +1059,7 @@ public class CallActivity extends Activity implements AppRTCClient.SignalingEven
 
   @Override
   public void onConnectedToRoom(final AppRTCClient.SignalingParameters params, final Socket clientSocketIO, final JSONObject jsonObject) {
-    runOnUiThread(new Runnable() {
+    postToController("onConnectedToRoom", new Runnable() {
       @Override
       public void run() {
         onConnectedToRoomInternal(params,clientSocketIO,jsonObject);
@@ -854,9 +1070,10 @@ public class CallActivity extends Activity implements AppRTCClient.SignalingEven
   @Override
   public void onRemoteDescription(final SessionDescription sdp) {
     final long delta = System.currentTimeMillis() - callStartedTimeMs;
-    runOnUiThread(new Runnable() {
+    postToController("onRemoteDescription", new Runnable() {
       @Override
       public void run() {
+        final PeerConnectionClient peerConnectionClient = CallActivity.this.peerConnectionClient;
         if (peerConnectionClient == null) {
           Log.e(TAG, "Received remote SDP for non-initilized peer connection.");
           return;
@@ -876,9 +1093,10 @@ public class CallActivity extends Activity implements AppRTCClient.SignalingEven
   @Override
   public void onRemoteDescription(final SessionDescription sdp,final Socket socket) {
     final long delta = System.currentTimeMillis() - callStartedTimeMs;
-    runOnUiThread(new Runnable() {
+    postToController("onRemoteDescription", new Runnable() {
       @Override
       public void run() {
+        final PeerConnectionClient peerConnectionClient = CallActivity.this.peerConnectionClient;
         if (peerConnectionClient == null) {
           Log.e(TAG, "Received remote SDP for non-initilized peer connection.");
           return;
@@ -897,9 +1115,10 @@ public class CallActivity extends Activity implements AppRTCClient.SignalingEven
 
   @Override
   public void onRemoteIceCandidate(final IceCandidate candidate) {
-    runOnUiThread(new Runnable() {
+    postToController("onRemoteIceCandidate", new Runnable() {
       @Override
       public void run() {
+        final PeerConnectionClient peerConnectionClient = CallActivity.this.peerConnectionClient;
         if (peerConnectionClient == null) {
           Log.e(TAG, "Received ICE candidate for a non-initialized peer connection.");
           return;
@@ -909,11 +1128,27 @@ public class CallActivity extends Activity implements AppRTCClient.SignalingEven
     });
   }
 
+  @Override
+  public void onRemoteIceCandidates(final IceCandidate[] candidates) {
+    postToController("onRemoteIceCandidates", new Runnable() {
+      @Override
+      public void run() {
+        final PeerConnectionClient peerConnectionClient = CallActivity.this.peerConnectionClient;
+        if (peerConnectionClient == null) {
+          Log.e(TAG, "Received ICE candidates for a non-initialized peer connection.");
+          return;
+        }
+        peerConnectionClient.addRemoteIceCandidates(candidates);
+      }
+    });
+  }
+
   @Override
   public void onRemoteIceCandidatesRemoved(final IceCandidate[] candidates) {
-    runOnUiThread(new Runnable() {
+    postToController("onRemoteIceCandidatesRemoved", new Runnable() {
       @Override
       public void run() {
+        final PeerConnectionClient peerConnectionClient = CallActivity.this.peerConnectionClient;
         if (peerConnectionClient == null) {
           Log.e(TAG, "Received ICE candidate removals for a non-initialized peer connection.");
           return;
@@ -942,13 +1177,16 @@ public class CallActivity extends Activity implements AppRTCClient.SignalingEven
   // -----Implementation of PeerConnectionClient.PeerConnectionEvents.---------
   // Send local peer connection SDP and ICE candidates to remote party.
   // All callbacks are invoked from peer connection client looper thread and
-  // are routed to UI thread.
+  // are routed to the call controller thread, or to the UI thread if they
+  // only update the UI.
   @Override
   public void onLocalDescription(final SessionDescription sdp) {
     final long delta = System.currentTimeMillis() - callStartedTimeMs;
-    runOnUiThread(new Runnable() {
+    postToController("onLocalDescription", new Runnable() {
       @Override
       public void run() {
+        final AppRTCClient appRtcClient = CallActivity.this.appRtcClient;
+        final PeerConnectionClient peerConnectionClient = CallActivity.this.peerConnectionClient;
         if (appRtcClient != null) {
           logAndToast("Sending " + sdp.type + ", delay=" + delta + "ms");
           if (signalingParameters.initiator) {
@@ -957,7 +1195,7 @@ public class CallActivity extends Activity implements AppRTCClient.SignalingEven
             appRtcClient.sendAnswerSdp(sdp);
           }
         }
-        if (peerConnectionParameters.videoMaxBitrate > 0) {
+        if (peerConnectionParameters.videoMaxBitrate > 0 && peerConnectionClient != null) {
           Log.d(TAG, "Set video maximum bitrate: " + peerConnectionParameters.videoMaxBitrate);
           peerConnectionClient.setVideoMaxBitrate(peerConnectionParameters.videoMaxBitrate);
         }
@@ -967,9 +1205,10 @@ public class CallActivity extends Activity implements AppRTCClient.SignalingEven
 
   @Override
   public void onIceCandidate(final IceCandidate candidate) {
-    runOnUiThread(new Runnable() {
+    postToController("onIceCandidate", new Runnable() {
       @Override
       public void run() {
+        final AppRTCClient appRtcClient = CallActivity.this.appRtcClient;
         if (appRtcClient != null) {
           appRtcClient.sendLocalIceCandidate(candidate);
         }
@@ -979,9 +1218,10 @@ public class CallActivity extends Activity implements AppRTCClient.SignalingEven
 
   @Override
   public void onIceCandidatesRemoved(final IceCandidate[] candidates) {
-    runOnUiThread(new Runnable() {
+    postToController("onIceCandidatesRemoved", new Runnable() {
       @Override
       public void run() {
+        final AppRTCClient appRtcClient = CallActivity.this.appRtcClient;
         if (appRtcClient != null) {
           appRtcClient.sendLocalIceCandidateRemovals(candidates);
         }
@@ -989,13 +1229,30 @@ public class CallActivity extends Activity implements AppRTCClient.SignalingEven
     });
   }
 
+  @Override
+  public void onIceGatheringComplete() {
+    postToController("onIceGatheringComplete", new Runnable() {
+      @Override
+      public void run() {
+        final AppRTCClient appRtcClient = CallActivity.this.appRtcClient;
+        if (appRtcClient != null) {
+          appRtcClient.flushLocalIceCandidates();
+        }
+      }
+    });
+  }
+
   @Override
   public void onIceConnected() {
-    final long delta = System.currentTimeMillis() - callStartedTimeMs;
-    runOnUiThread(new Runnable() {
+    final long now = System.currentTimeMillis();
+    final long delta = now - callStartedTimeMs;
+    postToController("onIceConnected", new Runnable() {
       @Override
       public void run() {
         logAndToast("ICE connected, delay=" + delta + "ms");
+        // Compare runs with and without EXTRA_ICE_CANDIDATE_POOL_SIZE.
+        Log.i(TAG, "Join to ICE connected: " + (now - roomJoinedTimeMs) + "ms, "
+            + "ICE candidate pool size: " + peerConnectionParameters.iceCandidatePoolSize);
       }
     });
   }
@@ -1039,15 +1296,54 @@ public class CallActivity extends Activity implements AppRTCClient.SignalingEven
   public void onPeerConnectionClosed() {}
 
   @Override
-  public void onPeerConnectionStatsReady(final StatsReport[] reports) {
-    runOnUiThread(new Runnable() {
-      @Override
-      public void run() {
-        if (!isError && connected) {
-          hudFragment.updateEncoderStatistics(reports);
-        }
-      }
-    });
+  public void onPeerConnectionStatsReady(final RtcStatsSnapshot snapshot) {
+    try {
+      statsExecutor.execute(() -> processStats(snapshot));
+    } catch (RejectedExecutionException e) {
+      // Disconnected meanwhile.
+    }
+  }
+
+  // Runs on the stats thread.
+  private void processStats(RtcStatsSnapshot snapshot) {
+    final CpuMonitor monitor = cpuMonitor;
+    if (monitor != null) {
+      callQualityMetrics.record(
+          snapshot, monitor.getCpuUsageCurrent(), monitor.getFrequencyScaleCurrent());
+    } else {
+      callQualityMetrics.record(snapshot, -1, -1);
+    }
+    localProxyVideoSink.recordInterval(callQualityMetrics,
+        CallQualityMetrics.Metric.LOCAL_SINK_FRAME_US,
+        CallQualityMetrics.Metric.LOCAL_SINK_DROPPED_FRAMES);
+    remoteProxyRenderer.recordInterval(callQualityMetrics,
+        CallQualityMetrics.Metric.REMOTE_SINK_FRAME_US,
+        CallQualityMetrics.Metric.REMOTE_SINK_DROPPED_FRAMES);
+    final FanOutVideoSink fanOut = remoteFanOut;
+    if (fanOut != null) {
+      fanOut.recordInterval(callQualityMetrics);
+    }
+    final Y4mVideoRecorder remoteRecorder = remoteVideoRecorder;
+    if (remoteRecorder != null) {
+      remoteRecorder.recordInterval(callQualityMetrics,
+          CallQualityMetrics.Metric.REMOTE_RECORDER_WRITE_MBPS,
+          CallQualityMetrics.Metric.REMOTE_RECORDER_BACKLOG);
+    }
+    final Y4mVideoRecorder localRecorder = localVideoRecorder;
+    if (localRecorder != null) {
+      localRecorder.recordInterval(callQualityMetrics,
+          CallQualityMetrics.Metric.LOCAL_RECORDER_WRITE_MBPS,
+          CallQualityMetrics.Metric.LOCAL_RECORDER_BACKLOG);
+    }
+    final CaptureDegradationController controller = captureDegradationController;
+    if (controller != null) {
+      controller.onStats(snapshot, monitor != null ? monitor.getCpuLoadAverage() : -1,
+          SystemClock.elapsedRealtime());
+    }
+    // The HUD formats on this thread and only posts the finished text to the UI.
+    if (!isError && connected) {
+      hudFragment.updateEncoderStatistics(snapshot);
+    }
   }
 
   @Override
@@ -0,0 +1,79 @@
+package com.test.myownrtcapp;
+
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.util.Log;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Runs signaling and peer connection events for CallActivity in order on a
+ * dedicated thread, so that UI work cannot delay SDP and ICE handling. Logs
+ * how long each event waited in the queue and a per event summary on quit().
+ */
+class CallControllerThread {
+  private static final String TAG = "CallController";
+  // Events that waited longer than this are logged as warnings.
+  private static final long SLOW_EVENT_THRESHOLD_MS = 50;
+
+  private final HandlerThread thread;
+  private final Handler handler;
+  // Queueing latency per event name. Only accessed on the controller thread.
+  private final Map<String, EventStats> eventStats = new LinkedHashMap<>();
+
+  private static class EventStats {
+    int count;
+    long totalUs;
+    long maxUs;
+  }
+
+  CallControllerThread() {
+    thread = new HandlerThread(TAG);
+    thread.start();
+    handler = new Handler(thread.getLooper());
+  }
+
+  /** Runs |event| on the controller thread. Dropped after quit(). */
+  void post(final String eventName, final Runnable event) {
+    final long postedNs = System.nanoTime();
+    handler.post(() -> {
+      recordQueueLatency(eventName, (System.nanoTime() - postedNs) / 1000);
+      event.run();
+    });
+  }
+
+  /** Logs the latency summary and stops the thread after pending events. */
+  void quit() {
+    handler.post(() -> {
+      logSummary();
+      thread.quit();
+    });
+  }
+
+  private void recordQueueLatency(String eventName, long latencyUs) {
+    EventStats stats = eventStats.get(eventName);
+    if (stats == null) {
+      stats = new EventStats();
+      eventStats.put(eventName, stats);
+    }
+    stats.count++;
+    stats.totalUs += latencyUs;
+    stats.maxUs = Math.max(stats.maxUs, latencyUs);
+    if (latencyUs >= SLOW_EVENT_THRESHOLD_MS * 1000) {
+      Log.w(TAG, eventName + " queued for " + latencyUs / 1000 + "ms");
+    } else {
+      Log.d(TAG, eventName + " queued for " + latencyUs + "us");
+    }
+  }
+
+  private void logSummary() {
+    StringBuilder sb = new StringBuilder("Event queueing latency (count/avg/max us):");
+    for (Map.Entry<String, EventStats> entry : eventStats.entrySet()) {
+      EventStats stats = entry.getValue();
+      sb.append(' ').append(entry.getKey()).append('=').append(stats.count).append('/')
+          .append(stats.totalUs / stats.count).append('/').append(stats.maxUs);
+    }
+    Log.i(TAG, sb.toString());
+  }
+}
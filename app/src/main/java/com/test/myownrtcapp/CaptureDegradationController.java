@@ -0,0 +1,149 @@
+package com.test.myownrtcapp;
+
+import android.os.PowerManager;
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+
+import com.test.myownrtcapp.webrtc.RtcStatsSnapshot;
+
+/**
+ * Closed loop control of the capture format. Steps the resolution and frame
+ * rate down through a fixed ladder when the device is overloaded for a
+ * while (CPU overuse, the encoder being CPU limited, or thermal throttling)
+ * and back up once it has recovered for much longer. Every decision is
+ * logged with its trigger.
+ *
+ * <p>onStats() is called on the thread delivering stats snapshots;
+ * setThermalStatus() may be called from any thread.
+ */
+class CaptureDegradationController {
+  private static final String TAG = "CaptureDegradation";
+
+  /** Applies a capture format, e.g. PeerConnectionClient.changeCaptureFormat(). */
+  interface FormatChanger {
+    void changeCaptureFormat(int width, int height, int framerate);
+  }
+
+  // Resolution and frame rate of each level in percent of the initial format.
+  private static final int[][] LEVELS = {{100, 100}, {100, 67}, {75, 67}, {50, 50}, {50, 33}};
+  private static final int MIN_FRAMERATE = 5;
+  // Smoothed CPU load, see CpuMonitor.getCpuLoadAverage(), above this is
+  // overuse and below the lower one recovery. The load is the usage of all
+  // CPUs before Android N, and the busiest pipeline stage in percent of one
+  // CPU after, so both thresholds mean the bottleneck is nearly saturated.
+  private static final int CPU_OVERUSE_PERCENT = 85;
+  private static final int CPU_RECOVERED_PERCENT = 60;
+  private static final int THERMAL_THROTTLING_STATUS = PowerManager.THERMAL_STATUS_MODERATE;
+  // How long overuse or recovery must last before the level changes. Going
+  // up waits much longer than going down so that the format does not
+  // oscillate.
+  private static final long OVERUSE_HOLD_MS = 6000;
+  private static final long RECOVERED_HOLD_MS = 30000;
+  private static final long MIN_ADAPTATION_INTERVAL_MS = 10000;
+
+  private final FormatChanger formatChanger;
+  private final int baseWidth;
+  private final int baseHeight;
+  private final int baseFramerate;
+
+  private volatile int thermalStatus;
+  private volatile boolean enabled = true;
+  private int level;
+  private long overuseSinceMs = -1;
+  private long recoveredSinceMs = -1;
+  private long lastAdaptationMs;
+
+  CaptureDegradationController(
+      FormatChanger formatChanger, int baseWidth, int baseHeight, int baseFramerate) {
+    this.formatChanger = formatChanger;
+    this.baseWidth = baseWidth;
+    this.baseHeight = baseHeight;
+    this.baseFramerate = baseFramerate;
+  }
+
+  /** Updates the thermal status, one of PowerManager.THERMAL_STATUS_*. */
+  void setThermalStatus(int status) {
+    Log.d(TAG, "Thermal status " + thermalStatus + " -> " + status);
+    thermalStatus = status;
+  }
+
+  /** Stops adapting, e.g. after the user picked a capture format. */
+  void disable(String reason) {
+    if (enabled) {
+      enabled = false;
+      Log.i(TAG, "Adaptation stopped at level " + level + ": " + reason);
+    }
+  }
+
+  /**
+   * Feeds one stats interval. |cpuPercent| is CpuMonitor.getCpuLoadAverage(),
+   * or -1 if unknown.
+   */
+  void onStats(RtcStatsSnapshot snapshot, int cpuPercent, long nowMs) {
+    if (!enabled) {
+      return;
+    }
+    final String overuseTrigger = getOveruseTrigger(snapshot, cpuPercent);
+    if (overuseTrigger != null) {
+      recoveredSinceMs = -1;
+      if (overuseSinceMs < 0) {
+        overuseSinceMs = nowMs;
+      }
+      final long overuseMs = nowMs - overuseSinceMs;
+      if (level < LEVELS.length - 1 && overuseMs >= OVERUSE_HOLD_MS && canAdapt(nowMs)) {
+        setLevel(level + 1, nowMs, overuseTrigger + " for " + overuseMs + " ms");
+        overuseSinceMs = nowMs;
+      }
+      return;
+    }
+
+    overuseSinceMs = -1;
+    if (cpuPercent >= CPU_RECOVERED_PERCENT) {
+      // Neither overuse nor recovered.
+      recoveredSinceMs = -1;
+      return;
+    }
+    if (recoveredSinceMs < 0) {
+      recoveredSinceMs = nowMs;
+    }
+    final long recoveredMs = nowMs - recoveredSinceMs;
+    if (level > 0 && recoveredMs >= RECOVERED_HOLD_MS && canAdapt(nowMs)) {
+      setLevel(level - 1, nowMs, "recovered for " + recoveredMs + " ms, cpu load " + cpuPercent
+          + "%, thermal status " + thermalStatus);
+      recoveredSinceMs = nowMs;
+    }
+  }
+
+  @Nullable
+  private String getOveruseTrigger(RtcStatsSnapshot snapshot, int cpuPercent) {
+    final int status = thermalStatus;
+    if (status >= THERMAL_THROTTLING_STATUS) {
+      return "thermal status " + status;
+    }
+    if ("cpu".equals(snapshot.qualityLimitationReason)) {
+      return "encoder cpu limited";
+    }
+    if (cpuPercent >= CPU_OVERUSE_PERCENT) {
+      return "cpu load " + cpuPercent + "%";
+    }
+    return null;
+  }
+
+  private boolean canAdapt(long nowMs) {
+    return lastAdaptationMs == 0 || nowMs - lastAdaptationMs >= MIN_ADAPTATION_INTERVAL_MS;
+  }
+
+  private void setLevel(int newLevel, long nowMs, String trigger) {
+    final int[] percents = LEVELS[newLevel];
+    // Keep dimensions even for the encoder.
+    final int width = baseWidth * percents[0] / 100 & ~1;
+    final int height = baseHeight * percents[0] / 100 & ~1;
+    final int framerate = Math.max(MIN_FRAMERATE, baseFramerate * percents[1] / 100);
+    Log.i(TAG, (newLevel > level ? "Step down" : "Step up") + " to level " + newLevel + ": "
+        + width + "x" + height + "@" + framerate + ", trigger: " + trigger);
+    level = newLevel;
+    lastAdaptationMs = nowMs;
+    formatChanger.changeCaptureFormat(width, height, framerate);
+  }
+}
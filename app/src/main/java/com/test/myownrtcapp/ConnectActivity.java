@@ -414,6 +414,11 @@ public class ConnectActivity extends Activity {
             CallActivity.EXTRA_SAVE_INPUT_AUDIO_TO_FILE_ENABLED,
             R.string.pref_enable_save_input_audio_to_file_default, useValuesFromIntent);
 
+    boolean compressSavedInputAudio =
+        sharedPrefGetBoolean(R.string.pref_compress_saved_input_audio_key,
+            CallActivity.EXTRA_COMPRESS_SAVED_INPUT_AUDIO,
+            R.string.pref_compress_saved_input_audio_default, useValuesFromIntent);
+
     // Check OpenSL ES enabled flag.
     boolean useOpenSLES = sharedPrefGetBoolean(R.string.pref_opensles_key,
         CallActivity.EXTRA_OPENSLES_ENABLED, R.string.pref_opensles_default, useValuesFromIntent);
@@ -567,6 +572,7 @@ public class ConnectActivity extends Activity {
       intent.putExtra(CallActivity.EXTRA_NOAUDIOPROCESSING_ENABLED, noAudioProcessing);
       intent.putExtra(CallActivity.EXTRA_AECDUMP_ENABLED, aecDump);
       intent.putExtra(CallActivity.EXTRA_SAVE_INPUT_AUDIO_TO_FILE_ENABLED, saveInputAudioToFile);
+      intent.putExtra(CallActivity.EXTRA_COMPRESS_SAVED_INPUT_AUDIO, compressSavedInputAudio);
       intent.putExtra(CallActivity.EXTRA_OPENSLES_ENABLED, useOpenSLES);
       intent.putExtra(CallActivity.EXTRA_DISABLE_BUILT_IN_AEC, disableBuiltInAEC);
       intent.putExtra(CallActivity.EXTRA_DISABLE_BUILT_IN_AGC, disableBuiltInAGC);
@@ -597,6 +603,11 @@ public class ConnectActivity extends Activity {
           intent.putExtra(CallActivity.EXTRA_VIDEO_FILE_AS_CAMERA, videoFileAsCamera);
         }
 
+        if (getIntent().hasExtra(CallActivity.EXTRA_SYNTHETIC_CAMERA)) {
+          String syntheticCamera = getIntent().getStringExtra(CallActivity.EXTRA_SYNTHETIC_CAMERA);
+          intent.putExtra(CallActivity.EXTRA_SYNTHETIC_CAMERA, syntheticCamera);
+        }
+
         if (getIntent().hasExtra(CallActivity.EXTRA_SAVE_REMOTE_VIDEO_TO_FILE)) {
           String saveRemoteVideoToFile =
               getIntent().getStringExtra(CallActivity.EXTRA_SAVE_REMOTE_VIDEO_TO_FILE);
@@ -614,6 +625,48 @@ public class ConnectActivity extends Activity {
               getIntent().getIntExtra(CallActivity.EXTRA_SAVE_REMOTE_VIDEO_TO_FILE_HEIGHT, 0);
           intent.putExtra(CallActivity.EXTRA_SAVE_REMOTE_VIDEO_TO_FILE_HEIGHT, videoOutHeight);
         }
+
+        if (getIntent().hasExtra(CallActivity.EXTRA_SAVE_LOCAL_VIDEO_TO_FILE)) {
+          String saveLocalVideoToFile =
+              getIntent().getStringExtra(CallActivity.EXTRA_SAVE_LOCAL_VIDEO_TO_FILE);
+          intent.putExtra(CallActivity.EXTRA_SAVE_LOCAL_VIDEO_TO_FILE, saveLocalVideoToFile);
+        }
+
+        if (getIntent().hasExtra(CallActivity.EXTRA_SAVE_VIDEO_TO_FILE_FPS)) {
+          int videoOutFps = getIntent().getIntExtra(CallActivity.EXTRA_SAVE_VIDEO_TO_FILE_FPS, 0);
+          intent.putExtra(CallActivity.EXTRA_SAVE_VIDEO_TO_FILE_FPS, videoOutFps);
+        }
+
+        if (getIntent().hasExtra(CallActivity.EXTRA_ICE_CANDIDATE_BATCH_WINDOW_MS)) {
+          int iceCandidateBatchWindowMs =
+              getIntent().getIntExtra(CallActivity.EXTRA_ICE_CANDIDATE_BATCH_WINDOW_MS, 0);
+          intent.putExtra(
+              CallActivity.EXTRA_ICE_CANDIDATE_BATCH_WINDOW_MS, iceCandidateBatchWindowMs);
+        }
+
+        if (getIntent().hasExtra(CallActivity.EXTRA_REUSE_PEER_CONNECTION_FACTORY)) {
+          boolean reuseFactory =
+              getIntent().getBooleanExtra(CallActivity.EXTRA_REUSE_PEER_CONNECTION_FACTORY, false);
+          intent.putExtra(CallActivity.EXTRA_REUSE_PEER_CONNECTION_FACTORY, reuseFactory);
+        }
+
+        if (getIntent().hasExtra(CallActivity.EXTRA_ICE_CANDIDATE_POOL_SIZE)) {
+          int iceCandidatePoolSize =
+              getIntent().getIntExtra(CallActivity.EXTRA_ICE_CANDIDATE_POOL_SIZE, 0);
+          intent.putExtra(CallActivity.EXTRA_ICE_CANDIDATE_POOL_SIZE, iceCandidatePoolSize);
+        }
+
+        if (getIntent().hasExtra(CallActivity.EXTRA_CAPTURE_DEGRADATION)) {
+          boolean captureDegradation =
+              getIntent().getBooleanExtra(CallActivity.EXTRA_CAPTURE_DEGRADATION, false);
+          intent.putExtra(CallActivity.EXTRA_CAPTURE_DEGRADATION, captureDegradation);
+        }
+
+        if (getIntent().hasExtra(CallActivity.EXTRA_TRIGGERED_DIAGNOSTICS)) {
+          boolean triggeredDiagnostics =
+              getIntent().getBooleanExtra(CallActivity.EXTRA_TRIGGERED_DIAGNOSTICS, false);
+          intent.putExtra(CallActivity.EXTRA_TRIGGERED_DIAGNOSTICS, triggeredDiagnostics);
+        }
       }
 
       startActivityForResult(intent, CONNECTION_REQUEST);
@@ -17,6 +17,8 @@ import android.content.IntentFilter;
 import android.os.BatteryManager;
 import android.os.Build;
 import android.os.SystemClock;
+import android.system.Os;
+import android.system.OsConstants;
 import android.util.Log;
 
 import androidx.annotation.Nullable;
@@ -26,8 +28,8 @@ import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
-import java.util.Arrays;
 import java.util.Scanner;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
@@ -59,6 +61,11 @@ import java.util.concurrent.TimeUnit;
  *   o This is not thread-safe.  To call asynchronously, create different
  *     CpuMonitor objects.
  *
+ * <p>Android N and later do not let apps read /proc/stat. There the monitor
+ * measures this process instead, from /proc/self/stat, relative to the
+ * capacity of all CPUs, and attributes the time of its threads to pipeline
+ * stages (capture, encoder, decoder, network, audio) using ProcessCpuSampler.
+ *
  * <p>If we can gather enough info to generate a sensible result,
  * sampleCpuUtilization returns true.  It is designed to never throw an
  * exception.
@@ -92,6 +99,15 @@ class CpuMonitor {
   private final MovingAverage totalCpuUsage;
   // CPU frequency in percentage from maximum.
   private final MovingAverage frequencyScale;
+  // Process CPU usage per pipeline stage, only with processCpuSampler.
+  private final MovingAverage[] stageCpuUsage;
+  // Samples this process instead of the whole system, on Android N+.
+  @Nullable
+  private final ProcessCpuSampler processCpuSampler;
+  private final long clockTicksPerSecond;
+  private long lastProcessSampleTimeMs;
+  // CPUs the process samples are relative to.
+  private int processSampleCpus;
 
   @Nullable
   private ScheduledExecutorService executor;
@@ -101,68 +117,27 @@ class CpuMonitor {
   private int actualCpusPresent;
   private boolean initialized;
   private boolean cpuOveruse;
-  private String[] maxPath;
-  private String[] curPath;
+  // Shared by all readers below; sampling reads one file at a time.
+  private final ByteBuffer statBuffer = ByteBuffer.allocate(ProcFileReader.BUFFER_SIZE);
+  private final ProcFileReader procStatReader = new ProcFileReader("/proc/stat", statBuffer);
+  // Fields of the first line of /proc/stat, see readProcStat().
+  private final long[] procStatFields = new long[8];
+  // Null once the max frequency of the CPU is known.
+  private ProcFileReader[] maxFreqReaders;
+  private ProcFileReader[] curFreqReaders;
   private double[] curFreqScales;
-  @Nullable
-  private ProcStat lastProcStat;
+  // The latest two /proc/stat samples, swapped after every sample.
+  private ProcStat procStat = new ProcStat();
+  private ProcStat lastProcStat = new ProcStat();
 
   private static class ProcStat {
-    final long userTime;
-    final long systemTime;
-    final long idleTime;
-
-    ProcStat(long userTime, long systemTime, long idleTime) {
-      this.userTime = userTime;
-      this.systemTime = systemTime;
-      this.idleTime = idleTime;
-    }
-  }
-
-  private static class MovingAverage {
-    private final int size;
-    private double sum;
-    private double currentValue;
-    private double[] circBuffer;
-    private int circBufferIndex;
-
-    public MovingAverage(int size) {
-      if (size <= 0) {
-        throw new AssertionError("Size value in MovingAverage ctor should be positive.");
-      }
-      this.size = size;
-      circBuffer = new double[size];
-    }
-
-    public void reset() {
-      Arrays.fill(circBuffer, 0);
-      circBufferIndex = 0;
-      sum = 0;
-      currentValue = 0;
-    }
-
-    public void addValue(double value) {
-      sum -= circBuffer[circBufferIndex];
-      circBuffer[circBufferIndex++] = value;
-      currentValue = value;
-      sum += value;
-      if (circBufferIndex >= size) {
-        circBufferIndex = 0;
-      }
-    }
-
-    public double getCurrent() {
-      return currentValue;
-    }
-
-    public double getAverage() {
-      return sum / (double) size;
-    }
+    long userTime;
+    long systemTime;
+    long idleTime;
   }
 
   public static boolean isSupported() {
-    return Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT
-        && Build.VERSION.SDK_INT < Build.VERSION_CODES.N;
+    return Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT;
   }
 
   public CpuMonitor(Context context) {
@@ -176,6 +151,17 @@ class CpuMonitor {
     systemCpuUsage = new MovingAverage(MOVING_AVERAGE_SAMPLES);
     totalCpuUsage = new MovingAverage(MOVING_AVERAGE_SAMPLES);
     frequencyScale = new MovingAverage(MOVING_AVERAGE_SAMPLES);
+    stageCpuUsage = new MovingAverage[ProcessCpuSampler.STAGES.length];
+    for (int i = 0; i < stageCpuUsage.length; i++) {
+      stageCpuUsage[i] = new MovingAverage(MOVING_AVERAGE_SAMPLES);
+    }
+    if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
+      processCpuSampler = new ProcessCpuSampler(statBuffer);
+      clockTicksPerSecond = Os.sysconf(OsConstants._SC_CLK_TCK);
+    } else {
+      processCpuSampler = null;
+      clockTicksPerSecond = 0;
+    }
     lastStatLogTimeMs = SystemClock.elapsedRealtime();
 
     scheduleCpuUtilizationTask();
@@ -187,6 +173,7 @@ class CpuMonitor {
       executor.shutdownNow();
       executor = null;
     }
+    closeFiles();
   }
 
   public void resume() {
@@ -217,12 +204,51 @@ class CpuMonitor {
     return doubleToPercent(userCpuUsage.getAverage() + systemCpuUsage.getAverage());
   }
 
+  // TODO(bugs.webrtc.org/8491): Remove NoSynchronizedMethodCheck suppression.
+  @SuppressWarnings("NoSynchronizedMethodCheck")
+  public synchronized int getFrequencyScaleCurrent() {
+    return doubleToPercent(frequencyScale.getCurrent());
+  }
+
   // TODO(bugs.webrtc.org/8491): Remove NoSynchronizedMethodCheck suppression.
   @SuppressWarnings("NoSynchronizedMethodCheck")
   public synchronized int getFrequencyScaleAverage() {
     return doubleToPercent(frequencyScale.getAverage());
   }
 
+  /**
+   * Returns the average CPU load in percent for overload detection. Before
+   * Android N this is getCpuUsageAverage(), the usage of all CPUs. Later only
+   * this process is measured, and its share of a many-core device stays low
+   * even when one of its pipeline stages saturates a CPU, so this is the
+   * usage of the busiest named stage in percent of one CPU.
+   */
+  // TODO(bugs.webrtc.org/8491): Remove NoSynchronizedMethodCheck suppression.
+  @SuppressWarnings("NoSynchronizedMethodCheck")
+  public synchronized int getCpuLoadAverage() {
+    if (processCpuSampler == null) {
+      return getCpuUsageAverage();
+    }
+    double busiest = 0;
+    for (ProcessCpuSampler.Stage stage : ProcessCpuSampler.STAGES) {
+      // OTHER collects unrelated threads, which may run in parallel.
+      if (stage != ProcessCpuSampler.Stage.OTHER) {
+        busiest = Math.max(busiest, stageCpuUsage[stage.ordinal()].getAverage());
+      }
+    }
+    return doubleToPercent(busiest * processSampleCpus);
+  }
+
+  /**
+   * Returns the average CPU usage of the threads of |stage| in percent of all
+   * CPUs, or 0 where only system wide stats are available (before Android N).
+   */
+  // TODO(bugs.webrtc.org/8491): Remove NoSynchronizedMethodCheck suppression.
+  @SuppressWarnings("NoSynchronizedMethodCheck")
+  public synchronized int getStageCpuUsageAverage(ProcessCpuSampler.Stage stage) {
+    return doubleToPercent(stageCpuUsage[stage.ordinal()].getAverage());
+  }
+
   private void scheduleCpuUtilizationTask() {
     if (executor != null) {
       executor.shutdownNow();
@@ -266,17 +292,18 @@ class CpuMonitor {
     }
 
     cpuFreqMax = new long[cpusPresent];
-    maxPath = new String[cpusPresent];
-    curPath = new String[cpusPresent];
+    maxFreqReaders = new ProcFileReader[cpusPresent];
+    curFreqReaders = new ProcFileReader[cpusPresent];
     curFreqScales = new double[cpusPresent];
     for (int i = 0; i < cpusPresent; i++) {
       cpuFreqMax[i] = 0; // Frequency "not yet determined".
       curFreqScales[i] = 0;
-      maxPath[i] = "/sys/devices/system/cpu/cpu" + i + "/cpufreq/cpuinfo_max_freq";
-      curPath[i] = "/sys/devices/system/cpu/cpu" + i + "/cpufreq/scaling_cur_freq";
+      maxFreqReaders[i] = new ProcFileReader(
+          "/sys/devices/system/cpu/cpu" + i + "/cpufreq/cpuinfo_max_freq", statBuffer);
+      curFreqReaders[i] = new ProcFileReader(
+          "/sys/devices/system/cpu/cpu" + i + "/cpufreq/scaling_cur_freq", statBuffer);
     }
 
-    lastProcStat = new ProcStat(0, 0, 0);
     resetStat();
 
     initialized = true;
@@ -287,6 +314,12 @@ class CpuMonitor {
     systemCpuUsage.reset();
     totalCpuUsage.reset();
     frequencyScale.reset();
+    for (MovingAverage stageUsage : stageCpuUsage) {
+      stageUsage.reset();
+    }
+    if (processCpuSampler != null) {
+      processCpuSampler.reset();
+    }
     lastStatLogTimeMs = SystemClock.elapsedRealtime();
   }
 
@@ -320,7 +353,7 @@ class CpuMonitor {
     if (!initialized) {
       init();
     }
-    if (cpusPresent == 0) {
+    if (cpusPresent == 0 && processCpuSampler == null) {
       return false;
     }
 
@@ -335,18 +368,20 @@ class CpuMonitor {
       curFreqScales[i] = 0;
       if (cpuFreqMax[i] == 0) {
         // We have never found this CPU's max frequency.  Attempt to read it.
-        long cpufreqMax = readFreqFromFile(maxPath[i]);
+        // 0 if the CPU core is off and its cpufreq files are missing or empty.
+        long cpufreqMax = maxFreqReaders[i].readLong();
         if (cpufreqMax > 0) {
           Log.d(TAG, "Core " + i + ". Max frequency: " + cpufreqMax);
           lastSeenMaxFreq = cpufreqMax;
           cpuFreqMax[i] = cpufreqMax;
-          maxPath[i] = null; // Kill path to free its memory.
+          maxFreqReaders[i].close();
+          maxFreqReaders[i] = null; // Not needed any more.
         }
       } else {
         lastSeenMaxFreq = cpuFreqMax[i]; // A valid, previously read value.
       }
 
-      long cpuFreqCur = readFreqFromFile(curPath[i]);
+      long cpuFreqCur = curFreqReaders[i].readLong();
       if (cpuFreqCur == 0 && lastSeenMaxFreq == 0) {
         // No current frequency information for this CPU core - ignore it.
         continue;
@@ -369,6 +404,10 @@ class CpuMonitor {
     }
 
     if (cpuFreqCurSum == 0 || cpuFreqMaxSum == 0) {
+      if (processCpuSampler != null) {
+        // Process times are still meaningful without the frequencies.
+        return sampleProcessCpuUtilization(0);
+      }
       Log.e(TAG, "Could not read max or current frequency for any CPU");
       return false;
     }
@@ -385,8 +424,11 @@ class CpuMonitor {
       currentFrequencyScale = (frequencyScale.getCurrent() + currentFrequencyScale) * 0.5;
     }
 
-    ProcStat procStat = readProcStat();
-    if (procStat == null) {
+    if (processCpuSampler != null) {
+      return sampleProcessCpuUtilization(currentFrequencyScale);
+    }
+
+    if (!readProcStat(procStat)) {
       return false;
     }
 
@@ -413,8 +455,43 @@ class CpuMonitor {
     totalCpuUsage.addValue(currentTotalCpuUsage);
 
     // Save new measurements for next round's deltas.
+    ProcStat tmp = lastProcStat;
     lastProcStat = procStat;
+    procStat = tmp;
+
+    return true;
+  }
 
+  /*
+   * Measures this process and its threads relative to the capacity of all
+   * CPUs over the time since the previous sample. |currentFrequencyScale| is
+   * 0 if the CPU frequencies are unknown.
+   */
+  private boolean sampleProcessCpuUtilization(double currentFrequencyScale) {
+    final long nowMs = SystemClock.elapsedRealtime();
+    final long elapsedMs = nowMs - lastProcessSampleTimeMs;
+    lastProcessSampleTimeMs = nowMs;
+    if (!processCpuSampler.sample() || elapsedMs <= 0 || clockTicksPerSecond <= 0) {
+      return false;
+    }
+    final int cpus = cpusPresent > 0 ? cpusPresent : Runtime.getRuntime().availableProcessors();
+    processSampleCpus = cpus;
+    final double capacityTicks = elapsedMs * clockTicksPerSecond * cpus / 1000.0;
+
+    final double currentUserCpuUsage = processCpuSampler.userTicks / capacityTicks;
+    final double currentSystemCpuUsage = processCpuSampler.systemTicks / capacityTicks;
+    userCpuUsage.addValue(currentUserCpuUsage);
+    systemCpuUsage.addValue(currentSystemCpuUsage);
+    for (int i = 0; i < stageCpuUsage.length; i++) {
+      stageCpuUsage[i].addValue(processCpuSampler.stageTicks[i] / capacityTicks);
+    }
+    if (currentFrequencyScale > 0) {
+      frequencyScale.addValue(currentFrequencyScale);
+      totalCpuUsage.addValue(
+          (currentUserCpuUsage + currentSystemCpuUsage) * currentFrequencyScale);
+    } else {
+      totalCpuUsage.addValue(currentUserCpuUsage + currentSystemCpuUsage);
+    }
     return true;
   }
 
@@ -446,80 +523,64 @@ class CpuMonitor {
     for (int i = 0; i < cpusPresent; i++) {
       stat.append(doubleToPercent(curFreqScales[i])).append(" ");
     }
-    stat.append("). Battery: ").append(getBatteryLevel());
+    stat.append(")");
+    if (processCpuSampler != null) {
+      stat.append(". Process stages:");
+      for (ProcessCpuSampler.Stage stage : ProcessCpuSampler.STAGES) {
+        stat.append(' ').append(stage.label).append(' ')
+            .append(doubleToPercent(stageCpuUsage[stage.ordinal()].getCurrent()))
+            .append("/")
+            .append(doubleToPercent(stageCpuUsage[stage.ordinal()].getAverage()));
+      }
+    }
+    stat.append(". Battery: ").append(getBatteryLevel());
     if (cpuOveruse) {
       stat.append(". Overuse.");
     }
     return stat.toString();
   }
 
-  /**
-   * Read a single integer value from the named file.  Return the read value
-   * or if an error occurs return 0.
-   */
-  private long readFreqFromFile(String fileName) {
-    long number = 0;
-    try (FileInputStream stream = new FileInputStream(fileName);
-         InputStreamReader streamReader = new InputStreamReader(stream, Charset.forName("UTF-8"));
-         BufferedReader reader = new BufferedReader(streamReader)) {
-      String line = reader.readLine();
-      number = parseLong(line);
-    } catch (FileNotFoundException e) {
-      // CPU core is off, so file with its scaling frequency .../cpufreq/scaling_cur_freq
-      // is not present. This is not an error.
-    } catch (IOException e) {
-      // CPU core is off, so file with its scaling frequency .../cpufreq/scaling_cur_freq
-      // is empty. This is not an error.
+  // Closes the files kept open between samples; they are reopened on demand.
+  private synchronized void closeFiles() {
+    procStatReader.close();
+    if (initialized) {
+      for (int i = 0; i < cpusPresent; i++) {
+        if (maxFreqReaders[i] != null) {
+          maxFreqReaders[i].close();
+        }
+        curFreqReaders[i].close();
+      }
     }
-    return number;
-  }
-
-  private static long parseLong(String value) {
-    long number = 0;
-    try {
-      number = Long.parseLong(value);
-    } catch (NumberFormatException e) {
-      Log.e(TAG, "parseLong error.", e);
+    if (processCpuSampler != null) {
+      processCpuSampler.close();
     }
-    return number;
   }
 
   /*
    * Read the current utilization of all CPUs using the cumulative first line
-   * of /proc/stat.
+   * of /proc/stat into |procStat|.
    */
-  @SuppressWarnings("StringSplitter")
-  private @Nullable ProcStat readProcStat() {
-    long userTime = 0;
-    long systemTime = 0;
-    long idleTime = 0;
-    try (FileInputStream stream = new FileInputStream("/proc/stat");
-         InputStreamReader streamReader = new InputStreamReader(stream, Charset.forName("UTF-8"));
-         BufferedReader reader = new BufferedReader(streamReader)) {
-      // line should contain something like this:
-      // cpu  5093818 271838 3512830 165934119 101374 447076 272086 0 0 0
-      //       user    nice  system     idle   iowait  irq   softirq
-      String line = reader.readLine();
-      String[] lines = line.split("\\s+");
-      int length = lines.length;
-      if (length >= 5) {
-        userTime = parseLong(lines[1]); // user
-        userTime += parseLong(lines[2]); // nice
-        systemTime = parseLong(lines[3]); // system
-        idleTime = parseLong(lines[4]); // idle
-      }
-      if (length >= 8) {
-        userTime += parseLong(lines[5]); // iowait
-        systemTime += parseLong(lines[6]); // irq
-        systemTime += parseLong(lines[7]); // softirq
-      }
-    } catch (FileNotFoundException e) {
-      Log.e(TAG, "Cannot open /proc/stat for reading", e);
-      return null;
-    } catch (Exception e) {
-      Log.e(TAG, "Problems parsing /proc/stat", e);
-      return null;
+  private boolean readProcStat(ProcStat procStat) {
+    if (!procStatReader.read()) {
+      Log.e(TAG, "Cannot read /proc/stat");
+      return false;
     }
-    return new ProcStat(userTime, systemTime, idleTime);
+    // line should contain something like this:
+    // cpu  5093818 271838 3512830 165934119 101374 447076 272086 0 0 0
+    //       user    nice  system     idle   iowait  irq   softirq
+    final long[] fields = procStatFields;
+    final int length = procStatReader.parseFields(0, fields);
+    if (length < 5) {
+      Log.e(TAG, "Problems parsing /proc/stat");
+      return false;
+    }
+    procStat.userTime = fields[1] + fields[2]; // user + nice
+    procStat.systemTime = fields[3]; // system
+    procStat.idleTime = fields[4]; // idle
+    if (length >= 8) {
+      procStat.userTime += fields[5]; // iowait
+      procStat.systemTime += fields[6] + fields[7]; // irq + softirq
+    }
+    return true;
   }
 }
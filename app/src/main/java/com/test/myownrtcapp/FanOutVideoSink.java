@@ -0,0 +1,186 @@
+package com.test.myownrtcapp;
+
+import android.util.Log;
+
+import com.test.myownrtcapp.webrtc.CallQualityMetrics;
+
+import org.webrtc.VideoFrame;
+import org.webrtc.VideoSink;
+
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Delivers every frame to several consumers, each on its own thread, so
+ * that a slow consumer (e.g. a file writer) does not stall the others or
+ * the thread delivering the frames. onFrame() retains the frame into a
+ * bounded queue per consumer; when a queue is full, the consumer's
+ * DropPolicy decides which frame is lost. Queue depth and drops of every
+ * consumer go into the call metrics.
+ */
+class FanOutVideoSink implements VideoSink {
+  private static final String TAG = "FanOutVideoSink";
+  private static final long POLL_TIMEOUT_MS = 100;
+
+  /** What to do with a frame when the queue of a consumer is full. */
+  enum DropPolicy {
+    // Drops the oldest queued frame, e.g. for display where only the latest
+    // frame matters.
+    DROP_OLDEST,
+    // Waits up to the block timeout for space and then drops the new frame,
+    // e.g. for recording where gaps should be rare.
+    BLOCK_THEN_DROP
+  }
+
+  private final List<Consumer> consumers = new CopyOnWriteArrayList<>();
+
+  /**
+   * Adds a consumer with a queue of |capacity| frames. |blockTimeoutMs| only
+   * applies to BLOCK_THEN_DROP. The metrics receive the largest queue depth
+   * and the number of dropped frames of every interval.
+   */
+  void addConsumer(String name, VideoSink sink, int capacity, DropPolicy dropPolicy,
+      long blockTimeoutMs, CallQualityMetrics.Metric queueDepthMetric,
+      CallQualityMetrics.Metric droppedFramesMetric) {
+    final Consumer consumer = new Consumer(name, sink, capacity, dropPolicy, blockTimeoutMs,
+        queueDepthMetric, droppedFramesMetric);
+    consumers.add(consumer);
+    consumer.thread.start();
+  }
+
+  @Override
+  public void onFrame(VideoFrame frame) {
+    for (Consumer consumer : consumers) {
+      consumer.offer(frame);
+    }
+  }
+
+  void recordInterval(CallQualityMetrics metrics) {
+    for (Consumer consumer : consumers) {
+      metrics.record(consumer.queueDepthMetric, consumer.maxQueueDepth.getAndSet(0));
+      metrics.record(consumer.droppedFramesMetric, consumer.droppedFrames.getAndSet(0));
+    }
+  }
+
+  /**
+   * Stops the consumer threads and releases the frames still queued. No
+   * consumer gets a frame after this returns.
+   */
+  void release() {
+    for (Consumer consumer : consumers) {
+      consumer.release();
+    }
+    consumers.clear();
+  }
+
+  private static class Consumer implements Runnable {
+    private final String name;
+    private final VideoSink sink;
+    private final BlockingQueue<VideoFrame> queue;
+    private final DropPolicy dropPolicy;
+    private final long blockTimeoutMs;
+    private final CallQualityMetrics.Metric queueDepthMetric;
+    private final CallQualityMetrics.Metric droppedFramesMetric;
+    private final Thread thread;
+    private final AtomicInteger maxQueueDepth = new AtomicInteger();
+    private final AtomicLong droppedFrames = new AtomicLong();
+    private final AtomicLong totalDroppedFrames = new AtomicLong();
+    // Guarded by |this|; offer() and release() only contend at release.
+    private boolean released;
+
+    Consumer(String name, VideoSink sink, int capacity, DropPolicy dropPolicy,
+        long blockTimeoutMs, CallQualityMetrics.Metric queueDepthMetric,
+        CallQualityMetrics.Metric droppedFramesMetric) {
+      this.name = name;
+      this.sink = sink;
+      this.queue = new ArrayBlockingQueue<>(capacity);
+      this.dropPolicy = dropPolicy;
+      this.blockTimeoutMs = blockTimeoutMs;
+      this.queueDepthMetric = queueDepthMetric;
+      this.droppedFramesMetric = droppedFramesMetric;
+      this.thread = new Thread(this, "FanOut-" + name);
+    }
+
+    synchronized void offer(VideoFrame frame) {
+      if (released) {
+        return;
+      }
+      frame.retain();
+      boolean queued = queue.offer(frame);
+      if (!queued && dropPolicy == DropPolicy.DROP_OLDEST) {
+        // The consumer may take the oldest frame meanwhile, so retry.
+        while (!queued) {
+          final VideoFrame oldest = queue.poll();
+          if (oldest != null) {
+            oldest.release();
+            dropped();
+          }
+          queued = queue.offer(frame);
+        }
+      } else if (!queued) {
+        try {
+          queued = queue.offer(frame, blockTimeoutMs, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+        if (!queued) {
+          frame.release();
+          dropped();
+        }
+      }
+      final int depth = queue.size();
+      if (depth > maxQueueDepth.get()) {
+        maxQueueDepth.set(depth);
+      }
+    }
+
+    @Override
+    public void run() {
+      while (!Thread.currentThread().isInterrupted()) {
+        final VideoFrame frame;
+        try {
+          frame = queue.poll(POLL_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+          return;
+        }
+        if (frame != null) {
+          sink.onFrame(frame);
+          frame.release();
+        }
+      }
+    }
+
+    void release() {
+      synchronized (this) {
+        released = true;
+      }
+      thread.interrupt();
+      boolean interrupted = false;
+      while (thread.isAlive()) {
+        try {
+          thread.join();
+        } catch (InterruptedException e) {
+          interrupted = true;
+        }
+      }
+      if (interrupted) {
+        Thread.currentThread().interrupt();
+      }
+      VideoFrame frame;
+      while ((frame = queue.poll()) != null) {
+        frame.release();
+      }
+      Log.d(TAG, name + " released, " + totalDroppedFrames.get() + " frames dropped");
+    }
+
+    private void dropped() {
+      droppedFrames.incrementAndGet();
+      totalDroppedFrames.incrementAndGet();
+    }
+  }
+}
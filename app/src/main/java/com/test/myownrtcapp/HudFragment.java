@@ -12,6 +12,9 @@ package com.test.myownrtcapp;
 
 import android.app.Fragment;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.text.TextUtils;
 import android.util.TypedValue;
 import android.view.LayoutInflater;
 import android.view.View;
@@ -19,12 +22,11 @@ import android.view.ViewGroup;
 import android.widget.ImageButton;
 import android.widget.TextView;
 
-import com.test.myownrtcapp.webrtc.PeerConnectionClient;
+import androidx.annotation.Nullable;
 
-import org.webrtc.StatsReport;
+import com.test.myownrtcapp.webrtc.RtcStatsSnapshot;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * Fragment for HUD statistics display.
@@ -36,10 +38,19 @@ public class HudFragment extends Fragment {
   private TextView hudViewVideoSend;
   private TextView hudViewVideoRecv;
   private ImageButton toggleDebugButton;
-  private boolean videoCallEnabled;
-  private boolean displayHud;
+  private volatile boolean videoCallEnabled;
+  private volatile boolean displayHud;
+  private volatile boolean panelsVisible;
   private volatile boolean isRunning;
-  private CpuMonitor cpuMonitor;
+  private volatile CpuMonitor cpuMonitor;
+  // Only used on the thread delivering stats.
+  private final HudStatsFormatter statsFormatter = new HudStatsFormatter();
+  private final Handler uiHandler = new Handler(Looper.getMainLooper());
+  // Latest text not yet applied to the views. At most one apply is posted at
+  // a time; newer text replaces text that was not applied yet.
+  private final AtomicReference<HudStatsFormatter.HudText> pendingText =
+      new AtomicReference<>();
+  private final Runnable applyPendingText = this::applyPendingText;
 
   @Override
   public View onCreateView(
@@ -95,6 +106,7 @@ public class HudFragment extends Fragment {
   }
 
   private void hudViewsSetProperties(int visibility) {
+    panelsVisible = visibility == View.VISIBLE;
     hudViewBwe.setVisibility(visibility);
     hudViewConnection.setVisibility(visibility);
     hudViewVideoSend.setVisibility(visibility);
@@ -105,102 +117,55 @@ public class HudFragment extends Fragment {
     hudViewVideoRecv.setTextSize(TypedValue.COMPLEX_UNIT_PT, 5);
   }
 
-  private Map<String, String> getReportMap(StatsReport report) {
-    Map<String, String> reportMap = new HashMap<>();
-    for (StatsReport.Value value : report.values) {
-      reportMap.put(value.name, value.value);
-    }
-    return reportMap;
-  }
-
-  public void updateEncoderStatistics(final StatsReport[] reports) {
+  /**
+   * Formats |snapshot| on the calling thread, leaving out the panels that are
+   * hidden, and posts the text to the UI thread. Does nothing unless the HUD
+   * is displayed.
+   */
+  public void updateEncoderStatistics(final RtcStatsSnapshot snapshot) {
     if (!isRunning || !displayHud) {
       return;
     }
+    HudStatsFormatter.HudText text = statsFormatter.format(snapshot, panelsVisible);
     StringBuilder encoderStat = new StringBuilder(128);
-    StringBuilder bweStat = new StringBuilder();
-    StringBuilder connectionStat = new StringBuilder();
-    StringBuilder videoSendStat = new StringBuilder();
-    StringBuilder videoRecvStat = new StringBuilder();
-    String fps = null;
-    String targetBitrate = null;
-    String actualBitrate = null;
-
-    for (StatsReport report : reports) {
-      if (report.type.equals("ssrc") && report.id.contains("ssrc") && report.id.contains("send")) {
-        // Send video statistics.
-        Map<String, String> reportMap = getReportMap(report);
-        String trackId = reportMap.get("googTrackId");
-        if (trackId != null && trackId.contains(PeerConnectionClient.VIDEO_TRACK_ID)) {
-          fps = reportMap.get("googFrameRateSent");
-          videoSendStat.append(report.id).append("\n");
-          for (StatsReport.Value value : report.values) {
-            String name = value.name.replace("goog", "");
-            videoSendStat.append(name).append("=").append(value.value).append("\n");
-          }
-        }
-      } else if (report.type.equals("ssrc") && report.id.contains("ssrc")
-          && report.id.contains("recv")) {
-        // Receive video statistics.
-        Map<String, String> reportMap = getReportMap(report);
-        // Check if this stat is for video track.
-        String frameWidth = reportMap.get("googFrameWidthReceived");
-        if (frameWidth != null) {
-          videoRecvStat.append(report.id).append("\n");
-          for (StatsReport.Value value : report.values) {
-            String name = value.name.replace("goog", "");
-            videoRecvStat.append(name).append("=").append(value.value).append("\n");
-          }
-        }
-      } else if (report.id.equals("bweforvideo")) {
-        // BWE statistics.
-        Map<String, String> reportMap = getReportMap(report);
-        targetBitrate = reportMap.get("googTargetEncBitrate");
-        actualBitrate = reportMap.get("googActualEncBitrate");
-
-        bweStat.append(report.id).append("\n");
-        for (StatsReport.Value value : report.values) {
-          String name = value.name.replace("goog", "").replace("Available", "");
-          bweStat.append(name).append("=").append(value.value).append("\n");
-        }
-      } else if (report.type.equals("googCandidatePair")) {
-        // Connection statistics.
-        Map<String, String> reportMap = getReportMap(report);
-        String activeConnection = reportMap.get("googActiveConnection");
-        if (activeConnection != null && activeConnection.equals("true")) {
-          connectionStat.append(report.id).append("\n");
-          for (StatsReport.Value value : report.values) {
-            String name = value.name.replace("goog", "");
-            connectionStat.append(name).append("=").append(value.value).append("\n");
-          }
-        }
-      }
-    }
-    hudViewBwe.setText(bweStat.toString());
-    hudViewConnection.setText(connectionStat.toString());
-    hudViewVideoSend.setText(videoSendStat.toString());
-    hudViewVideoRecv.setText(videoRecvStat.toString());
-
     if (videoCallEnabled) {
-      if (fps != null) {
-        encoderStat.append("Fps:  ").append(fps).append("\n");
-      }
-      if (targetBitrate != null) {
-        encoderStat.append("Target BR: ").append(targetBitrate).append("\n");
-      }
-      if (actualBitrate != null) {
-        encoderStat.append("Actual BR: ").append(actualBitrate).append("\n");
-      }
+      HudStatsFormatter.appendEncoderStat(encoderStat, text);
     }
 
-    if (cpuMonitor != null) {
+    final CpuMonitor monitor = cpuMonitor;
+    if (monitor != null) {
       encoderStat.append("CPU%: ")
-          .append(cpuMonitor.getCpuUsageCurrent())
+          .append(monitor.getCpuUsageCurrent())
           .append("/")
-          .append(cpuMonitor.getCpuUsageAverage())
+          .append(monitor.getCpuUsageAverage())
           .append(". Freq: ")
-          .append(cpuMonitor.getFrequencyScaleAverage());
+          .append(monitor.getFrequencyScaleAverage());
+    }
+    text.encoderStat = encoderStat.toString();
+    if (pendingText.getAndSet(text) == null) {
+      uiHandler.post(applyPendingText);
+    }
+  }
+
+  // Applies the pending text, only touching views whose text changed.
+  private void applyPendingText() {
+    HudStatsFormatter.HudText text = pendingText.getAndSet(null);
+    if (text == null || !isRunning) {
+      return;
+    }
+    if (panelsVisible) {
+      setTextIfChanged(hudViewBwe, text.bweStat);
+      setTextIfChanged(hudViewConnection, text.connectionStat);
+      setTextIfChanged(hudViewVideoSend, text.videoSendStat);
+      setTextIfChanged(hudViewVideoRecv, text.videoRecvStat);
+    }
+    setTextIfChanged(encoderStatView, text.encoderStat);
+  }
+
+  // Null text means the panel was not formatted; keep what it shows.
+  private static void setTextIfChanged(TextView view, @Nullable String text) {
+    if (text != null && !TextUtils.equals(view.getText(), text)) {
+      view.setText(text);
     }
-    encoderStatView.setText(encoderStat.toString());
   }
 }
@@ -0,0 +1,129 @@
+package com.test.myownrtcapp;
+
+import androidx.annotation.Nullable;
+
+import com.test.myownrtcapp.webrtc.RtcStatsSnapshot;
+
+/**
+ * Turns an RtcStatsSnapshot into the text shown by the HUD panels. Kept free
+ * of Android view classes so the formatting cost can be measured on the JVM.
+ */
+class HudStatsFormatter {
+  /**
+   * Text for the HUD panels produced from one stats snapshot. Panel text is
+   * null when the panels were not formatted.
+   */
+  static class HudText {
+    @Nullable String bweStat;
+    @Nullable String connectionStat;
+    @Nullable String videoSendStat;
+    @Nullable String videoRecvStat;
+    @Nullable String fps;
+    @Nullable String targetBitrate;
+    @Nullable String actualBitrate;
+    // Complete text of the encoder line, filled in by HudFragment.
+    @Nullable String encoderStat;
+  }
+
+  /** Formats |snapshot|, skipping the four panels unless |includePanels|. */
+  HudText format(final RtcStatsSnapshot snapshot, boolean includePanels) {
+    HudText text = new HudText();
+    if (snapshot.videoSendWidth > 0) {
+      text.fps = Long.toString(Math.round(snapshot.videoSendFps));
+    }
+    if (snapshot.videoTargetBitrateKbps > 0) {
+      text.targetBitrate = Math.round(snapshot.videoTargetBitrateKbps) + " kbps";
+    }
+    if (snapshot.intervalMs > 0) {
+      text.actualBitrate = Math.round(snapshot.videoSendBitrateKbps) + " kbps";
+    }
+    if (!includePanels) {
+      return text;
+    }
+
+    StringBuilder sb = new StringBuilder(128);
+    sb.append("BWE\n");
+    appendKbps(sb, "AvailableSend", snapshot.availableOutgoingBitrateKbps);
+    appendKbps(sb, "AvailableReceive", snapshot.availableIncomingBitrateKbps);
+    appendKbps(sb, "TargetEncode", snapshot.videoTargetBitrateKbps);
+    appendKbps(sb, "VideoSend", snapshot.videoSendBitrateKbps);
+    appendKbps(sb, "VideoReceive", snapshot.videoRecvBitrateKbps);
+    appendKbps(sb, "AudioSend", snapshot.audioSendBitrateKbps);
+    appendKbps(sb, "AudioReceive", snapshot.audioRecvBitrateKbps);
+    text.bweStat = sb.toString();
+
+    sb.setLength(0);
+    if (snapshot.hasCandidatePair) {
+      sb.append("Connection\n");
+      sb.append("Rtt=").append(Math.round(snapshot.rttMs)).append(" ms\n");
+      appendPercent(sb, "AudioLoss", snapshot.audioPacketLossPercent);
+      sb.append("AudioJitter=").append(Math.round(snapshot.audioJitterMs)).append(" ms\n");
+    }
+    text.connectionStat = sb.toString();
+
+    sb.setLength(0);
+    if (snapshot.videoSendWidth > 0) {
+      sb.append("VideoSend\n");
+      appendCodec(sb, snapshot.videoSendCodec);
+      sb.append("Resolution=").append(snapshot.videoSendWidth).append('x')
+          .append(snapshot.videoSendHeight).append('\n');
+      sb.append("Fps=").append(Math.round(snapshot.videoSendFps)).append('\n');
+      appendKbps(sb, "Bitrate", snapshot.videoSendBitrateKbps);
+      sb.append("FramesEncoded=").append(snapshot.videoFramesEncoded).append('\n');
+      if (snapshot.qualityLimitationReason != null) {
+        sb.append("QualityLimitation=").append(snapshot.qualityLimitationReason).append('\n');
+      }
+      if (snapshot.sourceWidth > 0) {
+        sb.append("Source=").append(snapshot.sourceWidth).append('x')
+            .append(snapshot.sourceHeight).append('@')
+            .append(Math.round(snapshot.sourceFps)).append('\n');
+      }
+    }
+    text.videoSendStat = sb.toString();
+
+    sb.setLength(0);
+    if (snapshot.videoRecvWidth > 0) {
+      sb.append("VideoReceive\n");
+      appendCodec(sb, snapshot.videoRecvCodec);
+      sb.append("Resolution=").append(snapshot.videoRecvWidth).append('x')
+          .append(snapshot.videoRecvHeight).append('\n');
+      sb.append("Fps=").append(Math.round(snapshot.videoRecvFps)).append('\n');
+      appendKbps(sb, "Bitrate", snapshot.videoRecvBitrateKbps);
+      appendPercent(sb, "Loss", snapshot.videoPacketLossPercent);
+      sb.append("Jitter=").append(Math.round(snapshot.videoJitterMs)).append(" ms\n");
+      sb.append("FramesDropped=").append(snapshot.videoFramesDropped).append('\n');
+    }
+    text.videoRecvStat = sb.toString();
+    return text;
+  }
+
+  /** Appends the encoder summary (fps and bitrates) of |text| to |encoderStat|. */
+  static void appendEncoderStat(StringBuilder encoderStat, HudText text) {
+    if (text.fps != null) {
+      encoderStat.append("Fps:  ").append(text.fps).append("\n");
+    }
+    if (text.targetBitrate != null) {
+      encoderStat.append("Target BR: ").append(text.targetBitrate).append("\n");
+    }
+    if (text.actualBitrate != null) {
+      encoderStat.append("Actual BR: ").append(text.actualBitrate).append("\n");
+    }
+  }
+
+  private static void appendKbps(StringBuilder sb, String name, double kbps) {
+    sb.append(name).append('=').append(Math.round(kbps)).append(" kbps\n");
+  }
+
+  // One decimal is enough to tell 0.1% from 1% loss.
+  private static void appendPercent(StringBuilder sb, String name, double percent) {
+    final long tenths = Math.round(percent * 10);
+    sb.append(name).append('=').append(tenths / 10).append('.').append(tenths % 10)
+        .append("%\n");
+  }
+
+  private static void appendCodec(StringBuilder sb, @Nullable String codec) {
+    if (codec != null) {
+      sb.append("Codec=").append(codec).append('\n');
+    }
+  }
+}
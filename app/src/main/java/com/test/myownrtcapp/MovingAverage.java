@@ -0,0 +1,48 @@
+package com.test.myownrtcapp;
+
+import java.util.Arrays;
+
+/**
+ * Fixed-size moving average over the last |size| values, used by CpuMonitor
+ * to smooth utilization and frequency samples.
+ */
+class MovingAverage {
+  private final int size;
+  private double sum;
+  private double currentValue;
+  private double[] circBuffer;
+  private int circBufferIndex;
+
+  public MovingAverage(int size) {
+    if (size <= 0) {
+      throw new AssertionError("Size value in MovingAverage ctor should be positive.");
+    }
+    this.size = size;
+    circBuffer = new double[size];
+  }
+
+  public void reset() {
+    Arrays.fill(circBuffer, 0);
+    circBufferIndex = 0;
+    sum = 0;
+    currentValue = 0;
+  }
+
+  public void addValue(double value) {
+    sum -= circBuffer[circBufferIndex];
+    circBuffer[circBufferIndex++] = value;
+    currentValue = value;
+    sum += value;
+    if (circBufferIndex >= size) {
+      circBufferIndex = 0;
+    }
+  }
+
+  public double getCurrent() {
+    return currentValue;
+  }
+
+  public double getAverage() {
+    return sum / (double) size;
+  }
+}
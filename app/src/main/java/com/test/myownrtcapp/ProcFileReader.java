@@ -0,0 +1,161 @@
+package com.test.myownrtcapp;
+
+import androidx.annotation.Nullable;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Re-reads a small /proc or sysfs file without allocating. The file is kept
+ * open and read again from offset 0 (pread) into a ByteBuffer shared by all
+ * readers of one sampler; numbers are parsed straight from the bytes. The
+ * kernel regenerates these files on every read from offset 0.
+ *
+ * <p>Not thread safe. The contents are only valid until the next read() of
+ * any reader sharing the buffer.
+ */
+class ProcFileReader {
+  // Enough for the first line of /proc/stat and any stat or cpufreq file.
+  static final int BUFFER_SIZE = 4096;
+
+  private final String path;
+  private final ByteBuffer buffer;
+  private final byte[] bytes;
+  @Nullable private RandomAccessFile file;
+  @Nullable private FileChannel channel;
+  private int length;
+
+  /** |buffer| must be a heap buffer, e.g. ByteBuffer.allocate(BUFFER_SIZE). */
+  ProcFileReader(String path, ByteBuffer buffer) {
+    this.path = path;
+    this.buffer = buffer;
+    this.bytes = buffer.array();
+  }
+
+  /**
+   * Reads the file into the buffer, opening it if needed. Returns false if
+   * the file does not exist (any more) or cannot be read; the next read()
+   * then tries to open it again.
+   */
+  boolean read() {
+    try {
+      if (channel == null) {
+        file = new RandomAccessFile(path, "r");
+        channel = file.getChannel();
+      }
+      buffer.clear();
+      int position = 0;
+      int count;
+      // Normally a single read returns the whole file.
+      while (buffer.hasRemaining() && (count = channel.read(buffer, position)) > 0) {
+        position += count;
+      }
+      length = position;
+      return true;
+    } catch (IOException e) {
+      // Missing file, exited thread, or a channel closed by an interrupt.
+      close();
+      length = 0;
+      return false;
+    }
+  }
+
+  void close() {
+    if (file != null) {
+      try {
+        file.close();
+      } catch (IOException e) {
+        // Nothing to do, the handle is dropped either way.
+      }
+    }
+    file = null;
+    channel = null;
+  }
+
+  int length() {
+    return length;
+  }
+
+  /** Reads the file and parses the leading number, e.g. of a cpufreq file. 0 on failure. */
+  long readLong() {
+    if (!read()) {
+      return 0;
+    }
+    return parseLong(skipSpaces(0));
+  }
+
+  /** Returns the index of the first |b| in the contents, or -1. */
+  int indexOf(byte b) {
+    for (int i = 0; i < length; i++) {
+      if (bytes[i] == b) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  /** Returns the index of the last |b| in the contents, or -1. */
+  int lastIndexOf(byte b) {
+    for (int i = length - 1; i >= 0; i--) {
+      if (bytes[i] == b) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  /** Returns whether the contents at |offset| start with |prefix|. */
+  boolean regionStartsWith(int offset, byte[] prefix) {
+    if (offset < 0 || offset + prefix.length > length) {
+      return false;
+    }
+    for (int i = 0; i < prefix.length; i++) {
+      if (bytes[offset + i] != prefix[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Parses the space separated fields of the line starting at |offset| into
+   * |fields|, stopping at the end of the line or when |fields| is full.
+   * Fields that are not numbers are stored as 0. Returns the number of
+   * fields parsed.
+   */
+  int parseFields(int offset, long[] fields) {
+    int count = 0;
+    int i = skipSpaces(offset);
+    while (count < fields.length && i < length && bytes[i] != '\n') {
+      fields[count++] = parseLong(i);
+      while (i < length && bytes[i] != ' ' && bytes[i] != '\n') {
+        i++;
+      }
+      i = skipSpaces(i);
+    }
+    return count;
+  }
+
+  private int skipSpaces(int i) {
+    while (i < length && bytes[i] == ' ') {
+      i++;
+    }
+    return i;
+  }
+
+  // Parses the unsigned decimal at |i|; 0 if there is none.
+  private long parseLong(int i) {
+    long value = 0;
+    while (i < length) {
+      final int digit = bytes[i] - '0';
+      if (digit < 0 || digit > 9) {
+        break;
+      }
+      value = value * 10 + digit;
+      i++;
+    }
+    return value;
+  }
+}
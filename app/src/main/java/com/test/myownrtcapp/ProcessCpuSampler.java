@@ -0,0 +1,192 @@
+package com.test.myownrtcapp;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads the CPU time of this process from /proc/self/stat and of each of its
+ * threads from /proc/self/task/<tid>/stat. Unlike /proc/stat these stay
+ * readable for apps on Android N and later. Thread times are summed per
+ * pipeline stage, guessed from the thread name. The stat files are kept
+ * open and parsed in place with ProcFileReader, so sampling does not
+ * allocate.
+ *
+ * <p>Not thread safe. CpuMonitor calls it on its sampling thread.
+ */
+class ProcessCpuSampler {
+  // Samples between listings of /proc/self/task to pick up new threads.
+  private static final int TASK_RESCAN_INTERVAL = 5;
+  private static final String TASK_DIR = "/proc/self/task";
+
+  /** Pipeline stages threads are attributed to. */
+  enum Stage {
+    CAPTURE("capture", "VideoCapturer", "Camera", "ScreenCapturer"),
+    ENCODER("encoder", "EncoderQueue", "AndroidVideoEnc", "HwEncoder"),
+    DECODER("decoder", "DecodingQueue", "AndroidVideoDec", "IncomingVideoSt"),
+    NETWORK("network", "network_thread", "PacerThread", "ModuleProcessTh"),
+    AUDIO("audio", "Audio", "WebRtcVolumeLev"),
+    OTHER("other");
+
+    final String label;
+    // Prefixes of the thread names. The kernel truncates names to 15 chars.
+    private final byte[][] threadNamePrefixes;
+
+    Stage(String label, String... threadNamePrefixes) {
+      this.label = label;
+      this.threadNamePrefixes = new byte[threadNamePrefixes.length][];
+      for (int i = 0; i < threadNamePrefixes.length; i++) {
+        this.threadNamePrefixes[i] = threadNamePrefixes[i].getBytes(Charset.forName("UTF-8"));
+      }
+    }
+
+    // Matches the thread name at |nameOffset| of the stat file in |reader|.
+    static Stage forThreadName(ProcFileReader reader, int nameOffset) {
+      for (Stage stage : STAGES) {
+        for (byte[] prefix : stage.threadNamePrefixes) {
+          if (reader.regionStartsWith(nameOffset, prefix)) {
+            return stage;
+          }
+        }
+      }
+      return OTHER;
+    }
+  }
+
+  static final Stage[] STAGES = Stage.values();
+
+  private static class Task {
+    final String tid;
+    final ProcFileReader reader;
+    // Total ticks at the previous sample, -1 if not sampled yet.
+    long lastTicks = -1;
+
+    Task(String tid, ProcFileReader reader) {
+      this.tid = tid;
+      this.reader = reader;
+    }
+  }
+
+  // Ticks since the previous sample.
+  long userTicks;
+  long systemTicks;
+  final long[] stageTicks = new long[STAGES.length];
+
+  private final ByteBuffer buffer;
+  private final ProcFileReader processReader;
+  private final List<Task> tasks = new ArrayList<>();
+  // Fields of a stat file after the name; utime and stime are 11 and 12.
+  private final long[] fields = new long[13];
+  private int samplesUntilRescan;
+  private boolean hasPrevious;
+  private long lastUserTicks;
+  private long lastSystemTicks;
+
+  /** |buffer| is shared with other readers of the caller. */
+  ProcessCpuSampler(ByteBuffer buffer) {
+    this.buffer = buffer;
+    processReader = new ProcFileReader("/proc/self/stat", buffer);
+  }
+
+  /**
+   * Takes a sample and updates the tick deltas. Returns false on the first
+   * sample, or if /proc/self/stat cannot be read. New threads are picked up
+   * within TASK_RESCAN_INTERVAL samples; their time before that is not
+   * attributed to a stage.
+   */
+  boolean sample() {
+    if (!readStatFields(processReader)) {
+      return false;
+    }
+    userTicks = fields[11] - lastUserTicks;
+    systemTicks = fields[12] - lastSystemTicks;
+    lastUserTicks = fields[11];
+    lastSystemTicks = fields[12];
+
+    if (--samplesUntilRescan <= 0) {
+      samplesUntilRescan = TASK_RESCAN_INTERVAL;
+      rescanTasks();
+    }
+    for (int i = 0; i < stageTicks.length; i++) {
+      stageTicks[i] = 0;
+    }
+    for (int i = tasks.size() - 1; i >= 0; i--) {
+      final Task task = tasks.get(i);
+      if (!readStatFields(task.reader)) {
+        // The thread exited.
+        task.reader.close();
+        tasks.remove(i);
+        continue;
+      }
+      final long ticks = fields[11] + fields[12];
+      if (task.lastTicks >= 0) {
+        // The name starts after "<tid> (".
+        final int nameOffset = task.reader.indexOf((byte) '(') + 1;
+        final Stage stage = Stage.forThreadName(task.reader, nameOffset);
+        stageTicks[stage.ordinal()] += Math.max(0, ticks - task.lastTicks);
+      }
+      task.lastTicks = ticks;
+    }
+
+    final boolean valid = hasPrevious;
+    hasPrevious = true;
+    return valid;
+  }
+
+  void reset() {
+    hasPrevious = false;
+    for (Task task : tasks) {
+      task.lastTicks = -1;
+    }
+  }
+
+  /** Closes all open files; they are reopened by the next sample(). */
+  void close() {
+    processReader.close();
+    for (Task task : tasks) {
+      task.reader.close();
+    }
+    tasks.clear();
+    samplesUntilRescan = 0;
+  }
+
+  // Lists /proc/self/task and opens the threads not seen yet. This is the
+  // only part of sampling that allocates.
+  private void rescanTasks() {
+    String[] tids = new File(TASK_DIR).list();
+    if (tids == null) {
+      return;
+    }
+    for (String tid : tids) {
+      if (findTask(tid) < 0) {
+        tasks.add(new Task(tid, new ProcFileReader(TASK_DIR + "/" + tid + "/stat", buffer)));
+      }
+    }
+  }
+
+  private int findTask(String tid) {
+    for (int i = 0; i < tasks.size(); i++) {
+      if (tasks.get(i).tid.equals(tid)) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  /*
+   * Reads a stat file into |fields|:
+   * 4242 (EncoderQueue) S 612 612 0 0 -1 4194368 1208 0 0 0 523 94 0 0 ...
+   * pid   comm        state                                utime stime
+   * The name may contain spaces and parentheses, so fields are counted from
+   * the last ')'.
+   */
+  private boolean readStatFields(ProcFileReader reader) {
+    if (!reader.read()) {
+      return false;
+    }
+    final int nameEnd = reader.lastIndexOf((byte) ')');
+    return nameEnd >= 0 && reader.parseFields(nameEnd + 1, fields) == fields.length;
+  }
+}
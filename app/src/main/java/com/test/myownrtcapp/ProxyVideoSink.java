@@ -0,0 +1,70 @@
+package com.test.myownrtcapp;
+
+import androidx.annotation.Nullable;
+
+import com.test.myownrtcapp.webrtc.CallQualityMetrics;
+
+import org.webrtc.VideoFrame;
+import org.webrtc.VideoSink;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Forwards frames to a target that can be swapped at any time, e.g. between
+ * the full screen and pip renderers. onFrame() takes no lock: the target is
+ * read once per frame from a volatile field, and frames arriving without a
+ * target are counted instead of logged. A frame already past that read may
+ * still reach the previous target after setTarget() returns.
+ */
+class ProxyVideoSink implements VideoSink {
+  @Nullable private volatile VideoSink target;
+  private final AtomicReference<Runnable> firstFrameCallback = new AtomicReference<>();
+  // Counters since the last recordInterval().
+  private final AtomicLong forwardedFrames = new AtomicLong();
+  private final AtomicLong forwardNs = new AtomicLong();
+  private final AtomicLong droppedFrames = new AtomicLong();
+
+  @Override
+  public void onFrame(VideoFrame frame) {
+    final VideoSink sink = target;
+    if (sink == null) {
+      droppedFrames.incrementAndGet();
+      return;
+    }
+
+    final long startNs = System.nanoTime();
+    sink.onFrame(frame);
+    forwardNs.addAndGet(System.nanoTime() - startNs);
+    forwardedFrames.incrementAndGet();
+    if (firstFrameCallback.get() != null) {
+      final Runnable callback = firstFrameCallback.getAndSet(null);
+      if (callback != null) {
+        callback.run();
+      }
+    }
+  }
+
+  public void setTarget(@Nullable VideoSink target) {
+    this.target = target;
+  }
+
+  // Runs |callback| once, after the first frame has been passed to a target.
+  public void setFirstFrameCallback(@Nullable Runnable callback) {
+    firstFrameCallback.set(callback);
+  }
+
+  /**
+   * Records the mean time a forwarded frame spent in onFrame(), including
+   * the target, and the number of dropped frames since the last call.
+   */
+  void recordInterval(CallQualityMetrics metrics, CallQualityMetrics.Metric frameTimeMetric,
+      CallQualityMetrics.Metric droppedFramesMetric) {
+    final long frames = forwardedFrames.getAndSet(0);
+    final long ns = forwardNs.getAndSet(0);
+    if (frames > 0) {
+      metrics.record(frameTimeMetric, ns / 1000.0 / frames);
+    }
+    metrics.record(droppedFramesMetric, droppedFrames.getAndSet(0));
+  }
+}
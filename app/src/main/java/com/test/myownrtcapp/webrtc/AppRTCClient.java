@@ -31,12 +31,20 @@ public interface AppRTCClient {
     public final String roomId;
     public final boolean loopback;
     public final String urlParameters;
-    public RoomConnectionParameters(
-            String roomUrl, String roomId, boolean loopback, String urlParameters) {
+    // Local ICE candidates gathered within this window are sent as one
+    // message. 0 sends every candidate as soon as it is gathered.
+    public final int iceCandidateBatchWindowMs;
+    public RoomConnectionParameters(String roomUrl, String roomId, boolean loopback,
+            String urlParameters, int iceCandidateBatchWindowMs) {
       this.roomUrl = roomUrl;
       this.roomId = roomId;
       this.loopback = loopback;
       this.urlParameters = urlParameters;
+      this.iceCandidateBatchWindowMs = iceCandidateBatchWindowMs;
+    }
+    public RoomConnectionParameters(
+            String roomUrl, String roomId, boolean loopback, String urlParameters) {
+      this(roomUrl, roomId, loopback, urlParameters, 0 /* iceCandidateBatchWindowMs */);
     }
     public RoomConnectionParameters(String roomUrl, String roomId, boolean loopback) {
       this(roomUrl, roomId, loopback, null /* urlParameters */);
@@ -65,6 +73,12 @@ public interface AppRTCClient {
    */
   void sendLocalIceCandidate(final IceCandidate candidate);
 
+  /**
+   * Send any batched local ICE candidates right away, e.g. once gathering is
+   * complete. No-op if candidate batching is disabled.
+   */
+  void flushLocalIceCandidates();
+
   /**
    * Send removed ICE candidates to the other participant.
    */
@@ -126,6 +140,11 @@ public interface AppRTCClient {
      */
     void onRemoteIceCandidate(final IceCandidate candidate);
 
+    /**
+     * Callback fired once a batch of remote Ice candidates is received.
+     */
+    void onRemoteIceCandidates(final IceCandidate[] candidates);
+
     /**
      * Callback fired once remote Ice candidate removals are received.
      */
@@ -0,0 +1,79 @@
+package com.test.myownrtcapp.webrtc;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+/**
+ * Records when the call bootstrap stages start and finish so the time saved by
+ * overlapping them can be logged once the offer/answer step is reached.
+ * Factory and peer connection creation both run on the single-thread peer
+ * connection executor, one after the other; only the room join on the
+ * signaling thread and the renderer setup on the UI thread overlap them. The
+ * summary therefore names the thread of every stage.
+ */
+public class CallBootstrapTimings {
+  private static final String TAG = "CallBootstrapTimings";
+
+  /** Bootstrap stages before the offer/answer step, with their thread. */
+  public enum Stage {
+    ROOM_JOIN("room join", "signaling"),
+    FACTORY("factory", "executor"),
+    RENDERERS("renderers", "ui"),
+    PEER_CONNECTION("peer connection", "executor");
+
+    private final String label;
+    private final String thread;
+
+    Stage(String label, String thread) {
+      this.label = label;
+      this.thread = thread;
+    }
+  }
+
+  private final long[] startTimesMs = new long[Stage.values().length];
+  private final long[] endTimesMs = new long[Stage.values().length];
+  private boolean logged;
+
+  public synchronized void markStarted(Stage stage) {
+    startTimesMs[stage.ordinal()] = SystemClock.elapsedRealtime();
+  }
+
+  public synchronized void markFinished(Stage stage) {
+    endTimesMs[stage.ordinal()] = SystemClock.elapsedRealtime();
+  }
+
+  /**
+   * Logs the duration and thread of every finished stage, the sum of the
+   * durations, the wall time from the first start to the last finish and the
+   * difference, which is what overlapping the threads saved. Only the first
+   * call per call bootstrap logs anything.
+   */
+  public synchronized void logSummary() {
+    if (logged) {
+      return;
+    }
+    logged = true;
+    StringBuilder sb = new StringBuilder("Call bootstrap:");
+    long sumMs = 0;
+    long firstStartMs = Long.MAX_VALUE;
+    long lastEndMs = 0;
+    for (Stage stage : Stage.values()) {
+      long startMs = startTimesMs[stage.ordinal()];
+      long endMs = endTimesMs[stage.ordinal()];
+      sb.append(' ').append(stage.label).append(" [").append(stage.thread).append("]=");
+      if (startMs == 0 || endMs < startMs) {
+        sb.append("n/a");
+        continue;
+      }
+      long durationMs = endMs - startMs;
+      sb.append(durationMs).append("ms");
+      sumMs += durationMs;
+      firstStartMs = Math.min(firstStartMs, startMs);
+      lastEndMs = Math.max(lastEndMs, endMs);
+    }
+    long wallMs = lastEndMs > 0 ? lastEndMs - firstStartMs : 0;
+    sb.append(", sum=").append(sumMs).append("ms, wall=").append(wallMs)
+        .append("ms, saved by overlap=").append(sumMs - wallMs).append("ms");
+    Log.i(TAG, sb.toString());
+  }
+}
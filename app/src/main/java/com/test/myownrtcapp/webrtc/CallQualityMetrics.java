@@ -0,0 +1,198 @@
+package com.test.myownrtcapp.webrtc;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.Arrays;
+
+/**
+ * Per call time series of quality metrics. Every metric keeps its latest
+ * samples in a fixed-capacity ring of primitive doubles, so recording a
+ * stats snapshot does not allocate. toJson() turns the series into the end
+ * of call report with p50/p90/p99/max per metric and the remote video
+ * freezes.
+ *
+ * <p>Samples are recorded on the peer connection executor and the report is
+ * taken on another thread, so all methods are synchronized.
+ */
+public class CallQualityMetrics {
+  /** Default number of samples kept per metric; 30 min at the fastest stats period. */
+  public static final int DEFAULT_CAPACITY = 1800;
+
+  /** Recorded metrics. */
+  public enum Metric {
+    VIDEO_SEND_KBPS("video_send_kbps"),
+    VIDEO_RECV_KBPS("video_recv_kbps"),
+    AUDIO_SEND_KBPS("audio_send_kbps"),
+    AUDIO_RECV_KBPS("audio_recv_kbps"),
+    VIDEO_SEND_FPS("video_send_fps"),
+    VIDEO_RECV_FPS("video_recv_fps"),
+    RTT_MS("rtt_ms"),
+    VIDEO_JITTER_MS("video_jitter_ms"),
+    AUDIO_JITTER_MS("audio_jitter_ms"),
+    VIDEO_LOSS_PERCENT("video_loss_percent"),
+    AUDIO_LOSS_PERCENT("audio_loss_percent"),
+    CPU_PERCENT("cpu_percent"),
+    FREQUENCY_SCALE_PERCENT("frequency_scale_percent"),
+    // Mean time per frame in the proxy sinks, and frames they dropped.
+    LOCAL_SINK_FRAME_US("local_sink_frame_us"),
+    REMOTE_SINK_FRAME_US("remote_sink_frame_us"),
+    LOCAL_SINK_DROPPED_FRAMES("local_sink_dropped_frames"),
+    REMOTE_SINK_DROPPED_FRAMES("remote_sink_dropped_frames"),
+    // Largest queue depth and dropped frames of the remote video consumers.
+    DISPLAY_QUEUE_DEPTH("display_queue_depth"),
+    DISPLAY_DROPPED_FRAMES("display_dropped_frames"),
+    RECORDING_QUEUE_DEPTH("recording_queue_depth"),
+    RECORDING_DROPPED_FRAMES("recording_dropped_frames"),
+    // Write throughput and largest backlog of the video recorders.
+    REMOTE_RECORDER_WRITE_MBPS("remote_recorder_write_mbps"),
+    REMOTE_RECORDER_BACKLOG("remote_recorder_backlog_frames"),
+    LOCAL_RECORDER_WRITE_MBPS("local_recorder_write_mbps"),
+    LOCAL_RECORDER_BACKLOG("local_recorder_backlog_frames");
+
+    /** Name used in the JSON report. */
+    public final String key;
+
+    Metric(String key) {
+      this.key = key;
+    }
+  }
+
+  private static final Metric[] METRICS = Metric.values();
+
+  private final int capacity;
+  // Ring of the latest samples per metric, indexed by Metric.ordinal().
+  private final double[][] samples;
+  private final int[] next;
+  private final long[] counts;
+
+  private final long startWallTimeMs = System.currentTimeMillis();
+  private long durationMs;
+  private int freezeCount;
+  private long frozenMs;
+  private boolean frozen;
+
+  public CallQualityMetrics(int capacity) {
+    this.capacity = capacity;
+    samples = new double[METRICS.length][capacity];
+    next = new int[METRICS.length];
+    counts = new long[METRICS.length];
+  }
+
+  /**
+   * Records one stats interval. |cpuPercent| and |frequencyScalePercent| are
+   * the latest CPU monitor samples, not moving averages, so that percentiles
+   * describe individual samples. They are left out if negative, e.g. when no
+   * CPU monitor is running.
+   */
+  public synchronized void record(
+      RtcStatsSnapshot snapshot, int cpuPercent, int frequencyScalePercent) {
+    if (cpuPercent >= 0) {
+      add(Metric.CPU_PERCENT, cpuPercent);
+    }
+    if (frequencyScalePercent >= 0) {
+      add(Metric.FREQUENCY_SCALE_PERCENT, frequencyScalePercent);
+    }
+    if (snapshot.hasCandidatePair) {
+      add(Metric.RTT_MS, snapshot.rttMs);
+    }
+    if (snapshot.videoSendWidth > 0) {
+      add(Metric.VIDEO_SEND_FPS, snapshot.videoSendFps);
+    }
+    if (snapshot.intervalMs == 0) {
+      // Rates need two reports.
+      return;
+    }
+    durationMs += snapshot.intervalMs;
+    add(Metric.VIDEO_SEND_KBPS, snapshot.videoSendBitrateKbps);
+    add(Metric.VIDEO_RECV_KBPS, snapshot.videoRecvBitrateKbps);
+    add(Metric.AUDIO_SEND_KBPS, snapshot.audioSendBitrateKbps);
+    add(Metric.AUDIO_RECV_KBPS, snapshot.audioRecvBitrateKbps);
+    add(Metric.AUDIO_JITTER_MS, snapshot.audioJitterMs);
+    add(Metric.AUDIO_LOSS_PERCENT, snapshot.audioPacketLossPercent);
+    if (snapshot.videoRecvWidth > 0) {
+      add(Metric.VIDEO_RECV_FPS, snapshot.videoRecvFps);
+      add(Metric.VIDEO_JITTER_MS, snapshot.videoJitterMs);
+      add(Metric.VIDEO_LOSS_PERCENT, snapshot.videoPacketLossPercent);
+    }
+
+    final boolean wasFrozen = frozen;
+    frozen = snapshot.isRemoteVideoFrozen();
+    if (frozen) {
+      frozenMs += snapshot.intervalMs;
+      if (!wasFrozen) {
+        freezeCount++;
+      }
+    }
+  }
+
+  /** Records one sample of a metric that is not part of the stats snapshot. */
+  public synchronized void record(Metric metric, double value) {
+    add(metric, value);
+  }
+
+  public synchronized boolean isEmpty() {
+    for (long count : counts) {
+      if (count > 0) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Returns the compact report of this call, e.g.
+   * {"start":1600000000000,"duration_ms":61000,"freezes":1,"frozen_ms":2000,
+   * "metrics":{"rtt_ms":{"p50":41,"p90":60,"p99":85,"max":92,"n":61}}}.
+   * Metrics without samples are left out. Only the latest |capacity| samples
+   * of a metric are taken into account; "n" is the number recorded.
+   */
+  public synchronized JSONObject toJson() {
+    JSONObject metrics = new JSONObject();
+    JSONObject json = new JSONObject();
+    double[] sorted = new double[capacity];
+    try {
+      for (Metric metric : METRICS) {
+        final int size = (int) Math.min(counts[metric.ordinal()], capacity);
+        if (size == 0) {
+          continue;
+        }
+        System.arraycopy(samples[metric.ordinal()], 0, sorted, 0, size);
+        Arrays.sort(sorted, 0, size);
+        JSONObject summary = new JSONObject();
+        summary.put("p50", round(percentile(sorted, size, 50)));
+        summary.put("p90", round(percentile(sorted, size, 90)));
+        summary.put("p99", round(percentile(sorted, size, 99)));
+        summary.put("max", round(sorted[size - 1]));
+        summary.put("n", counts[metric.ordinal()]);
+        metrics.put(metric.key, summary);
+      }
+      json.put("start", startWallTimeMs);
+      json.put("duration_ms", durationMs);
+      json.put("freezes", freezeCount);
+      json.put("frozen_ms", frozenMs);
+      json.put("metrics", metrics);
+    } catch (JSONException e) {
+      throw new RuntimeException(e);
+    }
+    return json;
+  }
+
+  private void add(Metric metric, double value) {
+    final int index = metric.ordinal();
+    samples[index][next[index]] = value;
+    next[index] = (next[index] + 1) % capacity;
+    counts[index]++;
+  }
+
+  // Nearest-rank percentile of the first |count| values of |sorted|.
+  private static double percentile(double[] sorted, int count, int percentile) {
+    int rank = (int) Math.ceil(percentile / 100.0 * count);
+    return sorted[Math.max(0, rank - 1)];
+  }
+
+  // One decimal keeps the report compact.
+  private static double round(double value) {
+    return Math.round(value * 10) / 10.0;
+  }
+}
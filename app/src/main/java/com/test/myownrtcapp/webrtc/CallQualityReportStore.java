@@ -0,0 +1,44 @@
+package com.test.myownrtcapp.webrtc;
+
+import android.util.Log;
+
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Persists the end of call quality report of every call as one JSON record
+ * per line, keeping the last |maxRecords| calls. The report is computed and
+ * written on a background thread.
+ */
+public class CallQualityReportStore {
+  private static final String TAG = "CallQualityReportStore";
+  private static final String FILE_NAME = "call_quality_reports.jsonl";
+  public static final int DEFAULT_MAX_RECORDS = 100;
+
+  // Shared by all stores so that reports of back-to-back calls are written in
+  // order.
+  private static final ExecutorService executor = Executors.newSingleThreadExecutor();
+
+  private final JsonRecordFile file;
+
+  public CallQualityReportStore(File dir, int maxRecords) {
+    this.file = new JsonRecordFile(new File(dir, FILE_NAME), maxRecords);
+  }
+
+  /** Appends the report of |metrics|. */
+  public void record(final CallQualityMetrics metrics) {
+    executor.execute(() -> {
+      final JSONObject report = metrics.toJson();
+      Log.i(TAG, "Call quality report: " + report);
+      try {
+        file.append(report);
+      } catch (IOException e) {
+        Log.e(TAG, "Failed to store call quality report", e);
+      }
+    });
+  }
+}
@@ -0,0 +1,98 @@
+package com.test.myownrtcapp.webrtc;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Timestamps the phases of one call setup on a monotonic clock. Phases are
+ * marked from the UI thread, the signaling thread and the peer connection
+ * executor; only the first occurrence of each phase is kept.
+ */
+public class CallSetupTimeline {
+  /** Call setup phases, in the order they normally happen. */
+  public enum Phase {
+    SOCKET_CONNECTED("socket_connected"),
+    ROOM_CREATED("room_created"),
+    ROOM_JOINED("room_joined"),
+    START_CALL("start_call"),
+    OFFER_RECEIVED("offer_received"),
+    OFFER_CREATED("offer_created"),
+    OFFER_SET("offer_set"),
+    OFFER_SENT("offer_sent"),
+    ANSWER_CREATED("answer_created"),
+    ANSWER_SET("answer_set"),
+    ANSWER_SENT("answer_sent"),
+    ANSWER_RECEIVED("answer_received"),
+    FIRST_LOCAL_CANDIDATE("first_local_candidate"),
+    FIRST_REMOTE_CANDIDATE("first_remote_candidate"),
+    ICE_CHECKING("ice_checking"),
+    ICE_CONNECTED("ice_connected"),
+    DTLS_CONNECTED("dtls_connected"),
+    FIRST_REMOTE_FRAME("first_remote_frame");
+
+    /** Name used in the JSON record. */
+    public final String key;
+
+    Phase(String key) {
+      this.key = key;
+    }
+  }
+
+  private static final Phase[] PHASES = Phase.values();
+
+  // Nanoseconds since start() per phase, 0 if the phase was not reached.
+  private final AtomicLongArray offsetsNs = new AtomicLongArray(PHASES.length);
+  private volatile long startNs;
+  private long startWallTimeMs;
+
+  /** Sets the origin of the timeline. Phases marked before are ignored. */
+  public void start() {
+    startWallTimeMs = System.currentTimeMillis();
+    startNs = System.nanoTime();
+  }
+
+  public void mark(Phase phase) {
+    final long start = startNs;
+    if (start == 0) {
+      return;
+    }
+    // Keep at least 1ns so that a reached phase is never mistaken for 0.
+    final long offsetNs = Math.max(1, System.nanoTime() - start);
+    offsetsNs.compareAndSet(phase.ordinal(), 0, offsetNs);
+  }
+
+  public boolean isStarted() {
+    return startNs != 0;
+  }
+
+  /** Milliseconds from start() to |phase|, or -1 if it was not reached. */
+  public long getOffsetMs(Phase phase) {
+    final long offsetNs = offsetsNs.get(phase.ordinal());
+    return offsetNs == 0 ? -1 : offsetNs / 1000000;
+  }
+
+  /**
+   * Returns the compact JSON record of this call, e.g.
+   * {"start":1600000000000,"phases":{"socket_connected":85,"room_joined":120}}.
+   * Phases that were not reached are left out.
+   */
+  public JSONObject toJson() {
+    JSONObject phases = new JSONObject();
+    JSONObject json = new JSONObject();
+    try {
+      for (Phase phase : PHASES) {
+        final long offsetMs = getOffsetMs(phase);
+        if (offsetMs >= 0) {
+          phases.put(phase.key, offsetMs);
+        }
+      }
+      json.put("start", startWallTimeMs);
+      json.put("phases", phases);
+    } catch (JSONException e) {
+      throw new RuntimeException(e);
+    }
+    return json;
+  }
+}
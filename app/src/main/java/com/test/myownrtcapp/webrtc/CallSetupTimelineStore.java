@@ -0,0 +1,81 @@
+package com.test.myownrtcapp.webrtc;
+
+import android.util.Log;
+
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Persists call setup timelines as one JSON record per line and logs per
+ * phase percentiles over the last |maxRecords| calls. File access happens on
+ * a background thread.
+ */
+public class CallSetupTimelineStore {
+  private static final String TAG = "CallSetupTimelineStore";
+  private static final String FILE_NAME = "call_setup_timelines.jsonl";
+  public static final int DEFAULT_MAX_RECORDS = 100;
+
+  // Shared by all stores so that records of back-to-back calls are written in
+  // order.
+  private static final ExecutorService executor = Executors.newSingleThreadExecutor();
+
+  private final JsonRecordFile file;
+
+  public CallSetupTimelineStore(File dir, int maxRecords) {
+    this.file = new JsonRecordFile(new File(dir, FILE_NAME), maxRecords);
+  }
+
+  /** Appends the record of |timeline| and logs the updated percentiles. */
+  public void record(final CallSetupTimeline timeline) {
+    final JSONObject record = timeline.toJson();
+    Log.d(TAG, "Call setup timeline: " + record);
+    executor.execute(() -> {
+      try {
+        List<JSONObject> records = file.append(record);
+        Log.i(TAG, summarize(records));
+      } catch (IOException e) {
+        Log.e(TAG, "Failed to store call setup timeline", e);
+      }
+    });
+  }
+
+  /**
+   * Formats p50/p90/p99 of every phase over |records|, e.g.
+   * "room_joined=120/300/410ms(n=42)".
+   */
+  static String summarize(List<JSONObject> records) {
+    StringBuilder sb = new StringBuilder("Call setup p50/p90/p99 over ")
+        .append(records.size()).append(" calls:");
+    long[] values = new long[records.size()];
+    for (CallSetupTimeline.Phase phase : CallSetupTimeline.Phase.values()) {
+      int count = 0;
+      for (JSONObject record : records) {
+        JSONObject phases = record.optJSONObject("phases");
+        if (phases != null && phases.has(phase.key)) {
+          values[count++] = phases.optLong(phase.key);
+        }
+      }
+      if (count == 0) {
+        continue;
+      }
+      Arrays.sort(values, 0, count);
+      sb.append(' ').append(phase.key).append('=')
+          .append(percentile(values, count, 50)).append('/')
+          .append(percentile(values, count, 90)).append('/')
+          .append(percentile(values, count, 99)).append("ms(n=").append(count).append(')');
+    }
+    return sb.toString();
+  }
+
+  // Nearest-rank percentile of the first |count| values of |sorted|.
+  static long percentile(long[] sorted, int count, int percentile) {
+    int rank = (int) Math.ceil(percentile / 100.0 * count);
+    return sorted[Math.max(0, rank - 1)];
+  }
+}
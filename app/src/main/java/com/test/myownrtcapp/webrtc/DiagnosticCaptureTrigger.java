@@ -0,0 +1,118 @@
+package com.test.myownrtcapp.webrtc;
+
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Starts a bounded diagnostics capture (RTC event log and internal tracing)
+ * when the stats show the call degrading: a packet loss spike, frozen
+ * remote video, an RTT jump over its baseline or the encoder being CPU
+ * limited. A capture ends after CAPTURE_WINDOW_MS, and a call gets at most
+ * MAX_CAPTURES_PER_CALL of them, MIN_CAPTURE_GAP_MS apart.
+ *
+ * <p>Must be used on the peer connection executor passed at construction,
+ * which also ends the capture windows.
+ */
+class DiagnosticCaptureTrigger {
+  private static final String TAG = "DiagnosticCapture";
+  static final int MAX_CAPTURES_PER_CALL = 3;
+  static final long CAPTURE_WINDOW_MS = 30_000;
+  private static final long MIN_CAPTURE_GAP_MS = 60_000;
+  private static final double LOSS_SPIKE_PERCENT = 5;
+  // An RTT jump is at least twice the baseline and 150 ms above it.
+  private static final double RTT_JUMP_FACTOR = 2;
+  private static final double RTT_JUMP_MIN_MS = 150;
+  private static final double RTT_BASELINE_WEIGHT = 0.1;
+  private static final int RTT_BASELINE_MIN_SAMPLES = 5;
+
+  /** Starts and stops the actual capture. */
+  interface Capture {
+    void start(String trigger);
+
+    void stop();
+  }
+
+  private final ScheduledExecutorService executor;
+  private final Capture capture;
+  private int captureCount;
+  private long lastCaptureEndMs = -MIN_CAPTURE_GAP_MS;
+  @Nullable
+  private ScheduledFuture<?> captureEnd;
+  private double rttBaselineMs;
+  private int rttSamples;
+
+  DiagnosticCaptureTrigger(ScheduledExecutorService executor, Capture capture) {
+    this.executor = executor;
+    this.capture = capture;
+  }
+
+  void onStats(RtcStatsSnapshot snapshot) {
+    final String trigger = getTrigger(snapshot);
+    if (trigger == null || captureEnd != null) {
+      return;
+    }
+    final long nowMs = System.currentTimeMillis();
+    if (captureCount >= MAX_CAPTURES_PER_CALL || nowMs - lastCaptureEndMs < MIN_CAPTURE_GAP_MS) {
+      Log.d(TAG, "Not capturing " + trigger + ", " + captureCount + " captures so far");
+      return;
+    }
+    captureCount++;
+    Log.i(TAG, "Capture " + captureCount + "/" + MAX_CAPTURES_PER_CALL + " for "
+        + CAPTURE_WINDOW_MS + " ms, trigger: " + trigger);
+    capture.start(trigger);
+    captureEnd = executor.schedule(this::endCapture, CAPTURE_WINDOW_MS, TimeUnit.MILLISECONDS);
+  }
+
+  /** Ends a running capture early, e.g. when the call ends. */
+  void stop() {
+    if (captureEnd != null) {
+      captureEnd.cancel(false);
+      endCapture();
+    }
+  }
+
+  private void endCapture() {
+    captureEnd = null;
+    lastCaptureEndMs = System.currentTimeMillis();
+    capture.stop();
+    Log.i(TAG, "Capture " + captureCount + " ended");
+  }
+
+  @Nullable
+  private String getTrigger(RtcStatsSnapshot snapshot) {
+    if (snapshot.isRemoteVideoFrozen()) {
+      return "remote video frozen at " + Math.round(snapshot.videoRecvFps) + " fps";
+    }
+    if (snapshot.intervalMs > 0) {
+      final double loss =
+          Math.max(snapshot.videoPacketLossPercent, snapshot.audioPacketLossPercent);
+      if (loss >= LOSS_SPIKE_PERCENT) {
+        return "packet loss " + Math.round(loss) + "%";
+      }
+    }
+    if ("cpu".equals(snapshot.qualityLimitationReason)) {
+      return "encoder cpu limited";
+    }
+    if (snapshot.hasCandidatePair && snapshot.rttMs > 0) {
+      final double baselineMs = rttBaselineMs;
+      final boolean jump = rttSamples >= RTT_BASELINE_MIN_SAMPLES
+          && snapshot.rttMs >= baselineMs * RTT_JUMP_FACTOR
+          && snapshot.rttMs - baselineMs >= RTT_JUMP_MIN_MS;
+      if (jump) {
+        return "rtt " + Math.round(snapshot.rttMs) + " ms, baseline " + Math.round(baselineMs)
+            + " ms";
+      }
+      // Jumps are kept out of the baseline.
+      rttBaselineMs = rttSamples == 0
+          ? snapshot.rttMs
+          : baselineMs + RTT_BASELINE_WEIGHT * (snapshot.rttMs - baselineMs);
+      rttSamples++;
+    }
+    return null;
+  }
+}
@@ -0,0 +1,498 @@
+package com.test.myownrtcapp.webrtc;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Lossless encoder from 16-bit PCM to standard FLAC, so archives can be
+ * played and verified (flac -t) with any FLAC tool. Every channel of a
+ * block of BLOCK_SIZE sample frames is predicted with the best fixed
+ * polynomial predictor of order 0 to 4, and the residual is Rice coded in
+ * up to 2^MAX_PARTITION_ORDER partitions with a parameter each. Silent
+ * blocks become constant subframes, and blocks that do not compress are
+ * stored verbatim. LPC and stereo decorrelation are left out; recordings
+ * are mostly mono speech, where the fixed predictors come close at a
+ * fraction of the cost.
+ *
+ * <p>Buffers are reused, so encoding a block does not allocate. Not thread
+ * safe.
+ */
+class FlacEncoder {
+  static final int BLOCK_SIZE = 4096;
+  static final int BYTES_PER_SAMPLE = 2;
+  private static final int MAX_FIXED_ORDER = 4;
+  private static final int MAX_PARTITION_ORDER = 6;
+  // Parameter 15 is the escape code of the 4-bit Rice coding method.
+  private static final int MAX_RICE_PARAMETER = 14;
+  private static final int STREAMINFO_SIZE = 34;
+  private static final int WAV_FORMAT_PCM = 1;
+
+  private static final int[] CRC8_TABLE = crcTable(0x07, 8);
+  private static final int[] CRC16_TABLE = crcTable(0x8005, 16);
+
+  private final int sampleRate;
+  private final int channelCount;
+  private final MessageDigest md5;
+  // De-interleaved samples of the current block.
+  private final int[][] samples;
+  // Residuals of the fixed predictor of each order for one channel.
+  private final int[][] residuals = new int[MAX_FIXED_ORDER + 1][BLOCK_SIZE];
+  // Sums of the folded residuals per partition for each partition order.
+  private final long[][] partitionSums = new long[MAX_PARTITION_ORDER + 1][];
+  private final int[] riceParameters = new int[1 << MAX_PARTITION_ORDER];
+  // The frame being written. Large enough for a verbatim frame, which is
+  // the largest one written.
+  private final byte[] frame;
+  private int frameLength;
+  private long bitBuffer;
+  private int bitCount;
+
+  private long frameNumber;
+  private long totalSamples;
+  private int minFrameSize = Integer.MAX_VALUE;
+  private int maxFrameSize;
+
+  FlacEncoder(int sampleRate, int channelCount) {
+    if (channelCount < 1 || channelCount > 8) {
+      throw new IllegalArgumentException("Unsupported channel count " + channelCount);
+    }
+    this.sampleRate = sampleRate;
+    this.channelCount = channelCount;
+    try {
+      md5 = MessageDigest.getInstance("MD5");
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+    samples = new int[channelCount][BLOCK_SIZE];
+    for (int order = 0; order <= MAX_PARTITION_ORDER; order++) {
+      partitionSums[order] = new long[1 << order];
+    }
+    frame = new byte[channelCount * (1 + BLOCK_SIZE * BYTES_PER_SAMPLE) + 32];
+  }
+
+  /**
+   * Returns the "fLaC" marker and STREAMINFO block for the blocks encoded so
+   * far. Written before the first frame as a placeholder and again at the
+   * start of the stream once all blocks are encoded.
+   */
+  ByteBuffer streamHeader() {
+    startFrame();
+    writeBits('f', 8);
+    writeBits('L', 8);
+    writeBits('a', 8);
+    writeBits('C', 8);
+    // Last metadata block, type STREAMINFO.
+    writeBits(0x80, 8);
+    writeBits(STREAMINFO_SIZE, 24);
+    writeBits(BLOCK_SIZE, 16);
+    writeBits(BLOCK_SIZE, 16);
+    writeBits(maxFrameSize > 0 ? minFrameSize : 0, 24);
+    writeBits(maxFrameSize, 24);
+    writeBits(sampleRate, 20);
+    writeBits(channelCount - 1, 3);
+    writeBits(BYTES_PER_SAMPLE * 8 - 1, 5);
+    writeBits((int) (totalSamples >>> 32), 4);
+    writeBits((int) totalSamples, 32);
+    final byte[] digest = totalSamples > 0 ? cloneMd5() : new byte[16];
+    for (byte b : digest) {
+      writeBits(b, 8);
+    }
+    return ByteBuffer.wrap(frame, 0, frameLength);
+  }
+
+  /**
+   * Encodes one block of interleaved little endian samples, the remaining
+   * bytes of |pcm|, of at most BLOCK_SIZE sample frames. Only the last block
+   * of a stream may be shorter. Returns the frame, valid until the next
+   * call.
+   */
+  ByteBuffer encodeBlock(ByteBuffer pcm) {
+    pcm.order(ByteOrder.LITTLE_ENDIAN);
+    final int blockSize = pcm.remaining() / (channelCount * BYTES_PER_SAMPLE);
+    if (blockSize == 0 || blockSize > BLOCK_SIZE) {
+      throw new IllegalArgumentException("Invalid block size " + blockSize);
+    }
+    int position = pcm.position();
+    for (int i = 0; i < blockSize; i++) {
+      for (int channel = 0; channel < channelCount; channel++) {
+        samples[channel][i] = pcm.getShort(position);
+        position += BYTES_PER_SAMPLE;
+      }
+    }
+    // The MD5 of the stream is taken over exactly these bytes.
+    md5.update(pcm);
+
+    startFrame();
+    writeFrameHeader(blockSize);
+    for (int channel = 0; channel < channelCount; channel++) {
+      writeSubframe(samples[channel], blockSize);
+    }
+    // Byte align, then the CRC-16 of the whole frame.
+    if (bitCount > 0) {
+      writeBits(0, 8 - bitCount);
+    }
+    final int crc16 = crc(CRC16_TABLE, 16, frame, frameLength);
+    writeBits(crc16, 16);
+
+    frameNumber++;
+    totalSamples += blockSize;
+    minFrameSize = Math.min(minFrameSize, frameLength);
+    maxFrameSize = Math.max(maxFrameSize, frameLength);
+    return ByteBuffer.wrap(frame, 0, frameLength);
+  }
+
+  /**
+   * Encodes |wavFile|, a WAV file of 16-bit PCM, into a new FLAC file
+   * |flacFile|. Returns the number of sample frames encoded.
+   */
+  static long encodeFile(File wavFile, File flacFile) throws IOException {
+    try (RandomAccessFile wav = new RandomAccessFile(wavFile, "r");
+         RandomAccessFile flac = new RandomAccessFile(flacFile, "rw")) {
+      final FileChannel in = wav.getChannel();
+      final FileChannel out = flac.getChannel();
+      flac.setLength(0);
+
+      final ByteBuffer header = ByteBuffer.allocate(24).order(ByteOrder.LITTLE_ENDIAN);
+      readFully(in, header, 0, 12);
+      if (header.getInt(0) != fourCc("RIFF") || header.getInt(8) != fourCc("WAVE")) {
+        throw new IOException("Not a WAV file: " + wavFile);
+      }
+      FlacEncoder encoder = null;
+      long position = 12;
+      long dataSize = -1;
+      while (dataSize < 0) {
+        readFully(in, header, position, 8);
+        final int chunkId = header.getInt(0);
+        final long chunkSize = header.getInt(4) & 0xffffffffL;
+        position += 8;
+        if (chunkId == fourCc("fmt ")) {
+          readFully(in, header, position, 16);
+          if (header.getShort(0) != WAV_FORMAT_PCM || header.getShort(14) != 16) {
+            throw new IOException("Not 16-bit PCM: " + wavFile);
+          }
+          encoder = new FlacEncoder(header.getInt(4), header.getShort(2));
+        } else if (chunkId == fourCc("data")) {
+          dataSize = Math.min(chunkSize, in.size() - position);
+        }
+        if (dataSize < 0) {
+          // Chunks are padded to an even size.
+          position += chunkSize + (chunkSize & 1);
+        }
+      }
+      if (encoder == null) {
+        throw new IOException("No format chunk: " + wavFile);
+      }
+
+      writeFully(out, encoder.streamHeader());
+      final int blockBytes = BLOCK_SIZE * encoder.channelCount * BYTES_PER_SAMPLE;
+      final ByteBuffer pcm = ByteBuffer.allocate(blockBytes);
+      final long end = position + dataSize / (encoder.channelCount * BYTES_PER_SAMPLE)
+          * (encoder.channelCount * BYTES_PER_SAMPLE);
+      while (position < end) {
+        final int count = (int) Math.min(blockBytes, end - position);
+        readFully(in, pcm, position, count);
+        position += count;
+        writeFully(out, encoder.encodeBlock(pcm));
+      }
+      out.position(0);
+      writeFully(out, encoder.streamHeader());
+      return encoder.totalSamples;
+    }
+  }
+
+  private void writeFrameHeader(int blockSize) {
+    // Sync code, reserved bit, fixed block size stream.
+    writeBits(0x3ffe, 14);
+    writeBits(0, 2);
+    // Block size 4096, or the size as a 16-bit number after the frame number.
+    writeBits(blockSize == BLOCK_SIZE ? 12 : 7, 4);
+    // Sample rate as in STREAMINFO.
+    writeBits(0, 4);
+    // Independent channels.
+    writeBits(channelCount - 1, 4);
+    // 16 bits per sample, reserved bit.
+    writeBits(4, 3);
+    writeBits(0, 1);
+    writeUtf8(frameNumber);
+    if (blockSize != BLOCK_SIZE) {
+      writeBits(blockSize - 1, 16);
+    }
+    writeBits(crc(CRC8_TABLE, 8, frame, frameLength), 8);
+  }
+
+  private void writeSubframe(int[] x, int blockSize) {
+    boolean constant = true;
+    for (int i = 1; i < blockSize && constant; i++) {
+      constant = x[i] == x[0];
+    }
+    if (constant) {
+      writeBits(0, 8);
+      writeBits(x[0], 16);
+      return;
+    }
+
+    final int order = computeFixedResiduals(x, blockSize);
+    final int[] residual = residuals[order];
+    final int partitionOrder = chooseRiceParameters(residual, blockSize, order);
+    final int partitionCount = 1 << partitionOrder;
+    final int partitionSize = blockSize >> partitionOrder;
+
+    // Exact size, to fall back to verbatim for incompressible blocks.
+    long bits = 8 + order * 16 + 2 + 4 + partitionCount * 4;
+    for (int p = 0, i = order; p < partitionCount; p++) {
+      final int k = riceParameters[p];
+      for (final int end = (p + 1) * partitionSize; i < end; i++) {
+        bits += (fold(residual[i]) >>> k) + 1 + k;
+      }
+    }
+    if (bits >= 8 + blockSize * 16) {
+      writeBits(1 << 1, 8);
+      for (int i = 0; i < blockSize; i++) {
+        writeBits(x[i], 16);
+      }
+      return;
+    }
+
+    writeBits((8 | order) << 1, 8);
+    for (int i = 0; i < order; i++) {
+      writeBits(x[i], 16);
+    }
+    // Rice coding with 4-bit parameters.
+    writeBits(0, 2);
+    writeBits(partitionOrder, 4);
+    for (int p = 0, i = order; p < partitionCount; p++) {
+      final int k = riceParameters[p];
+      writeBits(k, 4);
+      for (final int end = (p + 1) * partitionSize; i < end; i++) {
+        writeRice(fold(residual[i]), k);
+      }
+    }
+  }
+
+  // Computes the residuals of all fixed predictors and returns the order
+  // with the smallest sum of absolute residuals.
+  private int computeFixedResiduals(int[] x, int blockSize) {
+    final int[] r0 = residuals[0];
+    final int[] r1 = residuals[1];
+    final int[] r2 = residuals[2];
+    final int[] r3 = residuals[3];
+    final int[] r4 = residuals[4];
+    long sum0 = 0;
+    long sum1 = 0;
+    long sum2 = 0;
+    long sum3 = 0;
+    long sum4 = 0;
+    for (int i = 0; i < blockSize; i++) {
+      final int e0 = x[i];
+      final int e1 = i >= 1 ? e0 - x[i - 1] : 0;
+      final int e2 = i >= 2 ? e1 - r1[i - 1] : 0;
+      final int e3 = i >= 3 ? e2 - r2[i - 1] : 0;
+      final int e4 = i >= 4 ? e3 - r3[i - 1] : 0;
+      r0[i] = e0;
+      r1[i] = e1;
+      r2[i] = e2;
+      r3[i] = e3;
+      r4[i] = e4;
+      // Compare all orders over the same samples.
+      if (i >= MAX_FIXED_ORDER) {
+        sum0 += Math.abs(e0);
+        sum1 += Math.abs(e1);
+        sum2 += Math.abs(e2);
+        sum3 += Math.abs(e3);
+        sum4 += Math.abs(e4);
+      }
+    }
+    int order = 0;
+    long best = sum0;
+    if (sum1 < best) {
+      order = 1;
+      best = sum1;
+    }
+    if (sum2 < best) {
+      order = 2;
+      best = sum2;
+    }
+    if (sum3 < best) {
+      order = 3;
+      best = sum3;
+    }
+    if (sum4 < best) {
+      order = 4;
+    }
+    return Math.min(order, blockSize - 1);
+  }
+
+  // Picks the partition order with the smallest estimated size and fills
+  // |riceParameters| for it. Partition sums of the finest order are
+  // computed once and merged pairwise for the coarser orders.
+  private int chooseRiceParameters(int[] residual, int blockSize, int predictorOrder) {
+    int maxOrder = 0;
+    while (maxOrder < MAX_PARTITION_ORDER && (blockSize & (2 << maxOrder) - 1) == 0
+        && (blockSize >> (maxOrder + 1)) > predictorOrder) {
+      maxOrder++;
+    }
+    final long[] finest = partitionSums[maxOrder];
+    final int finestSize = blockSize >> maxOrder;
+    for (int p = 0, i = predictorOrder; p < 1 << maxOrder; p++) {
+      long sum = 0;
+      for (final int end = (p + 1) * finestSize; i < end; i++) {
+        sum += fold(residual[i]);
+      }
+      finest[p] = sum;
+    }
+    for (int order = maxOrder - 1; order >= 0; order--) {
+      final long[] sums = partitionSums[order];
+      final long[] finer = partitionSums[order + 1];
+      for (int p = 0; p < 1 << order; p++) {
+        sums[p] = finer[2 * p] + finer[2 * p + 1];
+      }
+    }
+
+    int bestOrder = 0;
+    long bestBits = Long.MAX_VALUE;
+    for (int order = 0; order <= maxOrder; order++) {
+      final long[] sums = partitionSums[order];
+      final int size = blockSize >> order;
+      long bits = 0;
+      for (int p = 0; p < 1 << order; p++) {
+        final int count = p == 0 ? size - predictorOrder : size;
+        final int k = riceParameter(sums[p], count);
+        bits += 4 + (long) count * (k + 1) + (sums[p] >>> k);
+      }
+      if (bits < bestBits) {
+        bestBits = bits;
+        bestOrder = order;
+      }
+    }
+    final long[] sums = partitionSums[bestOrder];
+    final int size = blockSize >> bestOrder;
+    for (int p = 0; p < 1 << bestOrder; p++) {
+      riceParameters[p] = riceParameter(sums[p], p == 0 ? size - predictorOrder : size);
+    }
+    return bestOrder;
+  }
+
+  // Parameter close to log2 of the mean folded residual.
+  private static int riceParameter(long sum, int count) {
+    int k = 0;
+    while (k < MAX_RICE_PARAMETER && ((long) count << (k + 1)) < sum) {
+      k++;
+    }
+    return k;
+  }
+
+  // Maps signed residuals to unsigned: 0, -1, 1, -2, ... to 0, 1, 2, 3, ...
+  private static int fold(int residual) {
+    return (residual << 1) ^ (residual >> 31);
+  }
+
+  private void writeRice(int value, int k) {
+    int quotient = value >>> k;
+    if (quotient + 1 + k <= 32) {
+      // Unary quotient, stop bit and remainder in one go.
+      writeBits((1 << k) | (value & ((1 << k) - 1)), quotient + 1 + k);
+      return;
+    }
+    while (quotient >= 32) {
+      writeBits(0, 32);
+      quotient -= 32;
+    }
+    writeBits(1, quotient + 1);
+    if (k > 0) {
+      writeBits(value & ((1 << k) - 1), k);
+    }
+  }
+
+  // Frame numbers are coded like UTF-8 code points, with up to 36 bits.
+  private void writeUtf8(long value) {
+    if (value < 0x80) {
+      writeBits((int) value, 8);
+      return;
+    }
+    int continuationBytes = 1;
+    while (value >= 1L << (5 * continuationBytes + 6)) {
+      continuationBytes++;
+    }
+    final int leadBits = 6 - continuationBytes;
+    final int lead = (0xff00 >> (continuationBytes + 1)) & 0xff;
+    writeBits(lead | (int) (value >>> (6 * continuationBytes)) & ((1 << leadBits) - 1), 8);
+    for (int i = continuationBytes - 1; i >= 0; i--) {
+      writeBits(0x80 | (int) (value >>> (6 * i)) & 0x3f, 8);
+    }
+  }
+
+  private void startFrame() {
+    frameLength = 0;
+    bitBuffer = 0;
+    bitCount = 0;
+  }
+
+  // Appends the low |bits| bits of |value|, at most 32, most significant
+  // bit first.
+  private void writeBits(int value, int bits) {
+    bitBuffer = (bitBuffer << bits) | (value & ((1L << bits) - 1));
+    bitCount += bits;
+    while (bitCount >= 8) {
+      bitCount -= 8;
+      frame[frameLength++] = (byte) (bitBuffer >>> bitCount);
+    }
+  }
+
+  private byte[] cloneMd5() {
+    try {
+      return ((MessageDigest) md5.clone()).digest();
+    } catch (CloneNotSupportedException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private static int crc(int[] table, int width, byte[] data, int length) {
+    final int mask = (1 << width) - 1;
+    int crc = 0;
+    for (int i = 0; i < length; i++) {
+      crc = ((crc << 8) ^ table[((crc >>> (width - 8)) ^ data[i]) & 0xff]) & mask;
+    }
+    return crc;
+  }
+
+  private static int[] crcTable(int polynomial, int width) {
+    final int topBit = 1 << (width - 1);
+    final int mask = (1 << width) - 1;
+    final int[] table = new int[256];
+    for (int i = 0; i < 256; i++) {
+      int crc = i << (width - 8);
+      for (int bit = 0; bit < 8; bit++) {
+        crc = (crc & topBit) != 0 ? (crc << 1) ^ polynomial : crc << 1;
+      }
+      table[i] = crc & mask;
+    }
+    return table;
+  }
+
+  private static int fourCc(String id) {
+    return id.charAt(0) | id.charAt(1) << 8 | id.charAt(2) << 16 | id.charAt(3) << 24;
+  }
+
+  private static void readFully(FileChannel in, ByteBuffer buffer, long position, int count)
+      throws IOException {
+    buffer.clear().limit(count);
+    while (buffer.hasRemaining()) {
+      if (in.read(buffer, position + buffer.position()) < 0) {
+        throw new IOException("Unexpected end of file");
+      }
+    }
+    buffer.flip();
+  }
+
+  private static void writeFully(FileChannel out, ByteBuffer buffer) throws IOException {
+    while (buffer.hasRemaining()) {
+      out.write(buffer);
+    }
+  }
+}
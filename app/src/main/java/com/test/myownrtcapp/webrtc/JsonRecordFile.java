@@ -0,0 +1,80 @@
+package com.test.myownrtcapp.webrtc;
+
+import android.util.Log;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A file of JSON records, one per line, that keeps only the last
+ * |maxRecords| records. Not thread safe; callers serialize access.
+ */
+class JsonRecordFile {
+  private static final String TAG = "JsonRecordFile";
+  private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+  private final File file;
+  private final int maxRecords;
+
+  JsonRecordFile(File file, int maxRecords) {
+    this.file = file;
+    this.maxRecords = maxRecords;
+  }
+
+  // Adds |record| to the file, dropping the oldest records beyond
+  // |maxRecords|, and returns the records now in the file.
+  List<JSONObject> append(JSONObject record) throws IOException {
+    List<JSONObject> records = read();
+    records.add(record);
+    if (records.size() > maxRecords) {
+      records = new ArrayList<>(records.subList(records.size() - maxRecords, records.size()));
+    }
+    write(records);
+    return records;
+  }
+
+  // Replaces the contents of the file with |records|.
+  void write(List<JSONObject> records) throws IOException {
+    File tmpFile = new File(file.getPath() + ".tmp");
+    try (Writer writer = new OutputStreamWriter(new FileOutputStream(tmpFile), UTF_8)) {
+      for (JSONObject r : records) {
+        writer.write(r.toString());
+        writer.write('\n');
+      }
+    }
+    if (!tmpFile.renameTo(file)) {
+      throw new IOException("Failed to rename " + tmpFile + " to " + file);
+    }
+  }
+
+  List<JSONObject> read() throws IOException {
+    List<JSONObject> records = new ArrayList<>();
+    if (!file.exists()) {
+      return records;
+    }
+    try (BufferedReader reader =
+             new BufferedReader(new InputStreamReader(new FileInputStream(file), UTF_8))) {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        try {
+          records.add(new JSONObject(line));
+        } catch (JSONException e) {
+          Log.w(TAG, "Skipping malformed record in " + file.getName() + ": " + line);
+        }
+      }
+    }
+    return records;
+  }
+}
@@ -0,0 +1,314 @@
+package com.test.myownrtcapp.webrtc;
+
+import android.content.Context;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+
+import org.webrtc.CapturerObserver;
+import org.webrtc.JavaI420Buffer;
+import org.webrtc.SurfaceTextureHelper;
+import org.webrtc.VideoCapturer;
+import org.webrtc.VideoFrame;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Plays a Y4M file as a camera, like FileVideoCapturer, but without copying:
+ * the file is memory mapped and every frame wraps its Y, U and V planes as
+ * slices of the mapping. The file loops seamlessly, with timestamps that keep
+ * increasing. Frames are paced on System.nanoTime() by a dedicated thread,
+ * which touches the pages of the next frame ahead of time so that the
+ * encoder rarely waits for the disk. When the thread falls behind, frames
+ * are skipped instead of sent in a burst.
+ *
+ * <p>Only 8-bit 4:2:0 files are supported.
+ */
+public class MappedY4mVideoCapturer implements VideoCapturer {
+  private static final String TAG = "MappedY4mVideoCapturer";
+  private static final Charset US_ASCII = Charset.forName("US-ASCII");
+  private static final String Y4M_MAGIC = "YUV4MPEG2";
+  private static final String FRAME_MAGIC = "FRAME";
+  // Longest header line read, of the file and of a frame.
+  private static final int MAX_HEADER_LENGTH = 1024;
+  private static final int PAGE_SIZE = 4096;
+  private static final int DEFAULT_FPS = 30;
+  // The 8-bit 4:2:0 colorspaces; they only differ in chroma siting.
+  private static final Set<String> SUPPORTED_COLORSPACES =
+      new HashSet<>(Arrays.asList("C420", "C420jpeg", "C420paldv", "C420mpeg2"));
+
+  private final String fileName;
+  private final int width;
+  private final int height;
+  private final int fileFps;
+  private final int frameCount;
+  // Planes of every frame, indexed by frame.
+  private final ByteBuffer[] framesY;
+  private final ByteBuffer[] framesU;
+  private final ByteBuffer[] framesV;
+  @Nullable private CapturerObserver capturerObserver;
+  @Nullable private Thread captureThread;
+  private volatile boolean capturing;
+  private volatile int framerate;
+
+  public MappedY4mVideoCapturer(String fileName) throws IOException {
+    this.fileName = fileName;
+    try (RandomAccessFile file = new RandomAccessFile(fileName, "r");
+         FileChannel channel = file.getChannel()) {
+      final String header = readLine(channel, 0);
+      if (header == null || !header.startsWith(Y4M_MAGIC)) {
+        throw new IOException("Not a Y4M file: " + fileName);
+      }
+      int width = 0;
+      int height = 0;
+      int fps = DEFAULT_FPS;
+      for (String token : header.split(" ")) {
+        if (token.isEmpty()) {
+          continue;
+        }
+        try {
+          switch (token.charAt(0)) {
+            case 'W':
+              width = Integer.parseInt(token.substring(1));
+              break;
+            case 'H':
+              height = Integer.parseInt(token.substring(1));
+              break;
+            case 'F':
+              final String[] rate = token.substring(1).split(":");
+              if (rate.length != 2) {
+                throw new IOException("Bad frame rate " + token + " in " + fileName);
+              }
+              fps = Math.max(1, Math.round(
+                  (float) Integer.parseInt(rate[0]) / Math.max(1, Integer.parseInt(rate[1]))));
+              break;
+            case 'C':
+              if (!SUPPORTED_COLORSPACES.contains(token)) {
+                throw new IOException("Only 8-bit 4:2:0 is supported, not " + token);
+              }
+              break;
+            default:
+              break;
+          }
+        } catch (NumberFormatException e) {
+          throw new IOException("Bad header field " + token + " in " + fileName, e);
+        }
+      }
+      if (width <= 0 || height <= 0) {
+        throw new IOException("No frame size in " + header);
+      }
+      this.width = width;
+      this.height = height;
+      this.fileFps = fps;
+
+      final int chromaWidth = (width + 1) / 2;
+      final int chromaHeight = (height + 1) / 2;
+      final int ySize = width * height;
+      final int chromaSize = chromaWidth * chromaHeight;
+      final int frameSize = ySize + 2 * chromaSize;
+      // A mapping is at most 2 GB, so long files take several, each ending
+      // at a frame boundary.
+      final List<ByteBuffer> y = new ArrayList<>();
+      final List<ByteBuffer> u = new ArrayList<>();
+      final List<ByteBuffer> v = new ArrayList<>();
+      final List<Long> frameOffsets = new ArrayList<>();
+      long position = header.length() + 1;
+      final long fileSize = channel.size();
+      while (position < fileSize) {
+        final String frameHeader = readLine(channel, position);
+        if (frameHeader == null || !frameHeader.startsWith(FRAME_MAGIC)) {
+          throw new IOException("Bad frame header at " + position + " in " + fileName);
+        }
+        final long dataOffset = position + frameHeader.length() + 1;
+        if (dataOffset + frameSize > fileSize) {
+          Log.w(TAG, "Ignoring truncated last frame of " + fileName);
+          break;
+        }
+        frameOffsets.add(dataOffset);
+        position = dataOffset + frameSize;
+      }
+      if (frameOffsets.isEmpty()) {
+        throw new IOException("No frames in " + fileName);
+      }
+      int first = 0;
+      while (first < frameOffsets.size()) {
+        final long start = frameOffsets.get(first);
+        int last = first;
+        while (last + 1 < frameOffsets.size()
+            && frameOffsets.get(last + 1) + frameSize - start <= Integer.MAX_VALUE) {
+          last++;
+        }
+        final MappedByteBuffer mapping = channel.map(FileChannel.MapMode.READ_ONLY, start,
+            frameOffsets.get(last) + frameSize - start);
+        for (int i = first; i <= last; i++) {
+          final int offset = (int) (frameOffsets.get(i) - start);
+          y.add(slice(mapping, offset, ySize));
+          u.add(slice(mapping, offset + ySize, chromaSize));
+          v.add(slice(mapping, offset + ySize + chromaSize, chromaSize));
+        }
+        first = last + 1;
+      }
+      this.frameCount = frameOffsets.size();
+      this.framesY = y.toArray(new ByteBuffer[0]);
+      this.framesU = u.toArray(new ByteBuffer[0]);
+      this.framesV = v.toArray(new ByteBuffer[0]);
+    }
+    // The mappings stay valid after the channel is closed.
+    Log.d(TAG, "Mapped " + frameCount + " frames of " + width + "x" + height + "@" + fileFps
+        + " from " + fileName);
+  }
+
+  @Override
+  public void initialize(SurfaceTextureHelper surfaceTextureHelper, Context applicationContext,
+      CapturerObserver capturerObserver) {
+    this.capturerObserver = capturerObserver;
+  }
+
+  /** The frames have the size of the file; only |framerate| is used, 0 for the file's. */
+  @Override
+  public synchronized void startCapture(int width, int height, int framerate) {
+    if (captureThread != null) {
+      return;
+    }
+    this.framerate = framerate > 0 ? framerate : fileFps;
+    capturing = true;
+    captureThread = new Thread(this::captureLoop, TAG);
+    captureThread.start();
+    if (capturerObserver != null) {
+      capturerObserver.onCapturerStarted(true);
+    }
+  }
+
+  @Override
+  public synchronized void stopCapture() throws InterruptedException {
+    if (captureThread == null) {
+      return;
+    }
+    capturing = false;
+    LockSupport.unpark(captureThread);
+    captureThread.join();
+    captureThread = null;
+    if (capturerObserver != null) {
+      capturerObserver.onCapturerStopped();
+    }
+  }
+
+  /** Only the frame rate can change; it applies from the next frame. */
+  @Override
+  public void changeCaptureFormat(int width, int height, int framerate) {
+    this.framerate = framerate > 0 ? framerate : fileFps;
+  }
+
+  @Override
+  public void dispose() {
+    try {
+      stopCapture();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  @Override
+  public boolean isScreencast() {
+    return false;
+  }
+
+  private void captureLoop() {
+    final int chromaWidth = (width + 1) / 2;
+    final long startNs = System.nanoTime();
+    final long startTimestampNs = SystemClock.elapsedRealtimeNanos();
+    long dueNs = startNs;
+    long frameNumber = 0;
+    long skippedFrames = 0;
+    while (capturing) {
+      long waitNs;
+      while (capturing && (waitNs = dueNs - System.nanoTime()) > 0) {
+        LockSupport.parkNanos(waitNs);
+      }
+      if (!capturing) {
+        break;
+      }
+      final long intervalNs = TimeUnit.SECONDS.toNanos(1) / framerate;
+      final long lateNs = System.nanoTime() - dueNs;
+      if (lateNs > intervalNs) {
+        // Keeps to real time instead of catching up in a burst.
+        final long behind = lateNs / intervalNs;
+        frameNumber += behind;
+        dueNs += behind * intervalNs;
+        skippedFrames += behind;
+      }
+
+      final int index = (int) (frameNumber % frameCount);
+      final JavaI420Buffer buffer = JavaI420Buffer.wrap(width, height,
+          framesY[index].duplicate(), width, framesU[index].duplicate(), chromaWidth,
+          framesV[index].duplicate(), chromaWidth, null /* releaseCallback */);
+      final VideoFrame frame =
+          new VideoFrame(buffer, 0 /* rotation */, startTimestampNs + (dueNs - startNs));
+      if (capturerObserver != null) {
+        capturerObserver.onFrameCaptured(frame);
+      }
+      frame.release();
+
+      frameNumber++;
+      dueNs += intervalNs;
+      prefetch((int) (frameNumber % frameCount));
+    }
+    Log.d(TAG, "Captured " + frameNumber + " frames from " + fileName + ", skipped "
+        + skippedFrames);
+  }
+
+  // Touches every page of a frame, so that its planes are read from disk
+  // before the frame is due rather than by the encoder.
+  private void prefetch(int index) {
+    final int sum = touchPages(framesY[index]) + touchPages(framesU[index])
+        + touchPages(framesV[index]);
+    if (sum == Integer.MIN_VALUE) {
+      // Keeps the reads from being optimized away.
+      Log.d(TAG, "Prefetched " + index);
+    }
+  }
+
+  private static int touchPages(ByteBuffer plane) {
+    int sum = 0;
+    for (int i = 0; i < plane.capacity(); i += PAGE_SIZE) {
+      sum += plane.get(i);
+    }
+    return sum;
+  }
+
+  // Returns the line at |position| without the newline, or null if there is
+  // none within MAX_HEADER_LENGTH bytes.
+  @Nullable
+  private static String readLine(FileChannel channel, long position) throws IOException {
+    final ByteBuffer buffer = ByteBuffer.allocate(MAX_HEADER_LENGTH);
+    int count;
+    do {
+      count = channel.read(buffer, position + buffer.position());
+    } while (count > 0 && buffer.hasRemaining());
+    for (int i = 0; i < buffer.position(); i++) {
+      if (buffer.get(i) == '\n') {
+        return new String(buffer.array(), 0, i, US_ASCII);
+      }
+    }
+    return null;
+  }
+
+  private static ByteBuffer slice(ByteBuffer mapping, int offset, int length) {
+    final ByteBuffer slice = mapping.duplicate();
+    slice.position(offset).limit(offset + length);
+    return slice.slice();
+  }
+}
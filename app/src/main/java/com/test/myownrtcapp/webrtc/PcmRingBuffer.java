@@ -0,0 +1,88 @@
+package com.test.myownrtcapp.webrtc;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.GatheringByteChannel;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Single producer, single consumer ring of PCM bytes. The producer (the
+ * real-time audio thread) copies each frame into a preallocated direct
+ * buffer without locking or allocating, and a frame that does not fit is
+ * rejected instead of blocking. The consumer drains contiguous regions
+ * straight into a channel, with one gather write when the data wraps.
+ */
+class PcmRingBuffer {
+  private final int capacity;
+  private final int mask;
+  // Separate views so that producer and consumer never share position state.
+  private final ByteBuffer producerView;
+  private final ByteBuffer[] consumerViews = new ByteBuffer[2];
+  // Total number of bytes written and read. Only the producer advances
+  // |writePosition| and only the consumer |readPosition|.
+  private final AtomicLong writePosition = new AtomicLong();
+  private final AtomicLong readPosition = new AtomicLong();
+
+  /** |capacity| must be a power of two. */
+  PcmRingBuffer(int capacity) {
+    if (Integer.bitCount(capacity) != 1) {
+      throw new IllegalArgumentException("Capacity must be a power of two: " + capacity);
+    }
+    this.capacity = capacity;
+    this.mask = capacity - 1;
+    final ByteBuffer buffer = ByteBuffer.allocateDirect(capacity);
+    producerView = buffer.duplicate();
+    consumerViews[0] = buffer.duplicate();
+    consumerViews[1] = buffer.duplicate();
+  }
+
+  /** Producer side. Copies all of |data| or, if it does not fit, nothing. */
+  boolean offer(byte[] data) {
+    final int length = data.length;
+    final long write = writePosition.get();
+    if (length > capacity - (int) (write - readPosition.get())) {
+      return false;
+    }
+    final int index = (int) (write & mask);
+    final int first = Math.min(length, capacity - index);
+    producerView.limit(capacity).position(index);
+    producerView.put(data, 0, first);
+    if (first < length) {
+      producerView.position(0);
+      producerView.put(data, first, length - first);
+    }
+    // Publishes the bytes to the consumer.
+    writePosition.lazySet(write + length);
+    return true;
+  }
+
+  /** Consumer side. Number of bytes that can be drained. */
+  int available() {
+    return (int) (writePosition.get() - readPosition.get());
+  }
+
+  /**
+   * Consumer side. Writes the next |count| bytes, at most available(), to
+   * |channel|. The bytes are consumed even if the write fails.
+   */
+  void drainTo(GatheringByteChannel channel, int count) throws IOException {
+    final long read = readPosition.get();
+    final int index = (int) (read & mask);
+    final int first = Math.min(count, capacity - index);
+    consumerViews[0].limit(index + first).position(index);
+    consumerViews[1].limit(count - first).position(0);
+    try {
+      long remaining = count;
+      while (remaining > 0) {
+        remaining -= channel.write(consumerViews);
+      }
+    } finally {
+      readPosition.lazySet(read + count);
+    }
+  }
+
+  /** Consumer side. Drops the next |count| bytes, at most available(). */
+  void skip(int count) {
+    readPosition.lazySet(readPosition.get() + count);
+  }
+}
@@ -47,8 +47,6 @@ import org.webrtc.SdpObserver;
 import org.webrtc.SessionDescription;
 import org.webrtc.SoftwareVideoDecoderFactory;
 import org.webrtc.SoftwareVideoEncoderFactory;
-import org.webrtc.StatsObserver;
-import org.webrtc.StatsReport;
 import org.webrtc.SurfaceTextureHelper;
 import org.webrtc.VideoCapturer;
 import org.webrtc.VideoDecoderFactory;
@@ -67,22 +65,12 @@ import java.io.File;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
-import java.text.DateFormat;
-import java.text.SimpleDateFormat;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Collections;
-import java.util.Date;
 import java.util.HashSet;
-import java.util.Iterator;
 import java.util.List;
-import java.util.Locale;
-import java.util.Timer;
-import java.util.TimerTask;
-import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.concurrent.ScheduledExecutorService;
 
 /**
  * Peer connection client implementation.
@@ -103,13 +91,11 @@ public class PeerConnectionClient {
   private static final String VIDEO_CODEC_H264_HIGH = "H264 High";
   private static final String AUDIO_CODEC_OPUS = "opus";
   private static final String AUDIO_CODEC_ISAC = "ISAC";
-  private static final String VIDEO_CODEC_PARAM_START_BITRATE = "x-google-start-bitrate";
   private static final String VIDEO_FLEXFEC_FIELDTRIAL =
       "WebRTC-FlexFEC-03-Advertised/Enabled/WebRTC-FlexFEC-03/Enabled/";
   private static final String VIDEO_VP8_INTEL_HW_ENCODER_FIELDTRIAL = "WebRTC-IntelVP8/Enabled/";
   private static final String DISABLE_WEBRTC_AGC_FIELDTRIAL =
       "WebRTC-Audio-MinimizeResamplingOnMobile/Enabled/";
-  private static final String AUDIO_CODEC_PARAM_BITRATE = "maxaveragebitrate";
   private static final String AUDIO_ECHO_CANCELLATION_CONSTRAINT = "googEchoCancellation";
   private static final String AUDIO_AUTO_GAIN_CONTROL_CONSTRAINT = "googAutoGainControl";
   private static final String AUDIO_HIGH_PASS_FILTER_CONSTRAINT = "googHighpassFilter";
@@ -123,18 +109,28 @@ public class PeerConnectionClient {
   // Executor thread is started once in private ctor and is used for all
   // peer connection API calls to ensure new peer connection factory is
   // created on the same thread as previously destroyed factory.
-  private static final ExecutorService executor = Executors.newSingleThreadExecutor();
+  private static final ScheduledExecutorService executor =
+      Executors.newSingleThreadScheduledExecutor();
+  // Process-scoped, so a warm factory survives between calls.
+  private static final PeerConnectionFactoryHolder factoryHolder =
+      new PeerConnectionFactoryHolder(executor);
 
   private final PCObserver pcObserver = new PCObserver();
   private final SDPObserver sdpObserver = new SDPObserver();
-  private final Timer statsTimer = new Timer();
+  // Only used on the executor.
+  private final RtcStatsEngine statsEngine = new RtcStatsEngine();
+  private final StatsPollingScheduler statsScheduler =
+      new StatsPollingScheduler(executor, this::getStats);
   private final EglBase rootEglBase;
   private final Context appContext;
   private final PeerConnectionParameters peerConnectionParameters;
   private final PeerConnectionEvents events;
+  private final String fieldTrials;
 
   @Nullable
   private PeerConnectionFactory factory;
+  // True if |factory| is owned by |factoryHolder| and must not be disposed.
+  private boolean factoryFromHolder;
   @Nullable
   private PeerConnection peerConnection;
   @Nullable
@@ -148,6 +144,10 @@ public class PeerConnectionClient {
   private VideoSink localRender;
   @Nullable private List<VideoSink> remoteSinks;
   private AppRTCClient.SignalingParameters signalingParameters;
+  @Nullable
+  private CallBootstrapTimings bootstrapTimings;
+  @Nullable
+  private CallSetupTimeline timeline;
   private int videoWidth;
   private int videoHeight;
   private int videoFps;
@@ -181,6 +181,18 @@ public class PeerConnectionClient {
   // Enable RtcEventLog.
   @Nullable
   private RtcEventLog rtcEventLog;
+  @Nullable
+  private RtcEventLogStore rtcEventLogStore;
+  // Captures diagnostics for a bounded window when the call degrades.
+  @Nullable
+  private DiagnosticCaptureTrigger diagnosticCaptureTrigger;
+  @Nullable
+  private RtcEventLog diagnosticEventLog;
+  @Nullable
+  private File diagnosticTraceFile;
+  @Nullable
+  private String diagnosticTrigger;
+  private long diagnosticStartTimeMs;
   // Implements the WebRtcAudioRecordSamplesReadyCallback interface and writes
   // recorded audio samples to an output file.
   @Nullable private RecordedAudioToFileController saveRecordedAudioToFile;
@@ -232,6 +244,15 @@ public class PeerConnectionClient {
     public final boolean disableBuiltInNS;
     public final boolean disableWebRtcAGCAndHPF;
     public final boolean enableRtcEventLog;
+    public final boolean reuseFactory;
+    // Number of ICE candidates gathered ahead of the offer/answer. 0 disables
+    // pre-gathering.
+    public final int iceCandidatePoolSize;
+    // Compresses the segments of saved input audio to FLAC.
+    public final boolean compressSavedInputAudio;
+    // Captures an RtcEventLog and internal trace for a bounded window when
+    // the call degrades, unless they already run for the whole call.
+    public final boolean triggeredDiagnostics;
     private final DataChannelParameters dataChannelParameters;
 
     public PeerConnectionParameters(boolean videoCallEnabled, boolean loopback, boolean tracing,
@@ -241,6 +262,24 @@ public class PeerConnectionClient {
                                     boolean useOpenSLES, boolean disableBuiltInAEC, boolean disableBuiltInAGC,
                                     boolean disableBuiltInNS, boolean disableWebRtcAGCAndHPF, boolean enableRtcEventLog,
                                     DataChannelParameters dataChannelParameters) {
+      this(videoCallEnabled, loopback, tracing, videoWidth, videoHeight, videoFps, videoMaxBitrate,
+          videoCodec, videoCodecHwAcceleration, videoFlexfecEnabled, audioStartBitrate, audioCodec,
+          noAudioProcessing, aecDump, saveInputAudioToFile, useOpenSLES, disableBuiltInAEC,
+          disableBuiltInAGC, disableBuiltInNS, disableWebRtcAGCAndHPF, enableRtcEventLog,
+          false /* reuseFactory */, 0 /* iceCandidatePoolSize */,
+          false /* compressSavedInputAudio */, false /* triggeredDiagnostics */,
+          dataChannelParameters);
+    }
+
+    public PeerConnectionParameters(boolean videoCallEnabled, boolean loopback, boolean tracing,
+                                    int videoWidth, int videoHeight, int videoFps, int videoMaxBitrate, String videoCodec,
+                                    boolean videoCodecHwAcceleration, boolean videoFlexfecEnabled, int audioStartBitrate,
+                                    String audioCodec, boolean noAudioProcessing, boolean aecDump, boolean saveInputAudioToFile,
+                                    boolean useOpenSLES, boolean disableBuiltInAEC, boolean disableBuiltInAGC,
+                                    boolean disableBuiltInNS, boolean disableWebRtcAGCAndHPF, boolean enableRtcEventLog,
+                                    boolean reuseFactory, int iceCandidatePoolSize,
+                                    boolean compressSavedInputAudio, boolean triggeredDiagnostics,
+                                    DataChannelParameters dataChannelParameters) {
       this.videoCallEnabled = videoCallEnabled;
       this.loopback = loopback;
       this.tracing = tracing;
@@ -262,6 +301,10 @@ public class PeerConnectionClient {
       this.disableBuiltInNS = disableBuiltInNS;
       this.disableWebRtcAGCAndHPF = disableWebRtcAGCAndHPF;
       this.enableRtcEventLog = enableRtcEventLog;
+      this.reuseFactory = reuseFactory;
+      this.iceCandidatePoolSize = iceCandidatePoolSize;
+      this.compressSavedInputAudio = compressSavedInputAudio;
+      this.triggeredDiagnostics = triggeredDiagnostics;
       this.dataChannelParameters = dataChannelParameters;
     }
   }
@@ -285,6 +328,12 @@ public class PeerConnectionClient {
      */
     void onIceCandidatesRemoved(final IceCandidate[] candidates);
 
+    /**
+     * Callback fired once local ICE candidate gathering is complete
+     * (IceGatheringState is COMPLETE).
+     */
+    void onIceGatheringComplete();
+
     /**
      * Callback fired once connection is established (IceConnectionState is
      * CONNECTED).
@@ -317,7 +366,7 @@ public class PeerConnectionClient {
     /**
      * Callback fired once peer connection statistics is ready.
      */
-    void onPeerConnectionStatsReady(final StatsReport[] reports);
+    void onPeerConnectionStatsReady(final RtcStatsSnapshot snapshot);
 
     /**
      * Callback fired once peer connection error happened.
@@ -339,7 +388,7 @@ public class PeerConnectionClient {
 
     Log.d(TAG, "Preferred video codec: " + getSdpVideoCodecName(peerConnectionParameters));
 
-    final String fieldTrials = getFieldTrials(peerConnectionParameters);
+    fieldTrials = getFieldTrials(peerConnectionParameters);
     executor.execute(() -> {
       Log.d(TAG, "Initialize WebRTC. Field trials: " + fieldTrials);
       PeerConnectionFactory.initialize(
@@ -350,6 +399,15 @@ public class PeerConnectionClient {
     });
   }
 
+  /**
+   * Holder of the factory kept warm between calls when
+   * PeerConnectionParameters.reuseFactory is set. Use its EglBase for the
+   * renderers and this client in that case.
+   */
+  public static PeerConnectionFactoryHolder getFactoryHolder() {
+    return factoryHolder;
+  }
+
   /**
    * This function should only be called once.
    */
@@ -357,7 +415,24 @@ public class PeerConnectionClient {
     if (factory != null) {
       throw new IllegalStateException("PeerConnectionFactory has already been constructed");
     }
-    executor.execute(() -> createPeerConnectionFactoryInternal(options));
+    executor.execute(() -> {
+      markBootstrapStarted(CallBootstrapTimings.Stage.FACTORY);
+      createPeerConnectionFactoryInternal(options);
+      markBootstrapFinished(CallBootstrapTimings.Stage.FACTORY);
+    });
+  }
+
+  /**
+   * Sets the timings that factory and peer connection creation are recorded
+   * in. The summary is logged when the first offer or answer is created.
+   */
+  public void setBootstrapTimings(@Nullable CallBootstrapTimings bootstrapTimings) {
+    this.bootstrapTimings = bootstrapTimings;
+  }
+
+  /** Sets the timeline that SDP and ICE/DTLS state phases are marked in. */
+  public void setCallSetupTimeline(@Nullable CallSetupTimeline timeline) {
+    this.timeline = timeline;
   }
 
   public void createPeerConnection(final VideoSink localRender, final VideoSink remoteSink,
@@ -381,9 +456,12 @@ public class PeerConnectionClient {
     this.signalingParameters = signalingParameters;
     executor.execute(() -> {
       try {
+        markBootstrapStarted(CallBootstrapTimings.Stage.PEER_CONNECTION);
         createMediaConstraintsInternal();
         createPeerConnectionInternal();
         maybeCreateAndStartRtcEventLog();
+        maybeCreateDiagnosticCaptureTrigger();
+        markBootstrapFinished(CallBootstrapTimings.Stage.PEER_CONNECTION);
       } catch (Exception e) {
         reportError("Failed to create peer connection: " + e.getMessage());
         throw e;
@@ -391,6 +469,38 @@ public class PeerConnectionClient {
     });
   }
 
+  /**
+   * Creates the peer connection, local tracks and starts the capturer before
+   * the room is joined. The ICE servers do not depend on the room, so only
+   * the signaling parameters are supplied later via setSignalingParameters().
+   */
+  public void createPeerConnection(final VideoSink localRender, final List<VideoSink> remoteSinks,
+      final VideoCapturer videoCapturer) {
+    createPeerConnection(localRender, remoteSinks, videoCapturer, null /* signalingParameters */);
+  }
+
+  public void setSignalingParameters(final AppRTCClient.SignalingParameters signalingParameters) {
+    this.signalingParameters = signalingParameters;
+  }
+
+  private void markBootstrapStarted(CallBootstrapTimings.Stage stage) {
+    if (bootstrapTimings != null) {
+      bootstrapTimings.markStarted(stage);
+    }
+  }
+
+  private void markBootstrapFinished(CallBootstrapTimings.Stage stage) {
+    if (bootstrapTimings != null) {
+      bootstrapTimings.markFinished(stage);
+    }
+  }
+
+  private void markPhase(CallSetupTimeline.Phase phase) {
+    if (timeline != null) {
+      timeline.mark(phase);
+    }
+  }
+
   public void close() {
     executor.execute(this ::closeInternal);
   }
@@ -412,7 +522,7 @@ public class PeerConnectionClient {
     preferIsac = peerConnectionParameters.audioCodec != null
         && peerConnectionParameters.audioCodec.equals(AUDIO_CODEC_ISAC);
 
-    // It is possible to save a copy in raw PCM format on a file by checking
+    // It is possible to save a copy as segmented WAV files by checking
     // the "Save input audio to file" checkbox in the Settings UI. A callback
     // interface is set when this flag is enabled. As a result, a copy of recorded
     // audio samples are provided to this client directly from the native audio
@@ -420,7 +530,8 @@ public class PeerConnectionClient {
     if (peerConnectionParameters.saveInputAudioToFile) {
       if (!peerConnectionParameters.useOpenSLES) {
         Log.d(TAG, "Enable recording of microphone input audio to file");
-        saveRecordedAudioToFile = new RecordedAudioToFileController(executor);
+        saveRecordedAudioToFile = new RecordedAudioToFileController(
+            peerConnectionParameters.compressSavedInputAudio);
       } else {
         // TODO(henrika): ensure that the UI reflects that if OpenSL ES is selected,
         // then the "Save inut audio to file" option shall be grayed out.
@@ -428,14 +539,29 @@ public class PeerConnectionClient {
       }
     }
 
+    final boolean enableH264HighProfile =
+        VIDEO_CODEC_H264_HIGH.equals(peerConnectionParameters.videoCodec);
+    // The recorded audio callback belongs to this call only, so such a factory
+    // is never kept warm.
+    final String factoryKey =
+        peerConnectionParameters.reuseFactory && saveRecordedAudioToFile == null
+        ? getFactoryKey(options, enableH264HighProfile)
+        : null;
+    if (factoryKey != null) {
+      factory = factoryHolder.acquireFactory(factoryKey, this);
+      if (factory != null) {
+        factoryFromHolder = true;
+        Log.d(TAG, "Reusing warm peer connection factory.");
+        return;
+      }
+    }
+
     final AudioDeviceModule adm = createJavaAudioDevice();
 
     // Create peer connection factory.
     if (options != null) {
       Log.d(TAG, "Factory networkIgnoreMask option: " + options.networkIgnoreMask);
     }
-    final boolean enableH264HighProfile =
-        VIDEO_CODEC_H264_HIGH.equals(peerConnectionParameters.videoCodec);
     final VideoEncoderFactory encoderFactory;
     final VideoDecoderFactory decoderFactory;
 
@@ -456,6 +582,28 @@ public class PeerConnectionClient {
                   .createPeerConnectionFactory();
     Log.d(TAG, "Peer connection factory created.");
     adm.release();
+    if (factoryKey != null) {
+      factoryHolder.storeFactory(factoryKey, factory, this);
+      factoryFromHolder = true;
+    }
+  }
+
+  // Everything that is fixed when the factory is built. A warm factory is only
+  // reused by a call with the same key.
+  private String getFactoryKey(
+      @Nullable PeerConnectionFactory.Options options, boolean enableH264HighProfile) {
+    StringBuilder key = new StringBuilder(fieldTrials);
+    if (options != null) {
+      key.append("|mask=").append(options.networkIgnoreMask)
+          .append("|noEncryption=").append(options.disableEncryption)
+          .append("|noNetworkMonitor=").append(options.disableNetworkMonitor);
+    }
+    key.append("|hw=").append(peerConnectionParameters.videoCodecHwAcceleration)
+        .append("|h264High=").append(enableH264HighProfile)
+        .append("|opensles=").append(peerConnectionParameters.useOpenSLES)
+        .append("|noAec=").append(peerConnectionParameters.disableBuiltInAEC)
+        .append("|noNs=").append(peerConnectionParameters.disableBuiltInNS);
+    return key.toString();
   }
 
   AudioDeviceModule createJavaAudioDevice() {
@@ -470,20 +618,20 @@ public class PeerConnectionClient {
       @Override
       public void onWebRtcAudioRecordInitError(String errorMessage) {
         Log.e(TAG, "onWebRtcAudioRecordInitError: " + errorMessage);
-        reportError(errorMessage);
+        reportAudioDeviceError(errorMessage);
       }
 
       @Override
       public void onWebRtcAudioRecordStartError(
           JavaAudioDeviceModule.AudioRecordStartErrorCode errorCode, String errorMessage) {
         Log.e(TAG, "onWebRtcAudioRecordStartError: " + errorCode + ". " + errorMessage);
-        reportError(errorMessage);
+        reportAudioDeviceError(errorMessage);
       }
 
       @Override
       public void onWebRtcAudioRecordError(String errorMessage) {
         Log.e(TAG, "onWebRtcAudioRecordError: " + errorMessage);
-        reportError(errorMessage);
+        reportAudioDeviceError(errorMessage);
       }
     };
 
@@ -491,20 +639,20 @@ public class PeerConnectionClient {
       @Override
       public void onWebRtcAudioTrackInitError(String errorMessage) {
         Log.e(TAG, "onWebRtcAudioTrackInitError: " + errorMessage);
-        reportError(errorMessage);
+        reportAudioDeviceError(errorMessage);
       }
 
       @Override
       public void onWebRtcAudioTrackStartError(
           JavaAudioDeviceModule.AudioTrackStartErrorCode errorCode, String errorMessage) {
         Log.e(TAG, "onWebRtcAudioTrackStartError: " + errorCode + ". " + errorMessage);
-        reportError(errorMessage);
+        reportAudioDeviceError(errorMessage);
       }
 
       @Override
       public void onWebRtcAudioTrackError(String errorMessage) {
         Log.e(TAG, "onWebRtcAudioTrackError: " + errorMessage);
-        reportError(errorMessage);
+        reportAudioDeviceError(errorMessage);
       }
     };
 
@@ -545,6 +693,16 @@ public class PeerConnectionClient {
         .createAudioDeviceModule();
   }
 
+  // A warm audio device module outlives the client that created it, so its
+  // errors go to whichever client currently uses the factory.
+  private void reportAudioDeviceError(final String errorMessage) {
+    PeerConnectionClient client =
+        factoryFromHolder ? factoryHolder.getActiveClient() : this;
+    if (client != null) {
+      client.reportError(errorMessage);
+    }
+  }
+
   private void createMediaConstraintsInternal() {
     // Create video constraints if video call is enabled.
     if (isVideoCallEnabled()) {
@@ -609,6 +767,12 @@ public class PeerConnectionClient {
     // Enable DTLS for normal calls and disable for loopback calls.
     rtcConfig.enableDtlsSrtp = !peerConnectionParameters.loopback;
     rtcConfig.sdpSemantics = PeerConnection.SdpSemantics.UNIFIED_PLAN;
+    // Start gathering right away instead of on setLocalDescription, so the
+    // first offer/answer can use candidates that are already gathered.
+    if (peerConnectionParameters.iceCandidatePoolSize > 0) {
+      Log.d(TAG, "ICE candidate pool size: " + peerConnectionParameters.iceCandidatePoolSize);
+      rtcConfig.iceCandidatePoolSize = peerConnectionParameters.iceCandidatePoolSize;
+    }
 
     peerConnection = factory.createPeerConnection(rtcConfig, pcObserver);
 
@@ -665,14 +829,6 @@ public class PeerConnectionClient {
     Log.d(TAG, "Peer connection created.");
   }
 
-  private File createRtcEventLogOutputFile() {
-    DateFormat dateFormat = new SimpleDateFormat("yyyyMMdd_hhmm_ss", Locale.getDefault());
-    Date date = new Date();
-    final String outputFileName = "event_log_" + dateFormat.format(date) + ".log";
-    return new File(
-        appContext.getDir(RTCEVENTLOG_OUTPUT_DIR_NAME, Context.MODE_PRIVATE), outputFileName);
-  }
-
   private void maybeCreateAndStartRtcEventLog() {
     if (appContext == null || peerConnection == null) {
       return;
@@ -682,7 +838,110 @@ public class PeerConnectionClient {
       return;
     }
     rtcEventLog = new RtcEventLog(peerConnection);
-    rtcEventLog.start(createRtcEventLogOutputFile());
+    rtcEventLog.start(getRtcEventLogStore().createLogFile());
+  }
+
+  private RtcEventLogStore getRtcEventLogStore() {
+    if (rtcEventLogStore == null) {
+      rtcEventLogStore = new RtcEventLogStore(
+          appContext.getDir(RTCEVENTLOG_OUTPUT_DIR_NAME, Context.MODE_PRIVATE),
+          RtcEventLogStore.DEFAULT_MAX_TOTAL_BYTES);
+    }
+    return rtcEventLogStore;
+  }
+
+  // Stops the event log and hands it to the store with the call metadata.
+  private void stopRtcEventLog() {
+    rtcEventLog.stop();
+    final File outputFile = rtcEventLog.getOutputFile();
+    if (outputFile != null && rtcEventLogStore != null) {
+      rtcEventLogStore.archive(outputFile, createLogMetadata(rtcEventLog.getStartTimeMs(), null));
+    }
+    rtcEventLog = null;
+  }
+
+  private JSONObject createLogMetadata(long startTimeMs, @Nullable String trigger) {
+    JSONObject metadata = new JSONObject();
+    try {
+      metadata.put("start", startTimeMs);
+      metadata.put("duration_ms", System.currentTimeMillis() - startTimeMs);
+      metadata.put("initiator", signalingParameters != null && signalingParameters.initiator);
+      metadata.put("video_call", isVideoCallEnabled());
+      metadata.put("video_codec", peerConnectionParameters.videoCodec);
+      metadata.put("audio_codec", peerConnectionParameters.audioCodec);
+      metadata.put("loopback", peerConnectionParameters.loopback);
+      if (trigger != null) {
+        metadata.put("trigger", trigger);
+      }
+    } catch (JSONException e) {
+      throw new RuntimeException(e);
+    }
+    return metadata;
+  }
+
+  private void maybeCreateDiagnosticCaptureTrigger() {
+    if (appContext == null || peerConnection == null
+        || !peerConnectionParameters.triggeredDiagnostics) {
+      return;
+    }
+    if (peerConnectionParameters.enableRtcEventLog && peerConnectionParameters.tracing) {
+      Log.d(TAG, "Diagnostics already run for the whole call.");
+      return;
+    }
+    diagnosticCaptureTrigger =
+        new DiagnosticCaptureTrigger(executor, new DiagnosticCaptureTrigger.Capture() {
+          @Override
+          public void start(String trigger) {
+            startDiagnosticCapture(trigger);
+          }
+
+          @Override
+          public void stop() {
+            stopDiagnosticCapture();
+          }
+        });
+  }
+
+  // Captures whatever of the event log and internal trace is not already
+  // captured for the whole call.
+  private void startDiagnosticCapture(String trigger) {
+    if (peerConnection == null) {
+      return;
+    }
+    diagnosticTrigger = trigger;
+    diagnosticStartTimeMs = System.currentTimeMillis();
+    if (!peerConnectionParameters.enableRtcEventLog) {
+      diagnosticEventLog = new RtcEventLog(peerConnection);
+      diagnosticEventLog.start(getRtcEventLogStore().createLogFile());
+    }
+    if (!peerConnectionParameters.tracing) {
+      final File traceFile = getRtcEventLogStore().createTraceFile();
+      if (PeerConnectionFactory.startInternalTracingCapture(traceFile.getAbsolutePath())) {
+        diagnosticTraceFile = traceFile;
+      } else {
+        Log.e(TAG, "Failed to start internal tracing capture to " + traceFile);
+        rtcEventLogStore.archive(traceFile, new JSONObject());
+      }
+    }
+  }
+
+  // Stops the capture and hands its files to the store.
+  private void stopDiagnosticCapture() {
+    if (diagnosticEventLog != null) {
+      diagnosticEventLog.stop();
+      final File outputFile = diagnosticEventLog.getOutputFile();
+      if (outputFile != null) {
+        rtcEventLogStore.archive(
+            outputFile, createLogMetadata(diagnosticStartTimeMs, diagnosticTrigger));
+      }
+      diagnosticEventLog = null;
+    }
+    if (diagnosticTraceFile != null) {
+      PeerConnectionFactory.stopInternalTracingCapture();
+      rtcEventLogStore.archive(
+          diagnosticTraceFile, createLogMetadata(diagnosticStartTimeMs, diagnosticTrigger));
+      diagnosticTraceFile = null;
+    }
   }
 
   private void closeInternal() {
@@ -690,15 +949,19 @@ public class PeerConnectionClient {
       factory.stopAecDump();
     }
     Log.d(TAG, "Closing peer connection.");
-    statsTimer.cancel();
+    statsScheduler.stop();
     if (dataChannel != null) {
       dataChannel.dispose();
       dataChannel = null;
     }
+    if (diagnosticCaptureTrigger != null) {
+      // Also stops the RtcEventLog of a running capture.
+      diagnosticCaptureTrigger.stop();
+      diagnosticCaptureTrigger = null;
+    }
     if (rtcEventLog != null) {
       // RtcEventLog should stop before the peer connection is disposed.
-      rtcEventLog.stop();
-      rtcEventLog = null;
+      stopRtcEventLog();
     }
     if (peerConnection != null) {
       peerConnection.dispose();
@@ -738,51 +1001,80 @@ public class PeerConnectionClient {
     remoteSinks = null;
     Log.d(TAG, "Closing peer connection factory.");
     if (factory != null) {
-      factory.dispose();
+      if (!factoryFromHolder) {
+        factory.dispose();
+      }
       factory = null;
     }
-    rootEglBase.release();
+    if (peerConnectionParameters.reuseFactory) {
+      // The holder owns the EglBase and keeps the internal tracer alive along
+      // with the warm factory.
+      factoryHolder.release(this);
+    } else {
+      rootEglBase.release();
+    }
     Log.d(TAG, "Closing peer connection done.");
     events.onPeerConnectionClosed();
     PeerConnectionFactory.stopInternalTracingCapture();
-    PeerConnectionFactory.shutdownInternalTracer();
+    if (!peerConnectionParameters.reuseFactory) {
+      PeerConnectionFactory.shutdownInternalTracer();
+    }
   }
 
   public boolean isHDVideo() {
     return isVideoCallEnabled() && videoWidth * videoHeight >= 1280 * 720;
   }
 
-  @SuppressWarnings("deprecation") // TODO(sakal): getStats is deprecated.
-  private void getStats() {
+  /** Capture format the call started with, after defaults were applied. */
+  public int getCaptureWidth() {
+    return videoWidth;
+  }
+
+  public int getCaptureHeight() {
+    return videoHeight;
+  }
+
+  public int getCaptureFramerate() {
+    return videoFps;
+  }
+
+  private boolean getStats() {
     if (peerConnection == null || isError) {
-      return;
+      return false;
     }
-    boolean success = peerConnection.getStats(new StatsObserver() {
-      @Override
-      public void onComplete(final StatsReport[] reports) {
-        events.onPeerConnectionStatsReady(reports);
+    peerConnection.getStats(report -> executor.execute(() -> {
+      final long callbackStartNs = System.nanoTime();
+      RtcStatsSnapshot snapshot = null;
+      if (peerConnection != null && !isError) {
+        snapshot = statsEngine.update(report);
+        if (diagnosticCaptureTrigger != null) {
+          diagnosticCaptureTrigger.onStats(snapshot);
+        }
+        events.onPeerConnectionStatsReady(snapshot);
       }
-    }, null);
-    if (!success) {
-      Log.e(TAG, "getStats() returns false!");
-    }
+      statsScheduler.onPollCompleted(snapshot, callbackStartNs);
+    }));
+    return true;
   }
 
+  /**
+   * Starts or stops stats callbacks. Stats are polled every |periodMs| while
+   * the call is degraded and less often while it is stable.
+   */
   public void enableStatsEvents(boolean enable, int periodMs) {
-    if (enable) {
-      try {
-        statsTimer.schedule(new TimerTask() {
-          @Override
-          public void run() {
-            executor.execute(() -> getStats());
-          }
-        }, 0, periodMs);
-      } catch (Exception e) {
-        Log.e(TAG, "Can not schedule statistics timer", e);
+    executor.execute(() -> {
+      if (enable) {
+        statsEngine.reset();
+        statsScheduler.start(periodMs);
+      } else {
+        statsScheduler.stop();
       }
-    } else {
-      statsTimer.cancel();
-    }
+    });
+  }
+
+  /** Pauses stats callbacks while the call UI is not visible. */
+  public void setStatsEventsPaused(final boolean paused) {
+    executor.execute(() -> statsScheduler.setPaused(paused));
   }
 
   public void setAudioEnabled(final boolean enable) {
@@ -809,6 +1101,9 @@ public class PeerConnectionClient {
   public void createOffer() {
     executor.execute(() -> {
       if (peerConnection != null && !isError) {
+        if (bootstrapTimings != null) {
+          bootstrapTimings.logSummary();
+        }
         Log.d(TAG, "PC Create OFFER");
         isInitiator = true;
         peerConnection.createOffer(sdpObserver, sdpMediaConstraints);
@@ -819,6 +1114,9 @@ public class PeerConnectionClient {
   public void createAnswer() {
     executor.execute(() -> {
       if (peerConnection != null && !isError) {
+        if (bootstrapTimings != null) {
+          bootstrapTimings.logSummary();
+        }
         Log.d(TAG, "PC create ANSWER");
         isInitiator = false;
         peerConnection.createAnswer(sdpObserver, sdpMediaConstraints);
@@ -829,6 +1127,9 @@ Socket mSocket;
   public void createAnswer(Socket socket) {
     executor.execute(() -> {
       if (peerConnection != null && !isError) {
+        if (bootstrapTimings != null) {
+          bootstrapTimings.logSummary();
+        }
         Log.d(TAG, "PC create ANSWER");
         isInitiator = false;
         mSocket=socket;
@@ -852,6 +1153,21 @@ Socket mSocket;
     });
   }
 
+  public void addRemoteIceCandidates(final IceCandidate[] candidates) {
+    executor.execute(() -> {
+      if (peerConnection == null || isError) {
+        return;
+      }
+      for (IceCandidate candidate : candidates) {
+        if (queuedRemoteCandidates != null) {
+          queuedRemoteCandidates.add(candidate);
+        } else {
+          peerConnection.addIceCandidate(candidate);
+        }
+      }
+    });
+  }
+
   public void removeRemoteIceCandidates(final IceCandidate[] candidates) {
     executor.execute(() -> {
       if (peerConnection == null || isError) {
@@ -869,20 +1185,20 @@ Socket mSocket;
       if (peerConnection == null || isError) {
         return;
       }
-      String sdpDescription = sdp.description;
+      SdpDescription sdpDescription = SdpDescription.parse(sdp.description);
       if (preferIsac) {
-        sdpDescription = preferCodec(sdpDescription, AUDIO_CODEC_ISAC, true);
+        SdpMunging.preferCodec(sdpDescription, AUDIO_CODEC_ISAC, true);
       }
       if (isVideoCallEnabled()) {
-        sdpDescription =
-            preferCodec(sdpDescription, getSdpVideoCodecName(peerConnectionParameters), false);
+        SdpMunging.preferCodec(
+            sdpDescription, getSdpVideoCodecName(peerConnectionParameters), false);
       }
       if (peerConnectionParameters.audioStartBitrate > 0) {
-        sdpDescription = setStartBitrate(
+        SdpMunging.setStartBitrate(
             AUDIO_CODEC_OPUS, false, sdpDescription, peerConnectionParameters.audioStartBitrate);
       }
       Log.d(TAG, "Set remote SDP.");
-      SessionDescription sdpRemote = new SessionDescription(sdp.type, sdpDescription);
+      SessionDescription sdpRemote = new SessionDescription(sdp.type, sdpDescription.toString());
       peerConnection.setRemoteDescription(sdpObserver, sdpRemote);
     });
   }
@@ -1021,151 +1337,6 @@ Socket mSocket;
     return fieldTrials;
   }
 
-  @SuppressWarnings("StringSplitter")
-  private static String setStartBitrate(
-          String codec, boolean isVideoCodec, String sdpDescription, int bitrateKbps) {
-    String[] lines = sdpDescription.split("\r\n");
-    int rtpmapLineIndex = -1;
-    boolean sdpFormatUpdated = false;
-    String codecRtpMap = null;
-    // Search for codec rtpmap in format
-    // a=rtpmap:<payload type> <encoding name>/<clock rate> [/<encoding parameters>]
-    String regex = "^a=rtpmap:(\\d+) " + codec + "(/\\d+)+[\r]?$";
-    Pattern codecPattern = Pattern.compile(regex);
-    for (int i = 0; i < lines.length; i++) {
-      Matcher codecMatcher = codecPattern.matcher(lines[i]);
-      if (codecMatcher.matches()) {
-        codecRtpMap = codecMatcher.group(1);
-        rtpmapLineIndex = i;
-        break;
-      }
-    }
-    if (codecRtpMap == null) {
-      Log.w(TAG, "No rtpmap for " + codec + " codec");
-      return sdpDescription;
-    }
-    Log.d(TAG, "Found " + codec + " rtpmap " + codecRtpMap + " at " + lines[rtpmapLineIndex]);
-
-    // Check if a=fmtp string already exist in remote SDP for this codec and
-    // update it with new bitrate parameter.
-    regex = "^a=fmtp:" + codecRtpMap + " \\w+=\\d+.*[\r]?$";
-    codecPattern = Pattern.compile(regex);
-    for (int i = 0; i < lines.length; i++) {
-      Matcher codecMatcher = codecPattern.matcher(lines[i]);
-      if (codecMatcher.matches()) {
-        Log.d(TAG, "Found " + codec + " " + lines[i]);
-        if (isVideoCodec) {
-          lines[i] += "; " + VIDEO_CODEC_PARAM_START_BITRATE + "=" + bitrateKbps;
-        } else {
-          lines[i] += "; " + AUDIO_CODEC_PARAM_BITRATE + "=" + (bitrateKbps * 1000);
-        }
-        Log.d(TAG, "Update remote SDP line: " + lines[i]);
-        sdpFormatUpdated = true;
-        break;
-      }
-    }
-
-    StringBuilder newSdpDescription = new StringBuilder();
-    for (int i = 0; i < lines.length; i++) {
-      newSdpDescription.append(lines[i]).append("\r\n");
-      // Append new a=fmtp line if no such line exist for a codec.
-      if (!sdpFormatUpdated && i == rtpmapLineIndex) {
-        String bitrateSet;
-        if (isVideoCodec) {
-          bitrateSet =
-              "a=fmtp:" + codecRtpMap + " " + VIDEO_CODEC_PARAM_START_BITRATE + "=" + bitrateKbps;
-        } else {
-          bitrateSet = "a=fmtp:" + codecRtpMap + " " + AUDIO_CODEC_PARAM_BITRATE + "="
-              + (bitrateKbps * 1000);
-        }
-        Log.d(TAG, "Add remote SDP line: " + bitrateSet);
-        newSdpDescription.append(bitrateSet).append("\r\n");
-      }
-    }
-    return newSdpDescription.toString();
-  }
-
-  /** Returns the line number containing "m=audio|video", or -1 if no such line exists. */
-  private static int findMediaDescriptionLine(boolean isAudio, String[] sdpLines) {
-    final String mediaDescription = isAudio ? "m=audio " : "m=video ";
-    for (int i = 0; i < sdpLines.length; ++i) {
-      if (sdpLines[i].startsWith(mediaDescription)) {
-        return i;
-      }
-    }
-    return -1;
-  }
-
-  private static String joinString(
-          Iterable<? extends CharSequence> s, String delimiter, boolean delimiterAtEnd) {
-    Iterator<? extends CharSequence> iter = s.iterator();
-    if (!iter.hasNext()) {
-      return "";
-    }
-    StringBuilder buffer = new StringBuilder(iter.next());
-    while (iter.hasNext()) {
-      buffer.append(delimiter).append(iter.next());
-    }
-    if (delimiterAtEnd) {
-      buffer.append(delimiter);
-    }
-    return buffer.toString();
-  }
-
-  private static @Nullable
-  String movePayloadTypesToFront(
-          List<String> preferredPayloadTypes, String mLine) {
-    // The format of the media description line should be: m=<media> <port> <proto> <fmt> ...
-    final List<String> origLineParts = Arrays.asList(mLine.split(" "));
-    if (origLineParts.size() <= 3) {
-      Log.e(TAG, "Wrong SDP media description format: " + mLine);
-      return null;
-    }
-    final List<String> header = origLineParts.subList(0, 3);
-    final List<String> unpreferredPayloadTypes =
-        new ArrayList<>(origLineParts.subList(3, origLineParts.size()));
-    unpreferredPayloadTypes.removeAll(preferredPayloadTypes);
-    // Reconstruct the line with |preferredPayloadTypes| moved to the beginning of the payload
-    // types.
-    final List<String> newLineParts = new ArrayList<>();
-    newLineParts.addAll(header);
-    newLineParts.addAll(preferredPayloadTypes);
-    newLineParts.addAll(unpreferredPayloadTypes);
-    return joinString(newLineParts, " ", false /* delimiterAtEnd */);
-  }
-
-  private static String preferCodec(String sdpDescription, String codec, boolean isAudio) {
-    final String[] lines = sdpDescription.split("\r\n");
-    final int mLineIndex = findMediaDescriptionLine(isAudio, lines);
-    if (mLineIndex == -1) {
-      Log.w(TAG, "No mediaDescription line, so can't prefer " + codec);
-      return sdpDescription;
-    }
-    // A list with all the payload types with name |codec|. The payload types are integers in the
-    // range 96-127, but they are stored as strings here.
-    final List<String> codecPayloadTypes = new ArrayList<>();
-    // a=rtpmap:<payload type> <encoding name>/<clock rate> [/<encoding parameters>]
-    final Pattern codecPattern = Pattern.compile("^a=rtpmap:(\\d+) " + codec + "(/\\d+)+[\r]?$");
-    for (String line : lines) {
-      Matcher codecMatcher = codecPattern.matcher(line);
-      if (codecMatcher.matches()) {
-        codecPayloadTypes.add(codecMatcher.group(1));
-      }
-    }
-    if (codecPayloadTypes.isEmpty()) {
-      Log.w(TAG, "No payload types with name " + codec);
-      return sdpDescription;
-    }
-
-    final String newMLine = movePayloadTypesToFront(codecPayloadTypes, lines[mLineIndex]);
-    if (newMLine == null) {
-      return sdpDescription;
-    }
-    Log.d(TAG, "Change media description from: " + lines[mLineIndex] + " to " + newMLine);
-    lines[mLineIndex] = newMLine;
-    return joinString(Arrays.asList(lines), "\r\n", true /* delimiterAtEnd */);
-  }
-
   private void drainCandidates() {
     if (queuedRemoteCandidates != null) {
       Log.d(TAG, "Add " + queuedRemoteCandidates.size() + " remote candidates");
@@ -1216,6 +1387,7 @@ int candidateSentToServer=0;
   private class PCObserver implements PeerConnection.Observer {
     @Override
     public void onIceCandidate(final IceCandidate candidate) {
+      markPhase(CallSetupTimeline.Phase.FIRST_LOCAL_CANDIDATE);
 
       String foundation= candidate.sdp.split(" ")[0];
 
@@ -1242,6 +1414,11 @@ int candidateSentToServer=0;
 
     @Override
     public void onIceConnectionChange(final IceConnectionState newState) {
+      if (newState == IceConnectionState.CHECKING) {
+        markPhase(CallSetupTimeline.Phase.ICE_CHECKING);
+      } else if (newState == IceConnectionState.CONNECTED) {
+        markPhase(CallSetupTimeline.Phase.ICE_CONNECTED);
+      }
       executor.execute(() -> {
         Log.d(TAG, "IceConnectionState: " + newState);
         if (newState == IceConnectionState.CONNECTED) {
@@ -1256,6 +1433,9 @@ int candidateSentToServer=0;
 
     @Override
     public void onConnectionChange(final PeerConnectionState newState) {
+      if (newState == PeerConnectionState.CONNECTED) {
+        markPhase(CallSetupTimeline.Phase.DTLS_CONNECTED);
+      }
       executor.execute(() -> {
         Log.d(TAG, "PeerConnectionState: " + newState);
         if (newState == PeerConnectionState.CONNECTED) {
@@ -1271,6 +1451,9 @@ int candidateSentToServer=0;
     @Override
     public void onIceGatheringChange(PeerConnection.IceGatheringState newState) {
       Log.d(TAG, "IceGatheringState: " + newState);
+      if (newState == PeerConnection.IceGatheringState.COMPLETE) {
+        executor.execute(() -> events.onIceGatheringComplete());
+      }
     }
 
     @Override
@@ -1337,6 +1520,12 @@ int candidateSentToServer=0;
 
   // Implementation detail: handle offer creation/signaling and answer setting,
   // as well as adding remote ICE candidates once the answer SDP is set.
+  private void markLocalDescriptionSet() {
+    markPhase(localSdp.type == SessionDescription.Type.OFFER
+        ? CallSetupTimeline.Phase.OFFER_SET
+        : CallSetupTimeline.Phase.ANSWER_SET);
+  }
+
   private class SDPObserver implements SdpObserver {
     @Override
     public void onCreateSuccess(final SessionDescription origSdp) {
@@ -1344,15 +1533,19 @@ int candidateSentToServer=0;
         reportError("Multiple SDP create.");
         return;
       }
-      String sdpDescription = origSdp.description;
+      markPhase(origSdp.type == SessionDescription.Type.OFFER
+          ? CallSetupTimeline.Phase.OFFER_CREATED
+          : CallSetupTimeline.Phase.ANSWER_CREATED);
+      SdpDescription sdpDescription = SdpDescription.parse(origSdp.description);
       if (preferIsac) {
-        sdpDescription = preferCodec(sdpDescription, AUDIO_CODEC_ISAC, true);
+        SdpMunging.preferCodec(sdpDescription, AUDIO_CODEC_ISAC, true);
       }
       if (isVideoCallEnabled()) {
-        sdpDescription =
-            preferCodec(sdpDescription, getSdpVideoCodecName(peerConnectionParameters), false);
+        SdpMunging.preferCodec(
+            sdpDescription, getSdpVideoCodecName(peerConnectionParameters), false);
       }
-      final SessionDescription sdp = new SessionDescription(origSdp.type, sdpDescription);
+      final SessionDescription sdp =
+          new SessionDescription(origSdp.type, sdpDescription.toString());
       localSdp = sdp;
       executor.execute(() -> {
         if (peerConnection != null && !isError) {
@@ -1389,6 +1582,7 @@ int candidateSentToServer=0;
           if (peerConnection.getRemoteDescription() == null) {
             // We've just set our local SDP so time to send it.
             Log.d(TAG, "Local SDP set succesfully");
+            markLocalDescriptionSet();
             events.onLocalDescription(localSdp);
           } else {
             // We've just set remote description, so drain remote
@@ -1404,6 +1598,7 @@ int candidateSentToServer=0;
             // We've just set our local SDP so time to send it, drain
             // remote and send local ICE candidates.
             Log.d(TAG, "Local SDP set succesfully");
+            markLocalDescriptionSet();
             events.onLocalDescription(localSdp);
             drainCandidates();
           } else {
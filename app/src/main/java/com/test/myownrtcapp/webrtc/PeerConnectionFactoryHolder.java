@@ -0,0 +1,208 @@
+package com.test.myownrtcapp.webrtc;
+
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.content.res.Configuration;
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+
+import org.webrtc.EglBase;
+import org.webrtc.PeerConnectionFactory;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+/**
+ * Keeps a warm PeerConnectionFactory, with its audio device module and codec
+ * factories, and the root EglBase they were created with between calls, so
+ * that back-to-back calls skip native factory setup.
+ *
+ * <p>The factory is only handed out again to calls with the same factory key
+ * (field trials, factory options, codec and audio device settings). It is
+ * disposed on the peer connection executor when a call needs a different key,
+ * on memory pressure or on evict(). If that happens while calls are using it,
+ * disposal is deferred until the last of them releases it. A factory replaced
+ * by one with a different key is retired: it is no longer handed out, and is
+ * disposed by the release() of its last user, since the close of an earlier
+ * call may still be queued behind the new call on the executor.
+ *
+ * <p>Calls overlap: the next call acquires the EglBase on the UI thread
+ * before the previous call has released it on the executor. The holder
+ * therefore counts its users rather than keeping a flag. The count only
+ * changes under the holder's lock, and the factory and EglBase are only
+ * disposed on the executor once it is zero.
+ */
+public class PeerConnectionFactoryHolder implements ComponentCallbacks2 {
+  private static final String TAG = "PCFactoryHolder";
+
+  private final Executor executor;
+
+  @Nullable
+  private EglBase eglBase;
+  @Nullable
+  private PeerConnectionFactory factory;
+  @Nullable
+  private String factoryKey;
+  @Nullable
+  private PeerConnectionClient activeClient;
+  // Calls between acquireEglBase() and release().
+  private int useCount;
+  // The factory each call got from acquireFactory() or storeFactory(): the
+  // warm one, or a retired one until its last user releases it.
+  private final Map<PeerConnectionClient, PeerConnectionFactory> factoryUsers =
+      new HashMap<>();
+  private boolean evictWhenReleased;
+  private boolean callbacksRegistered;
+
+  PeerConnectionFactoryHolder(Executor executor) {
+    this.executor = executor;
+  }
+
+  /**
+   * Returns the warm root EglBase, creating it if needed, and counts the call
+   * as a user until it calls release(). Call from the UI thread before the
+   * renderers are initialized, once per call.
+   */
+  public synchronized EglBase acquireEglBase(Context context) {
+    if (!callbacksRegistered) {
+      context.getApplicationContext().registerComponentCallbacks(this);
+      callbacksRegistered = true;
+    }
+    useCount++;
+    if (eglBase == null) {
+      eglBase = EglBase.create();
+    } else {
+      Log.d(TAG, "Reusing warm EglBase.");
+    }
+    return eglBase;
+  }
+
+  /**
+   * Returns the warm factory if it was created with |key|, otherwise retires
+   * it and returns null. Must be called on the peer connection executor.
+   */
+  @Nullable
+  synchronized PeerConnectionFactory acquireFactory(String key, PeerConnectionClient client) {
+    activeClient = client;
+    if (factory != null && !key.equals(factoryKey)) {
+      if (factoryUsers.containsValue(factory)) {
+        Log.d(TAG, "Factory key changed, retiring warm factory until its calls end.");
+        factory = null;
+        factoryKey = null;
+      } else {
+        Log.d(TAG, "Factory key changed, disposing warm factory.");
+        disposeFactoryInternal();
+      }
+    }
+    if (factory != null) {
+      factoryUsers.put(client, factory);
+    }
+    return factory;
+  }
+
+  /**
+   * Keeps |factory|, created by |client|, warm for later calls with the same
+   * |key|. Must be called on the peer connection executor.
+   */
+  synchronized void storeFactory(
+      String key, PeerConnectionFactory factory, PeerConnectionClient client) {
+    this.factory = factory;
+    this.factoryKey = key;
+    factoryUsers.put(client, factory);
+  }
+
+  /**
+   * The client that currently uses the warm factory. Audio device errors are
+   * routed to it since the audio device module outlives the client that
+   * created it.
+   */
+  @Nullable
+  synchronized PeerConnectionClient getActiveClient() {
+    return activeClient;
+  }
+
+  /**
+   * Marks the call of |client| as finished, once per acquireEglBase(). Must be
+   * called on the peer connection executor.
+   */
+  synchronized void release(PeerConnectionClient client) {
+    if (useCount == 0) {
+      Log.e(TAG, "release() without acquireEglBase().");
+      return;
+    }
+    useCount--;
+    // A newer call may already use the factory.
+    if (activeClient == client) {
+      activeClient = null;
+    }
+    final PeerConnectionFactory used = factoryUsers.remove(client);
+    if (used != null && used != factory && !factoryUsers.containsValue(used)) {
+      Log.d(TAG, "Disposing retired factory.");
+      used.dispose();
+    }
+    if (useCount == 0 && evictWhenReleased) {
+      evictWhenReleased = false;
+      disposeAllInternal();
+    }
+  }
+
+  /** Disposes the warm factory and EglBase now, or when the current call ends. */
+  public synchronized void evict() {
+    if (useCount > 0) {
+      Log.d(TAG, "Holder in use by " + useCount + " calls, evicting when released.");
+      evictWhenReleased = true;
+      return;
+    }
+    executor.execute(() -> {
+      synchronized (PeerConnectionFactoryHolder.this) {
+        // A call may have acquired the holder meanwhile.
+        if (useCount == 0) {
+          disposeAllInternal();
+        } else {
+          evictWhenReleased = true;
+        }
+      }
+    });
+  }
+
+  @Override
+  public void onTrimMemory(int level) {
+    // UI_HIDDEN only means the app went to the background, it is not memory
+    // pressure.
+    if (level != TRIM_MEMORY_UI_HIDDEN && level >= TRIM_MEMORY_RUNNING_LOW) {
+      Log.d(TAG, "onTrimMemory: " + level);
+      evict();
+    }
+  }
+
+  @Override
+  public void onLowMemory() {
+    Log.d(TAG, "onLowMemory");
+    evict();
+  }
+
+  @Override
+  public void onConfigurationChanged(Configuration newConfig) {}
+
+  private void disposeFactoryInternal() {
+    if (factory != null) {
+      factory.dispose();
+      factory = null;
+      factoryKey = null;
+    }
+  }
+
+  private void disposeAllInternal() {
+    if (factory == null && eglBase == null) {
+      return;
+    }
+    Log.d(TAG, "Disposing warm factory and EglBase.");
+    disposeFactoryInternal();
+    if (eglBase != null) {
+      eglBase.release();
+      eglBase = null;
+    }
+  }
+}
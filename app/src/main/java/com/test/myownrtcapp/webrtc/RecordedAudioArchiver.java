@@ -0,0 +1,79 @@
+package com.test.myownrtcapp.webrtc;
+
+import android.os.Process;
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Compresses closed recording segments from WAV to FLAC with FlacEncoder
+ * on a background priority thread, and deletes each WAV file once its FLAC
+ * file is complete. Speech typically shrinks to about half.
+ */
+class RecordedAudioArchiver implements WavSegmentWriter.SegmentListener {
+  private static final String TAG = "RecordedAudioArchiver";
+  static final String FILE_SUFFIX = ".flac";
+
+  private final ExecutorService executor = Executors.newSingleThreadExecutor(
+      r -> new Thread(() -> {
+        Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+        r.run();
+      }, "AudioArchiver"));
+  // Segments handed over and not compressed yet.
+  private final Set<File> pendingSegments =
+      Collections.newSetFromMap(new ConcurrentHashMap<File, Boolean>());
+
+  @Override
+  public void onSegmentClosed(File segment) {
+    pendingSegments.add(segment);
+    executor.execute(() -> {
+      try {
+        archive(segment);
+      } finally {
+        pendingSegments.remove(segment);
+      }
+    });
+  }
+
+  @Override
+  public boolean isPending(File segment) {
+    return pendingSegments.contains(segment);
+  }
+
+  /** Segments handed over before are still compressed. */
+  void shutdown() {
+    executor.shutdown();
+  }
+
+  private void archive(File wavFile) {
+    final String name = wavFile.getName();
+    final File flacFile = new File(wavFile.getParentFile(),
+        name.substring(0, name.length() - WavSegmentWriter.FILE_SUFFIX.length()) + FILE_SUFFIX);
+    final File tmpFile = new File(flacFile.getPath() + WavSegmentWriter.TMP_SUFFIX);
+    final long startTimeMs = System.currentTimeMillis();
+    final long sampleFrames;
+    try {
+      sampleFrames = FlacEncoder.encodeFile(wavFile, tmpFile);
+    } catch (IOException e) {
+      Log.e(TAG, "Failed to compress " + wavFile + ": " + e.getMessage());
+      tmpFile.delete();
+      return;
+    }
+    if (!tmpFile.renameTo(flacFile)) {
+      Log.e(TAG, "Failed to rename " + tmpFile + " to " + flacFile);
+      tmpFile.delete();
+      return;
+    }
+    final long wavSize = wavFile.length();
+    wavFile.delete();
+    Log.d(TAG, "Compressed " + sampleFrames + " sample frames to " + flacFile + ": " + wavSize
+        + " -> " + flacFile.length() + " bytes in "
+        + (System.currentTimeMillis() - startTimeMs) + " ms");
+  }
+}
@@ -20,35 +20,56 @@ import org.webrtc.audio.JavaAudioDeviceModule;
 import org.webrtc.audio.JavaAudioDeviceModule.SamplesReadyCallback;
 
 import java.io.File;
-import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
-import java.io.IOException;
-import java.io.OutputStream;
-import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Implements the AudioRecordSamplesReadyCallback interface and writes
- * recorded raw audio samples to an output file.
+ * recorded raw audio samples to WAV files in /sdcard/recorded_audio. Long
+ * recordings are split into segments by WavSegmentWriter, and the oldest
+ * recordings are deleted to stay below MAX_RECORDINGS_SIZE_IN_BYTES.
+ * Optionally, closed segments are compressed to FLAC in the background by
+ * RecordedAudioArchiver.
+ *
+ * <p>The callback runs on the real-time audio thread, so it only copies the
+ * samples into a preallocated lock-free ring. A dedicated writer thread
+ * drains the ring into the file, which is opened by start(), in batches.
+ * Frames that do not fit into the ring are dropped and counted.
  */
 public class RecordedAudioToFileController implements SamplesReadyCallback {
   private static final String TAG = "RecordedAudioToFile";
-  private static final long MAX_FILE_SIZE_IN_BYTES = 58348800L;
+  private static final String OUTPUT_DIR_NAME = "recorded_audio";
+  private static final long MAX_RECORDINGS_SIZE_IN_BYTES = 500L * 1024 * 1024;
+  // About 1.4 s of 48 kHz stereo audio, to ride out slow storage.
+  private static final int RING_BUFFER_SIZE_IN_BYTES = 256 * 1024;
+  // Five 10 ms frames are written at a time.
+  private static final long WRITE_INTERVAL_MS = 50;
+
+  private final PcmRingBuffer ringBuffer = new PcmRingBuffer(RING_BUFFER_SIZE_IN_BYTES);
+  private final ScheduledExecutorService writer =
+      Executors.newSingleThreadScheduledExecutor(r -> new Thread(r, "AudioFileWriter"));
+  private volatile boolean isRunning;
+  // Set by the audio thread before its first frame is published.
+  private volatile int sampleRate;
+  private volatile int channelCount;
+  // Written by the audio thread only.
+  private volatile long droppedFrames;
 
-  private final Object lock = new Object();
-  private final ExecutorService executor;
+  // Accessed on the writer thread after start().
   @Nullable
-  private OutputStream rawAudioFileOutputStream;
-  private boolean isRunning;
-  private long fileSizeInBytes;
+  private WavSegmentWriter segmentWriter;
+  @Nullable
+  private final RecordedAudioArchiver archiver;
 
-  public RecordedAudioToFileController(ExecutorService executor) {
+  public RecordedAudioToFileController(boolean compress) {
     Log.d(TAG, "ctor");
-    this.executor = executor;
+    archiver = compress ? new RecordedAudioArchiver() : null;
   }
 
   /**
-   * Should be called on the same executor thread as the one provided at
-   * construction.
+   * Opens the output file and starts the writer thread. Samples are
+   * accepted once this returns true.
    */
   public boolean start() {
     Log.d(TAG, "start");
@@ -56,30 +77,28 @@ public class RecordedAudioToFileController implements SamplesReadyCallback {
       Log.e(TAG, "Writing to external media is not possible");
       return false;
     }
-    synchronized (lock) {
-      isRunning = true;
+    final WavSegmentWriter wavWriter = new WavSegmentWriter(
+        new File(Environment.getExternalStorageDirectory(), OUTPUT_DIR_NAME),
+        MAX_RECORDINGS_SIZE_IN_BYTES, archiver);
+    if (!wavWriter.open()) {
+      return false;
     }
+    segmentWriter = wavWriter;
+    writer.scheduleWithFixedDelay(
+        this::writeAvailableSamples, WRITE_INTERVAL_MS, WRITE_INTERVAL_MS, TimeUnit.MILLISECONDS);
+    isRunning = true;
     return true;
   }
 
   /**
-   * Should be called on the same executor thread as the one provided at
-   * construction.
+   * Stops accepting samples. The writer thread writes what is left in the
+   * ring, closes the file and exits.
    */
   public void stop() {
     Log.d(TAG, "stop");
-    synchronized (lock) {
-      isRunning = false;
-      if (rawAudioFileOutputStream != null) {
-        try {
-          rawAudioFileOutputStream.close();
-        } catch (IOException e) {
-          Log.e(TAG, "Failed to close file with saved input audio: " + e);
-        }
-        rawAudioFileOutputStream = null;
-      }
-      fileSizeInBytes = 0;
-    }
+    isRunning = false;
+    writer.execute(this::closeSegmentWriter);
+    writer.shutdown();
   }
 
   // Checks if external storage is available for read and write.
@@ -91,23 +110,34 @@ public class RecordedAudioToFileController implements SamplesReadyCallback {
     return false;
   }
 
-  // Utilizes audio parameters to create a file name which contains sufficient
-  // information so that the file can be played using an external file player.
-  // Example: /sdcard/recorded_audio_16bits_48000Hz_mono.pcm.
-  private void openRawAudioOutputFile(int sampleRate, int channelCount) {
-    final String fileName = Environment.getExternalStorageDirectory().getPath() + File.separator
-        + "recorded_audio_16bits_" + String.valueOf(sampleRate) + "Hz"
-        + ((channelCount == 1) ? "_mono" : "_stereo") + ".pcm";
-    final File outputFile = new File(fileName);
-    try {
-      rawAudioFileOutputStream = new FileOutputStream(outputFile);
-    } catch (FileNotFoundException e) {
-      Log.e(TAG, "Failed to open audio output file: " + e.getMessage());
+  // Runs on the writer thread.
+  private void writeAvailableSamples() {
+    final int available = ringBuffer.available();
+    if (available == 0 || segmentWriter == null) {
+      return;
+    }
+    if (!segmentWriter.hasFormat()) {
+      segmentWriter.setFormat(sampleRate, channelCount);
+    }
+    segmentWriter.write(ringBuffer, available);
+  }
+
+  // Runs on the writer thread.
+  private void closeSegmentWriter() {
+    writeAvailableSamples();
+    if (segmentWriter != null) {
+      segmentWriter.close();
+      segmentWriter = null;
+      Log.d(TAG, "Recording stopped, " + droppedFrames + " frames dropped");
+    }
+    if (archiver != null) {
+      // Segments already closed are still compressed.
+      archiver.shutdown();
     }
-    Log.d(TAG, "Opened file for recording: " + fileName);
   }
 
-  // Called when new audio samples are ready.
+  // Called on the real-time audio thread when new audio samples are ready.
+  // Must not block or allocate.
   @Override
   public void onWebRtcAudioRecordSamplesReady(JavaAudioDeviceModule.AudioSamples samples) {
     // The native audio layer on Android should use 16-bit PCM format.
@@ -115,33 +145,16 @@ public class RecordedAudioToFileController implements SamplesReadyCallback {
       Log.e(TAG, "Invalid audio format");
       return;
     }
-    synchronized (lock) {
-      // Abort early if stop() has been called.
-      if (!isRunning) {
-        return;
-      }
-      // Open a new file for the first callback only since it allows us to add audio parameters to
-      // the file name.
-      if (rawAudioFileOutputStream == null) {
-        openRawAudioOutputFile(samples.getSampleRate(), samples.getChannelCount());
-        fileSizeInBytes = 0;
-      }
+    // Abort early if stop() has been called.
+    if (!isRunning) {
+      return;
+    }
+    if (sampleRate == 0) {
+      channelCount = samples.getChannelCount();
+      sampleRate = samples.getSampleRate();
+    }
+    if (!ringBuffer.offer(samples.getData())) {
+      droppedFrames++;
     }
-    // Append the recorded 16-bit audio samples to the open output file.
-    executor.execute(() -> {
-      if (rawAudioFileOutputStream != null) {
-        try {
-          // Set a limit on max file size. 58348800 bytes corresponds to
-          // approximately 10 minutes of recording in mono at 48kHz.
-          if (fileSizeInBytes < MAX_FILE_SIZE_IN_BYTES) {
-            // Writes samples.getData().length bytes to output stream.
-            rawAudioFileOutputStream.write(samples.getData());
-            fileSizeInBytes += samples.getData().length;
-          }
-        } catch (IOException e) {
-          Log.e(TAG, "Failed to write audio to file: " + e.getMessage());
-        }
-      }
-    });
   }
 }
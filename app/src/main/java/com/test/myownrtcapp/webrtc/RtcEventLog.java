@@ -13,6 +13,8 @@ package com.test.myownrtcapp.webrtc;
 import android.os.ParcelFileDescriptor;
 import android.util.Log;
 
+import androidx.annotation.Nullable;
+
 import org.webrtc.PeerConnection;
 
 import java.io.File;
@@ -23,6 +25,9 @@ public class RtcEventLog {
   private static final int OUTPUT_FILE_MAX_BYTES = 10_000_000;
   private final PeerConnection peerConnection;
   private RtcEventLogState state = RtcEventLogState.INACTIVE;
+  @Nullable
+  private File outputFile;
+  private long startTimeMs;
 
   enum RtcEventLogState {
     INACTIVE,
@@ -42,6 +47,8 @@ public class RtcEventLog {
       Log.e(TAG, "RtcEventLog has already started.");
       return;
     }
+    this.outputFile = outputFile;
+    startTimeMs = System.currentTimeMillis();
     final ParcelFileDescriptor fileDescriptor;
     try {
       fileDescriptor = ParcelFileDescriptor.open(outputFile,
@@ -72,4 +79,14 @@ public class RtcEventLog {
     state = RtcEventLogState.STOPPED;
     Log.d(TAG, "RtcEventLog stopped.");
   }
+
+  /** The file passed to the last start(), even if starting failed. */
+  @Nullable
+  public File getOutputFile() {
+    return outputFile;
+  }
+
+  public long getStartTimeMs() {
+    return startTimeMs;
+  }
 }
@@ -0,0 +1,257 @@
+package com.test.myownrtcapp.webrtc;
+
+import android.os.Process;
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.text.DateFormat;
+import java.text.SimpleDateFormat;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Keeps the RTC event logs, and internal traces, of past calls within a disk
+ * budget. Finished logs are gzip compressed on a background thread and
+ * listed in an index with one JSON record per log and the metadata of its
+ * call, e.g.
+ * {"file":"event_log_20200131_143000.log.gz","start":1580477400000,
+ * "duration_ms":61000,"initiator":true,"log_bytes":812345,"gz_bytes":301234,
+ * "last_used":1580477461000}. When the logs exceed the budget, the least
+ * recently used ones are deleted. Logs left uncompressed, e.g. by a crash,
+ * are picked up by the next archive().
+ */
+public class RtcEventLogStore {
+  private static final String TAG = "RtcEventLogStore";
+  private static final String INDEX_FILE_NAME = "index.jsonl";
+  private static final String LOG_PREFIX = "event_log_";
+  private static final String LOG_SUFFIX = ".log";
+  private static final String TRACE_PREFIX = "webrtc_trace_";
+  private static final String TRACE_SUFFIX = ".json";
+  private static final String GZIP_SUFFIX = ".gz";
+  private static final int MAX_INDEX_RECORDS = 1000;
+  private static final int COPY_BUFFER_SIZE = 64 * 1024;
+  public static final long DEFAULT_MAX_TOTAL_BYTES = 50L * 1024 * 1024;
+
+  // Shared by all stores so that the index is only accessed on one thread.
+  private static final ExecutorService executor = Executors.newSingleThreadExecutor(
+      r -> new Thread(() -> {
+        Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+        r.run();
+      }, "RtcEventLogStore"));
+  // Names of the logs still being written, which must not be touched.
+  private static final Set<String> activeLogs = new HashSet<>();
+
+  private final File dir;
+  private final long maxTotalBytes;
+  private final JsonRecordFile index;
+
+  public RtcEventLogStore(File dir, long maxTotalBytes) {
+    this.dir = dir;
+    this.maxTotalBytes = maxTotalBytes;
+    this.index = new JsonRecordFile(new File(dir, INDEX_FILE_NAME), MAX_INDEX_RECORDS);
+  }
+
+  /** Returns a new, unique file for a log that is about to start. */
+  public File createLogFile() {
+    return createFile(LOG_PREFIX, LOG_SUFFIX);
+  }
+
+  /**
+   * Returns a new, unique file for an internal tracing capture that is about
+   * to start. It is archived like a log.
+   */
+  public File createTraceFile() {
+    return createFile(TRACE_PREFIX, TRACE_SUFFIX);
+  }
+
+  private File createFile(String prefix, String suffix) {
+    DateFormat dateFormat = new SimpleDateFormat("yyyyMMdd_HHmmss", Locale.US);
+    final String baseName = prefix + dateFormat.format(new Date());
+    synchronized (activeLogs) {
+      File file = new File(dir, baseName + suffix);
+      for (int i = 1; activeLogs.contains(file.getName()) || file.exists()
+           || new File(file.getPath() + GZIP_SUFFIX).exists();
+           i++) {
+        file = new File(dir, baseName + "_" + i + suffix);
+      }
+      activeLogs.add(file.getName());
+      return file;
+    }
+  }
+
+  /**
+   * Compresses |log|, a file of createLogFile() or createTraceFile() that
+   * has stopped, adds it to the index with |metadata| and deletes old logs
+   * beyond the budget.
+   */
+  public void archive(final File log, final JSONObject metadata) {
+    executor.execute(() -> {
+      synchronized (activeLogs) {
+        activeLogs.remove(log.getName());
+      }
+      try {
+        List<JSONObject> records = index.read();
+        addLog(records, log, metadata);
+        addUnindexedLogs(records);
+        evict(records);
+        index.write(records);
+      } catch (IOException | JSONException e) {
+        Log.e(TAG, "Failed to archive " + log, e);
+      }
+    });
+  }
+
+  /**
+   * Returns the index as of the last archive(), least recently used first.
+   * The "file" of a record is relative to the directory of the store.
+   */
+  public Future<List<JSONObject>> readIndex() {
+    return executor.submit(index::read);
+  }
+
+  /** Marks the log |fileName|, e.g. after uploading it, as used. */
+  public void markUsed(final String fileName) {
+    executor.execute(() -> {
+      try {
+        List<JSONObject> records = index.read();
+        for (JSONObject record : records) {
+          if (fileName.equals(record.optString("file"))) {
+            record.put("last_used", System.currentTimeMillis());
+          }
+        }
+        Collections.sort(records, (a, b) -> Long.compare(lastUsed(a), lastUsed(b)));
+        index.write(records);
+      } catch (IOException | JSONException e) {
+        Log.e(TAG, "Failed to mark " + fileName + " as used", e);
+      }
+    });
+  }
+
+  // Compresses |log| and adds it to |records|. Empty logs, e.g. of a log
+  // that failed to start, are deleted.
+  private void addLog(List<JSONObject> records, File log, JSONObject metadata)
+      throws JSONException {
+    final long logBytes = log.length();
+    final long lastModified = log.lastModified();
+    if (logBytes == 0) {
+      log.delete();
+      return;
+    }
+    final File compressed = compress(log);
+    if (compressed == null) {
+      return;
+    }
+    metadata.put("file", compressed.getName());
+    if (!metadata.has("start")) {
+      metadata.put("start", lastModified);
+    }
+    metadata.put("log_bytes", logBytes);
+    metadata.put("gz_bytes", compressed.length());
+    metadata.put("last_used", System.currentTimeMillis());
+    records.add(metadata);
+    Log.d(TAG, "Archived " + compressed + ": " + logBytes + " -> " + compressed.length()
+        + " bytes");
+  }
+
+  // Adds logs that are not in the index: uncompressed ones that are not
+  // active any more, and compressed ones of a lost index.
+  private void addUnindexedLogs(List<JSONObject> records) throws JSONException {
+    final Set<String> indexed = new HashSet<>();
+    for (JSONObject record : records) {
+      indexed.add(record.optString("file"));
+    }
+    final File[] files = dir.listFiles(
+        (d, name) -> name.startsWith(LOG_PREFIX) || name.startsWith(TRACE_PREFIX));
+    if (files == null) {
+      return;
+    }
+    for (File file : files) {
+      final String name = file.getName();
+      if (name.endsWith(LOG_SUFFIX) || name.endsWith(TRACE_SUFFIX)) {
+        synchronized (activeLogs) {
+          if (activeLogs.contains(name)) {
+            continue;
+          }
+        }
+        addLog(records, file, new JSONObject().put("recovered", true));
+      } else if (name.endsWith(GZIP_SUFFIX) && !indexed.contains(name)) {
+        records.add(new JSONObject()
+                        .put("file", name)
+                        .put("start", file.lastModified())
+                        .put("gz_bytes", file.length())
+                        .put("last_used", file.lastModified())
+                        .put("recovered", true));
+      }
+    }
+  }
+
+  // Drops the records of missing files and deletes the least recently used
+  // logs until the others fit into the budget. The newest log is kept even
+  // if it exceeds the budget on its own.
+  private void evict(List<JSONObject> records) {
+    Collections.sort(records, (a, b) -> Long.compare(lastUsed(a), lastUsed(b)));
+    long totalBytes = 0;
+    for (int i = records.size() - 1; i >= 0; i--) {
+      final File file = new File(dir, records.get(i).optString("file"));
+      if (!file.exists()) {
+        records.remove(i);
+      } else {
+        totalBytes += file.length();
+      }
+    }
+    while (totalBytes > maxTotalBytes && records.size() > 1) {
+      final File file = new File(dir, records.remove(0).optString("file"));
+      totalBytes -= file.length();
+      file.delete();
+      Log.d(TAG, "Deleted " + file + " to stay below " + maxTotalBytes + " bytes");
+    }
+  }
+
+  @Nullable
+  private static File compress(File log) {
+    final File compressed = new File(log.getPath() + GZIP_SUFFIX);
+    final File tmpFile = new File(compressed.getPath() + ".tmp");
+    final byte[] buffer = new byte[COPY_BUFFER_SIZE];
+    try (InputStream in = new FileInputStream(log);
+         OutputStream out =
+             new GZIPOutputStream(new FileOutputStream(tmpFile), COPY_BUFFER_SIZE)) {
+      int count;
+      while ((count = in.read(buffer)) > 0) {
+        out.write(buffer, 0, count);
+      }
+    } catch (IOException e) {
+      Log.e(TAG, "Failed to compress " + log, e);
+      tmpFile.delete();
+      return null;
+    }
+    if (!tmpFile.renameTo(compressed)) {
+      Log.e(TAG, "Failed to rename " + tmpFile + " to " + compressed);
+      tmpFile.delete();
+      return null;
+    }
+    log.delete();
+    return compressed;
+  }
+
+  private static long lastUsed(JSONObject record) {
+    return record.optLong("last_used");
+  }
+}
@@ -0,0 +1,265 @@
+package com.test.myownrtcapp.webrtc;
+
+import androidx.annotation.Nullable;
+
+import org.webrtc.RTCStats;
+import org.webrtc.RTCStatsReport;
+
+import java.util.Map;
+
+/**
+ * Maps standard getStats() reports into typed counters and turns two
+ * consecutive reports into an immutable RtcStatsSnapshot with per-interval
+ * deltas. The counters are preallocated and reused for every report; members
+ * are read by name as boxed numbers, never parsed from strings.
+ *
+ * <p>Not thread safe. PeerConnectionClient calls update() on its executor.
+ */
+public class RtcStatsEngine {
+  /** Cumulative counters and gauges of one report. Reused between reports. */
+  static final class Counters {
+    long timestampUs;
+
+    // outbound-rtp, kind video. Counters are summed over simulcast layers.
+    long videoBytesSent;
+    long videoFramesEncoded;
+    // Target of the encoder in bps.
+    double videoTargetBitrate;
+    double videoSendFps;
+    int videoSendWidth;
+    int videoSendHeight;
+    @Nullable String videoSendCodecId;
+    @Nullable String qualityLimitationReason;
+
+    // inbound-rtp, kind video.
+    long videoBytesReceived;
+    long videoPacketsReceived;
+    long videoPacketsLost;
+    long videoFramesDecoded;
+    long videoFramesDropped;
+    double videoJitterSec;
+    int videoRecvWidth;
+    int videoRecvHeight;
+    @Nullable String videoRecvCodecId;
+
+    // outbound-rtp / inbound-rtp, kind audio.
+    long audioBytesSent;
+    long audioBytesReceived;
+    long audioPacketsReceived;
+    long audioPacketsLost;
+    double audioJitterSec;
+
+    // Selected candidate-pair.
+    boolean hasCandidatePair;
+    double currentRoundTripTimeSec;
+    double availableOutgoingBitrate;
+    double availableIncomingBitrate;
+
+    // media-source, kind video.
+    int sourceWidth;
+    int sourceHeight;
+    double sourceFps;
+
+    // Resolved codec mimeTypes, e.g. "video/VP8".
+    @Nullable String videoSendCodec;
+    @Nullable String videoRecvCodec;
+
+    void reset() {
+      timestampUs = 0;
+      videoBytesSent = 0;
+      videoFramesEncoded = 0;
+      videoTargetBitrate = 0;
+      videoSendFps = 0;
+      videoSendWidth = 0;
+      videoSendHeight = 0;
+      videoSendCodecId = null;
+      qualityLimitationReason = null;
+      videoBytesReceived = 0;
+      videoPacketsReceived = 0;
+      videoPacketsLost = 0;
+      videoFramesDecoded = 0;
+      videoFramesDropped = 0;
+      videoJitterSec = 0;
+      videoRecvWidth = 0;
+      videoRecvHeight = 0;
+      videoRecvCodecId = null;
+      audioBytesSent = 0;
+      audioBytesReceived = 0;
+      audioPacketsReceived = 0;
+      audioPacketsLost = 0;
+      audioJitterSec = 0;
+      hasCandidatePair = false;
+      currentRoundTripTimeSec = 0;
+      availableOutgoingBitrate = 0;
+      availableIncomingBitrate = 0;
+      sourceWidth = 0;
+      sourceHeight = 0;
+      sourceFps = 0;
+      videoSendCodec = null;
+      videoRecvCodec = null;
+    }
+  }
+
+  private Counters current = new Counters();
+  private Counters previous = new Counters();
+  private boolean hasPrevious;
+
+  /**
+   * Maps |report| and returns the snapshot for the interval since the
+   * previous report. Deltas are 0 for the first report.
+   */
+  public RtcStatsSnapshot update(RTCStatsReport report) {
+    Counters tmp = previous;
+    previous = current;
+    current = tmp;
+    current.reset();
+    current.timestampUs = (long) report.getTimestampUs();
+
+    final Map<String, RTCStats> statsMap = report.getStatsMap();
+    String selectedCandidatePairId = null;
+    for (RTCStats stats : statsMap.values()) {
+      final Map<String, Object> members = stats.getMembers();
+      switch (stats.getType()) {
+        case "outbound-rtp":
+          if (isVideo(members)) {
+            mapOutboundVideo(members, current);
+          } else {
+            current.audioBytesSent += getLong(members, "bytesSent");
+          }
+          break;
+        case "inbound-rtp":
+          if (isVideo(members)) {
+            mapInboundVideo(members, current);
+          } else {
+            current.audioBytesReceived += getLong(members, "bytesReceived");
+            current.audioPacketsReceived += getLong(members, "packetsReceived");
+            current.audioPacketsLost += getLong(members, "packetsLost");
+            current.audioJitterSec = Math.max(current.audioJitterSec, getDouble(members, "jitter"));
+          }
+          break;
+        case "transport":
+          selectedCandidatePairId = getString(members, "selectedCandidatePairId");
+          break;
+        case "media-source":
+          if (isVideo(members)) {
+            current.sourceWidth = getInt(members, "width");
+            current.sourceHeight = getInt(members, "height");
+            current.sourceFps = getDouble(members, "framesPerSecond");
+          }
+          break;
+        default:
+          break;
+      }
+    }
+
+    RTCStats candidatePair =
+        selectedCandidatePairId != null ? statsMap.get(selectedCandidatePairId) : null;
+    if (candidatePair == null) {
+      candidatePair = findNominatedCandidatePair(statsMap);
+    }
+    if (candidatePair != null) {
+      final Map<String, Object> members = candidatePair.getMembers();
+      current.hasCandidatePair = true;
+      current.currentRoundTripTimeSec = getDouble(members, "currentRoundTripTime");
+      current.availableOutgoingBitrate = getDouble(members, "availableOutgoingBitrate");
+      current.availableIncomingBitrate = getDouble(members, "availableIncomingBitrate");
+    }
+    current.videoSendCodec = getCodecMimeType(statsMap, current.videoSendCodecId);
+    current.videoRecvCodec = getCodecMimeType(statsMap, current.videoRecvCodecId);
+
+    RtcStatsSnapshot snapshot = new RtcStatsSnapshot(current, hasPrevious ? previous : null);
+    hasPrevious = true;
+    return snapshot;
+  }
+
+  /** Forgets the previous report, e.g. when stats polling restarts. */
+  public void reset() {
+    hasPrevious = false;
+  }
+
+  private static void mapOutboundVideo(Map<String, Object> members, Counters counters) {
+    counters.videoBytesSent += getLong(members, "bytesSent");
+    counters.videoFramesEncoded += getLong(members, "framesEncoded");
+    counters.videoTargetBitrate += getDouble(members, "targetBitrate");
+    // Report the largest simulcast layer.
+    final int width = getInt(members, "frameWidth");
+    if (width >= counters.videoSendWidth) {
+      counters.videoSendWidth = width;
+      counters.videoSendHeight = getInt(members, "frameHeight");
+      counters.videoSendFps = getDouble(members, "framesPerSecond");
+      counters.videoSendCodecId = getString(members, "codecId");
+      counters.qualityLimitationReason = getString(members, "qualityLimitationReason");
+    }
+  }
+
+  private static void mapInboundVideo(Map<String, Object> members, Counters counters) {
+    counters.videoBytesReceived += getLong(members, "bytesReceived");
+    counters.videoPacketsReceived += getLong(members, "packetsReceived");
+    counters.videoPacketsLost += getLong(members, "packetsLost");
+    counters.videoFramesDecoded += getLong(members, "framesDecoded");
+    counters.videoFramesDropped += getLong(members, "framesDropped");
+    counters.videoJitterSec = Math.max(counters.videoJitterSec, getDouble(members, "jitter"));
+    final int width = getInt(members, "frameWidth");
+    if (width >= counters.videoRecvWidth) {
+      counters.videoRecvWidth = width;
+      counters.videoRecvHeight = getInt(members, "frameHeight");
+      counters.videoRecvCodecId = getString(members, "codecId");
+    }
+  }
+
+  // Fallback for implementations without transport stats.
+  @Nullable
+  private static RTCStats findNominatedCandidatePair(Map<String, RTCStats> statsMap) {
+    for (RTCStats stats : statsMap.values()) {
+      if ("candidate-pair".equals(stats.getType())) {
+        final Map<String, Object> members = stats.getMembers();
+        if (Boolean.TRUE.equals(members.get("nominated"))
+            && "succeeded".equals(members.get("state"))) {
+          return stats;
+        }
+      }
+    }
+    return null;
+  }
+
+  @Nullable
+  private static String getCodecMimeType(Map<String, RTCStats> statsMap, @Nullable String codecId) {
+    if (codecId == null) {
+      return null;
+    }
+    final RTCStats codec = statsMap.get(codecId);
+    return codec != null ? getString(codec.getMembers(), "mimeType") : null;
+  }
+
+  private static boolean isVideo(Map<String, Object> members) {
+    Object kind = members.get("kind");
+    if (kind == null) {
+      // Older libraries only report mediaType.
+      kind = members.get("mediaType");
+    }
+    return "video".equals(kind);
+  }
+
+  // Members are boxed as Long, Integer, BigInteger or Double depending on
+  // their native type; all of them are Numbers.
+  private static long getLong(Map<String, Object> members, String name) {
+    final Object value = members.get(name);
+    return value instanceof Number ? ((Number) value).longValue() : 0;
+  }
+
+  private static int getInt(Map<String, Object> members, String name) {
+    final Object value = members.get(name);
+    return value instanceof Number ? ((Number) value).intValue() : 0;
+  }
+
+  private static double getDouble(Map<String, Object> members, String name) {
+    final Object value = members.get(name);
+    return value instanceof Number ? ((Number) value).doubleValue() : 0;
+  }
+
+  @Nullable
+  private static String getString(Map<String, Object> members, String name) {
+    final Object value = members.get(name);
+    return value instanceof String ? (String) value : null;
+  }
+}
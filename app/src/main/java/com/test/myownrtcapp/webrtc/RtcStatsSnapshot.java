@@ -0,0 +1,131 @@
+package com.test.myownrtcapp.webrtc;
+
+import androidx.annotation.Nullable;
+
+/**
+ * Immutable view of one stats interval produced by RtcStatsEngine. Gauges
+ * are the values of the latest report; rates are computed over the interval
+ * since the previous report and are 0 for the first one.
+ */
+public final class RtcStatsSnapshot {
+  // A receiving video stream below this frame rate is considered frozen.
+  private static final double FROZEN_VIDEO_FPS = 5;
+
+  public final long timestampUs;
+  // Length of the interval the rates are computed over, 0 for the first one.
+  public final long intervalMs;
+
+  // Video send.
+  public final double videoSendBitrateKbps;
+  public final double videoSendFps;
+  public final int videoSendWidth;
+  public final int videoSendHeight;
+  public final long videoFramesEncoded;
+  // What the encoder aims for, the former googTargetEncBitrate.
+  public final double videoTargetBitrateKbps;
+  @Nullable public final String videoSendCodec;
+  @Nullable public final String qualityLimitationReason;
+
+  // Video receive.
+  public final double videoRecvBitrateKbps;
+  public final double videoRecvFps;
+  public final int videoRecvWidth;
+  public final int videoRecvHeight;
+  public final double videoPacketLossPercent;
+  public final double videoJitterMs;
+  public final long videoFramesDropped;
+  @Nullable public final String videoRecvCodec;
+
+  // Audio.
+  public final double audioSendBitrateKbps;
+  public final double audioRecvBitrateKbps;
+  public final double audioPacketLossPercent;
+  public final double audioJitterMs;
+
+  // Selected candidate pair.
+  public final boolean hasCandidatePair;
+  public final double rttMs;
+  public final double availableOutgoingBitrateKbps;
+  public final double availableIncomingBitrateKbps;
+
+  // Local video source.
+  public final int sourceWidth;
+  public final int sourceHeight;
+  public final double sourceFps;
+
+  RtcStatsSnapshot(RtcStatsEngine.Counters current, @Nullable RtcStatsEngine.Counters previous) {
+    timestampUs = current.timestampUs;
+    intervalMs = previous != null
+        ? Math.max(0, (current.timestampUs - previous.timestampUs) / 1000)
+        : 0;
+
+    videoSendFps = current.videoSendFps;
+    videoSendWidth = current.videoSendWidth;
+    videoSendHeight = current.videoSendHeight;
+    videoFramesEncoded = current.videoFramesEncoded;
+    videoTargetBitrateKbps = current.videoTargetBitrate / 1000;
+    videoSendCodec = current.videoSendCodec;
+    qualityLimitationReason = current.qualityLimitationReason;
+
+    videoRecvWidth = current.videoRecvWidth;
+    videoRecvHeight = current.videoRecvHeight;
+    videoJitterMs = current.videoJitterSec * 1000;
+    videoFramesDropped = current.videoFramesDropped;
+    videoRecvCodec = current.videoRecvCodec;
+
+    audioJitterMs = current.audioJitterSec * 1000;
+
+    hasCandidatePair = current.hasCandidatePair;
+    rttMs = current.currentRoundTripTimeSec * 1000;
+    availableOutgoingBitrateKbps = current.availableOutgoingBitrate / 1000;
+    availableIncomingBitrateKbps = current.availableIncomingBitrate / 1000;
+
+    sourceWidth = current.sourceWidth;
+    sourceHeight = current.sourceHeight;
+    sourceFps = current.sourceFps;
+
+    if (intervalMs > 0) {
+      videoSendBitrateKbps =
+          kbps(current.videoBytesSent - previous.videoBytesSent, intervalMs);
+      videoRecvBitrateKbps =
+          kbps(current.videoBytesReceived - previous.videoBytesReceived, intervalMs);
+      audioSendBitrateKbps =
+          kbps(current.audioBytesSent - previous.audioBytesSent, intervalMs);
+      audioRecvBitrateKbps =
+          kbps(current.audioBytesReceived - previous.audioBytesReceived, intervalMs);
+      videoRecvFps = Math.max(0, current.videoFramesDecoded - previous.videoFramesDecoded)
+          * 1000.0 / intervalMs;
+      videoPacketLossPercent = lossPercent(
+          current.videoPacketsLost - previous.videoPacketsLost,
+          current.videoPacketsReceived - previous.videoPacketsReceived);
+      audioPacketLossPercent = lossPercent(
+          current.audioPacketsLost - previous.audioPacketsLost,
+          current.audioPacketsReceived - previous.audioPacketsReceived);
+    } else {
+      videoSendBitrateKbps = 0;
+      videoRecvBitrateKbps = 0;
+      audioSendBitrateKbps = 0;
+      audioRecvBitrateKbps = 0;
+      videoRecvFps = 0;
+      videoPacketLossPercent = 0;
+      audioPacketLossPercent = 0;
+    }
+  }
+
+  /** True if remote video is being received but barely renders any frames. */
+  public boolean isRemoteVideoFrozen() {
+    return intervalMs > 0 && videoRecvWidth > 0 && videoRecvFps < FROZEN_VIDEO_FPS;
+  }
+
+  // Counters can go backwards when a stream is recreated; report 0 then.
+  private static double kbps(long deltaBytes, long intervalMs) {
+    return Math.max(0, deltaBytes) * 8.0 / intervalMs;
+  }
+
+  private static double lossPercent(long deltaLost, long deltaReceived) {
+    deltaLost = Math.max(0, deltaLost);
+    deltaReceived = Math.max(0, deltaReceived);
+    final long expected = deltaLost + deltaReceived;
+    return expected > 0 ? deltaLost * 100.0 / expected : 0;
+  }
+}
@@ -0,0 +1,430 @@
+package com.test.myownrtcapp.webrtc;
+
+import androidx.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Parsed, mutable model of an SDP blob.
+ *
+ * <p>The description is split once into the session-level lines and one
+ * {@link MediaSection} per "m=" line. Inside a media section the rtpmap, fmtp
+ * and rtcp-fb attributes are indexed by payload type so that munging steps
+ * (codec preference, start bitrate, ...) can look them up without scanning or
+ * matching regular expressions. All munging is done in place and the SDP is
+ * serialized back with a single {@link #toString()} call.
+ *
+ * <p>Lines that are not understood are kept verbatim and in their original
+ * order. This class is not thread-safe.
+ */
+public final class SdpDescription {
+  private static final String LINE_SEPARATOR = "\r\n";
+  private static final String MEDIA_PREFIX = "m=";
+  private static final String RTPMAP_PREFIX = "a=rtpmap:";
+  private static final String FMTP_PREFIX = "a=fmtp:";
+  private static final String RTCP_FB_PREFIX = "a=rtcp-fb:";
+  // RTP payload types are 7-bit values.
+  private static final int MAX_PAYLOAD_TYPES = 128;
+
+  private final List<String> sessionLines = new ArrayList<>();
+  private final List<MediaSection> mediaSections = new ArrayList<>();
+  private int lengthHint;
+
+  private SdpDescription() {}
+
+  /**
+   * Parses |sdp| in a single pass. Both "\r\n" and "\n" line endings are
+   * accepted; the serialized form always uses "\r\n".
+   */
+  public static SdpDescription parse(String sdp) {
+    final SdpDescription description = new SdpDescription();
+    description.lengthHint = sdp.length() + 64;
+    MediaSection section = null;
+    final int length = sdp.length();
+    int start = 0;
+    while (start < length) {
+      int end = sdp.indexOf('\n', start);
+      if (end == -1) {
+        end = length;
+      }
+      final int next = end + 1;
+      if (end > start && sdp.charAt(end - 1) == '\r') {
+        end--;
+      }
+      if (end > start) {
+        final String line = sdp.substring(start, end);
+        if (line.startsWith(MEDIA_PREFIX)) {
+          section = MediaSection.parse(line);
+          description.mediaSections.add(section);
+        } else if (section != null) {
+          section.addAttributeLine(line);
+        } else {
+          description.sessionLines.add(line);
+        }
+      }
+      start = next;
+    }
+    return description;
+  }
+
+  /** Returns the first media section of the given type ("audio", "video"), or null. */
+  public @Nullable MediaSection findMediaSection(String mediaType) {
+    for (MediaSection section : mediaSections) {
+      if (section.mediaType.equals(mediaType)) {
+        return section;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Returns the first rtpmap with |encodingName| in any media section, or null.
+   */
+  public @Nullable RtpMap findRtpMap(String encodingName) {
+    for (MediaSection section : mediaSections) {
+      final RtpMap rtpMap = section.findRtpMap(encodingName);
+      if (rtpMap != null) {
+        return rtpMap;
+      }
+    }
+    return null;
+  }
+
+  public List<MediaSection> getMediaSections() {
+    return mediaSections;
+  }
+
+  @Override
+  public String toString() {
+    final StringBuilder builder = new StringBuilder(lengthHint);
+    for (String line : sessionLines) {
+      builder.append(line).append(LINE_SEPARATOR);
+    }
+    for (MediaSection section : mediaSections) {
+      section.appendTo(builder);
+    }
+    return builder.toString();
+  }
+
+  /** A single SDP line inside a media section. */
+  private interface Line {
+    void appendTo(StringBuilder builder);
+  }
+
+  private static final class RawLine implements Line {
+    private final String text;
+
+    RawLine(String text) {
+      this.text = text;
+    }
+
+    @Override
+    public void appendTo(StringBuilder builder) {
+      builder.append(text);
+    }
+  }
+
+  /** a=rtpmap:<payload type> <encoding name>/<clock rate> [/<encoding parameters>] */
+  public static final class RtpMap implements Line {
+    public final int payloadType;
+    public final String encodingName;
+    // Everything after the encoding name, e.g. "/48000/2".
+    private final String clockRateAndParameters;
+
+    RtpMap(int payloadType, String encodingName, String clockRateAndParameters) {
+      this.payloadType = payloadType;
+      this.encodingName = encodingName;
+      this.clockRateAndParameters = clockRateAndParameters;
+    }
+
+    @Override
+    public void appendTo(StringBuilder builder) {
+      builder.append(RTPMAP_PREFIX)
+          .append(payloadType)
+          .append(' ')
+          .append(encodingName)
+          .append(clockRateAndParameters);
+    }
+  }
+
+  /** a=fmtp:<payload type> <format specific parameters> */
+  public static final class Fmtp implements Line {
+    public final int payloadType;
+    private String parameters;
+
+    Fmtp(int payloadType, String parameters) {
+      this.payloadType = payloadType;
+      this.parameters = parameters;
+    }
+
+    public String getParameters() {
+      return parameters;
+    }
+
+    /** Appends a "name=value" pair to the format parameters. */
+    public void addParameter(String name, String value) {
+      if (parameters.isEmpty()) {
+        parameters = name + "=" + value;
+      } else {
+        parameters = parameters + "; " + name + "=" + value;
+      }
+    }
+
+    @Override
+    public void appendTo(StringBuilder builder) {
+      builder.append(FMTP_PREFIX).append(payloadType).append(' ').append(parameters);
+    }
+  }
+
+  /** a=rtcp-fb:<payload type> <feedback type> [<parameters>] */
+  public static final class RtcpFb implements Line {
+    public final int payloadType;
+    public final String feedback;
+
+    RtcpFb(int payloadType, String feedback) {
+      this.payloadType = payloadType;
+      this.feedback = feedback;
+    }
+
+    @Override
+    public void appendTo(StringBuilder builder) {
+      builder.append(RTCP_FB_PREFIX).append(payloadType).append(' ').append(feedback);
+    }
+  }
+
+  /**
+   * One "m=" section: the media description line followed by its attribute
+   * lines. The payload type list of the m-line is kept as strings since it is
+   * only ever reordered, never interpreted.
+   */
+  public static final class MediaSection {
+    public final String mediaType;
+    // "<media> <port> <proto>" part of the m-line.
+    private final String header;
+    private final List<String> formats;
+    private final List<Line> lines = new ArrayList<>();
+    private final RtpMap[] rtpMaps = new RtpMap[MAX_PAYLOAD_TYPES];
+    private final Fmtp[] fmtps = new Fmtp[MAX_PAYLOAD_TYPES];
+    @Nullable private List<RtcpFb>[] rtcpFbs;
+
+    private MediaSection(String mediaType, String header, List<String> formats) {
+      this.mediaType = mediaType;
+      this.header = header;
+      this.formats = formats;
+    }
+
+    // m=<media> <port> <proto> <fmt> ...
+    private static MediaSection parse(String mLine) {
+      final List<String> parts = new ArrayList<>();
+      int start = MEDIA_PREFIX.length();
+      final int length = mLine.length();
+      while (start < length) {
+        int end = mLine.indexOf(' ', start);
+        if (end == -1) {
+          end = length;
+        }
+        if (end > start) {
+          parts.add(mLine.substring(start, end));
+        }
+        start = end + 1;
+      }
+      final String mediaType = parts.isEmpty() ? "" : parts.get(0);
+      final int headerParts = Math.min(3, parts.size());
+      final StringBuilder header = new StringBuilder(MEDIA_PREFIX);
+      for (int i = 0; i < headerParts; i++) {
+        if (i > 0) {
+          header.append(' ');
+        }
+        header.append(parts.get(i));
+      }
+      final List<String> formats = new ArrayList<>(parts.subList(headerParts, parts.size()));
+      return new MediaSection(mediaType, header.toString(), formats);
+    }
+
+    private void addAttributeLine(String line) {
+      if (line.startsWith(RTPMAP_PREFIX)) {
+        final int payloadType = parsePayloadType(line, RTPMAP_PREFIX.length());
+        final int space = line.indexOf(' ', RTPMAP_PREFIX.length());
+        if (payloadType >= 0 && space != -1) {
+          int slash = line.indexOf('/', space + 1);
+          if (slash == -1) {
+            slash = line.length();
+          }
+          final RtpMap rtpMap = new RtpMap(
+              payloadType, line.substring(space + 1, slash), line.substring(slash));
+          if (rtpMaps[payloadType] == null) {
+            rtpMaps[payloadType] = rtpMap;
+          }
+          lines.add(rtpMap);
+          return;
+        }
+      } else if (line.startsWith(FMTP_PREFIX)) {
+        final int payloadType = parsePayloadType(line, FMTP_PREFIX.length());
+        final int space = line.indexOf(' ', FMTP_PREFIX.length());
+        if (payloadType >= 0 && space != -1) {
+          final Fmtp fmtp = new Fmtp(payloadType, line.substring(space + 1));
+          if (fmtps[payloadType] == null) {
+            fmtps[payloadType] = fmtp;
+          }
+          lines.add(fmtp);
+          return;
+        }
+      } else if (line.startsWith(RTCP_FB_PREFIX)) {
+        // Wildcard "a=rtcp-fb:* ..." lines are not indexed and kept as raw lines.
+        final int payloadType = parsePayloadType(line, RTCP_FB_PREFIX.length());
+        final int space = line.indexOf(' ', RTCP_FB_PREFIX.length());
+        if (payloadType >= 0 && space != -1) {
+          final RtcpFb rtcpFb = new RtcpFb(payloadType, line.substring(space + 1));
+          getOrCreateRtcpFbs(payloadType).add(rtcpFb);
+          lines.add(rtcpFb);
+          return;
+        }
+      }
+      lines.add(new RawLine(line));
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<RtcpFb> getOrCreateRtcpFbs(int payloadType) {
+      if (rtcpFbs == null) {
+        rtcpFbs = (List<RtcpFb>[]) new List<?>[MAX_PAYLOAD_TYPES];
+      }
+      List<RtcpFb> list = rtcpFbs[payloadType];
+      if (list == null) {
+        list = new ArrayList<>(4);
+        rtcpFbs[payloadType] = list;
+      }
+      return list;
+    }
+
+    /** Returns the payload type list of the m-line, in preference order. */
+    public List<String> getFormats() {
+      return formats;
+    }
+
+    public @Nullable RtpMap getRtpMap(int payloadType) {
+      return isValidPayloadType(payloadType) ? rtpMaps[payloadType] : null;
+    }
+
+    public @Nullable Fmtp getFmtp(int payloadType) {
+      return isValidPayloadType(payloadType) ? fmtps[payloadType] : null;
+    }
+
+    /** Returns the rtcp-fb attributes of |payloadType|; the list is empty if there are none. */
+    public List<RtcpFb> getRtcpFbs(int payloadType) {
+      if (rtcpFbs == null || !isValidPayloadType(payloadType) || rtcpFbs[payloadType] == null) {
+        return Collections.emptyList();
+      }
+      return rtcpFbs[payloadType];
+    }
+
+    /** Returns the first rtpmap with |encodingName|, or null. */
+    public @Nullable RtpMap findRtpMap(String encodingName) {
+      for (Line line : lines) {
+        if (line instanceof RtpMap && ((RtpMap) line).encodingName.equals(encodingName)) {
+          return (RtpMap) line;
+        }
+      }
+      return null;
+    }
+
+    /** Returns all payload types with |encodingName| in attribute order. */
+    public List<String> findPayloadTypes(String encodingName) {
+      final List<String> payloadTypes = new ArrayList<>();
+      for (Line line : lines) {
+        if (line instanceof RtpMap && ((RtpMap) line).encodingName.equals(encodingName)) {
+          payloadTypes.add(Integer.toString(((RtpMap) line).payloadType));
+        }
+      }
+      return payloadTypes;
+    }
+
+    /**
+     * Moves |preferredPayloadTypes| to the front of the m-line payload type
+     * list. Returns false if the m-line carries no payload types.
+     */
+    public boolean movePayloadTypesToFront(List<String> preferredPayloadTypes) {
+      if (formats.isEmpty()) {
+        return false;
+      }
+      formats.removeAll(preferredPayloadTypes);
+      formats.addAll(0, preferredPayloadTypes);
+      return true;
+    }
+
+    /**
+     * Returns the fmtp attribute of |payloadType|, adding an empty one right
+     * after the matching rtpmap line if the section has none. Returns null if
+     * |payloadType| is not a valid payload type.
+     */
+    public @Nullable Fmtp getOrCreateFmtp(int payloadType) {
+      if (!isValidPayloadType(payloadType)) {
+        return null;
+      }
+      Fmtp fmtp = fmtps[payloadType];
+      if (fmtp != null) {
+        return fmtp;
+      }
+      fmtp = new Fmtp(payloadType, "");
+      fmtps[payloadType] = fmtp;
+      final int rtpMapIndex = lines.indexOf(rtpMaps[payloadType]);
+      if (rtpMapIndex == -1) {
+        lines.add(fmtp);
+      } else {
+        lines.add(rtpMapIndex + 1, fmtp);
+      }
+      return fmtp;
+    }
+
+    /** Returns the m-line as it will be serialized. */
+    public String getMediaLine() {
+      final StringBuilder builder = new StringBuilder(header.length() + formats.size() * 4);
+      appendMediaLine(builder);
+      return builder.toString();
+    }
+
+    private void appendMediaLine(StringBuilder builder) {
+      builder.append(header);
+      for (String format : formats) {
+        builder.append(' ').append(format);
+      }
+    }
+
+    private void appendTo(StringBuilder builder) {
+      appendMediaLine(builder);
+      builder.append(LINE_SEPARATOR);
+      for (Line line : lines) {
+        line.appendTo(builder);
+        builder.append(LINE_SEPARATOR);
+      }
+    }
+  }
+
+  private static boolean isValidPayloadType(int payloadType) {
+    return payloadType >= 0 && payloadType < MAX_PAYLOAD_TYPES;
+  }
+
+  // Parses the decimal payload type that starts at |start| and is terminated
+  // by a space. Returns -1 if there is no valid payload type.
+  private static int parsePayloadType(String line, int start) {
+    int value = 0;
+    int i = start;
+    final int length = line.length();
+    while (i < length) {
+      final char c = line.charAt(i);
+      if (c == ' ') {
+        break;
+      }
+      if (c < '0' || c > '9') {
+        return -1;
+      }
+      value = value * 10 + (c - '0');
+      if (value >= MAX_PAYLOAD_TYPES) {
+        return -1;
+      }
+      i++;
+    }
+    return (i == start || i == length) ? -1 : value;
+  }
+}
@@ -0,0 +1,67 @@
+package com.test.myownrtcapp.webrtc;
+
+import android.util.Log;
+
+import java.util.List;
+
+/**
+ * The SDP munging PeerConnectionClient applies to local and remote
+ * descriptions: codec preference and start bitrates. Kept apart from
+ * PeerConnectionClient so that the benchmarks and tests run this exact code.
+ */
+final class SdpMunging {
+  private static final String TAG = "PCRTCClient";
+  static final String VIDEO_CODEC_PARAM_START_BITRATE = "x-google-start-bitrate";
+  static final String AUDIO_CODEC_PARAM_BITRATE = "maxaveragebitrate";
+
+  private SdpMunging() {}
+
+  static void setStartBitrate(
+          String codec, boolean isVideoCodec, SdpDescription sdpDescription, int bitrateKbps) {
+    // Search for codec rtpmap in format
+    // a=rtpmap:<payload type> <encoding name>/<clock rate> [/<encoding parameters>]
+    for (SdpDescription.MediaSection section : sdpDescription.getMediaSections()) {
+      final SdpDescription.RtpMap rtpMap = section.findRtpMap(codec);
+      if (rtpMap == null) {
+        continue;
+      }
+      Log.d(TAG, "Found " + codec + " rtpmap " + rtpMap.payloadType);
+      // Update the a=fmtp line for this codec with the new bitrate parameter, or
+      // add one right after the rtpmap line if the codec has none.
+      final SdpDescription.Fmtp fmtp = section.getOrCreateFmtp(rtpMap.payloadType);
+      if (fmtp == null) {
+        Log.w(TAG, "Invalid payload type " + rtpMap.payloadType + " for " + codec);
+        return;
+      }
+      if (isVideoCodec) {
+        fmtp.addParameter(VIDEO_CODEC_PARAM_START_BITRATE, Integer.toString(bitrateKbps));
+      } else {
+        fmtp.addParameter(AUDIO_CODEC_PARAM_BITRATE, Integer.toString(bitrateKbps * 1000));
+      }
+      Log.d(TAG, "Update remote SDP fmtp for " + codec + ": " + fmtp.getParameters());
+      return;
+    }
+    Log.w(TAG, "No rtpmap for " + codec + " codec");
+  }
+
+  static void preferCodec(SdpDescription sdpDescription, String codec, boolean isAudio) {
+    final SdpDescription.MediaSection section =
+        sdpDescription.findMediaSection(isAudio ? "audio" : "video");
+    if (section == null) {
+      Log.w(TAG, "No mediaDescription line, so can't prefer " + codec);
+      return;
+    }
+    // A list with all the payload types with name |codec|. The payload types are integers in the
+    // range 96-127, but they are stored as strings here.
+    final List<String> codecPayloadTypes = section.findPayloadTypes(codec);
+    if (codecPayloadTypes.isEmpty()) {
+      Log.w(TAG, "No payload types with name " + codec);
+      return;
+    }
+    if (!section.movePayloadTypesToFront(codecPayloadTypes)) {
+      Log.e(TAG, "Wrong SDP media description format for " + section.mediaType);
+      return;
+    }
+    Log.d(TAG, "Change media description to " + section.getMediaLine());
+  }
+}
@@ -0,0 +1,94 @@
+package com.test.myownrtcapp.webrtc;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.webrtc.IceCandidate;
+import org.webrtc.SessionDescription;
+
+import java.util.List;
+
+/**
+ * Builds and parses the JSON payloads exchanged with the socket.io signaling
+ * server. Used by WebRTCClient; has no dependency on the socket or the
+ * signaling thread.
+ */
+final class SignalingMessages {
+  private SignalingMessages() {}
+
+  // Put a |key|->|value| mapping in |json|.
+  static void jsonPut(JSONObject json, String key, Object value) {
+    try {
+      json.put(key, value);
+    } catch (JSONException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  // Wraps an offer or answer SDP as {"sdp": {"sdp": ..., "type": ...}, "roomId": ...}.
+  static JSONObject toJsonSessionDescription(String roomId, SessionDescription sdp) {
+    JSONObject json = new JSONObject();
+    jsonPut(json, "sdp", sdp.description);
+    jsonPut(json, "type", sdp.type.canonicalForm());
+    JSONObject jsonRes = new JSONObject();
+    jsonPut(jsonRes, "sdp", json);
+    jsonPut(jsonRes, "roomId", roomId);
+    return jsonRes;
+  }
+
+  // Converts a local candidate to the "webrtc_ice_candidate" message.
+  static JSONObject toJsonCandidateMessage(String roomId, IceCandidate candidate) {
+    JSONObject json = new JSONObject();
+    jsonPut(json, "type", "candidate");
+    jsonPut(json, "label", candidate.sdpMLineIndex);
+    jsonPut(json, "id", candidate.sdpMid);
+    jsonPut(json, "candidate", candidate.sdp);
+    jsonPut(json, "roomId", roomId);
+    return json;
+  }
+
+  // Converts a batch of local candidates to one "webrtc_ice_candidate" message
+  // of type "candidates".
+  static JSONObject toJsonCandidatesMessage(String roomId, List<IceCandidate> candidates) {
+    JSONArray jsonArray = new JSONArray();
+    for (IceCandidate candidate : candidates) {
+      jsonArray.put(toJsonCandidate(candidate));
+    }
+    JSONObject json = new JSONObject();
+    jsonPut(json, "type", "candidates");
+    jsonPut(json, "candidates", jsonArray);
+    jsonPut(json, "roomId", roomId);
+    return json;
+  }
+
+  // Converts a Java candidate to a JSONObject.
+  static JSONObject toJsonCandidate(final IceCandidate candidate) {
+    JSONObject json = new JSONObject();
+    jsonPut(json, "label", candidate.sdpMLineIndex);
+    jsonPut(json, "id", candidate.sdpMid);
+    jsonPut(json, "candidate", candidate.sdp);
+    return json;
+  }
+
+  // Converts a JSON candidate to a Java object.
+  static IceCandidate toJavaCandidate(JSONObject json) throws JSONException {
+    return new IceCandidate("0", json.getInt("label"), json.getString("candidate"));
+  }
+
+  // Converts the "candidates" array of a batched message to Java objects.
+  static IceCandidate[] toJavaCandidates(JSONObject json) throws JSONException {
+    JSONArray jsonArray = json.getJSONArray("candidates");
+    IceCandidate[] candidates = new IceCandidate[jsonArray.length()];
+    for (int i = 0; i < jsonArray.length(); ++i) {
+      candidates[i] = toJavaCandidate(jsonArray.getJSONObject(i));
+    }
+    return candidates;
+  }
+
+  // Converts a received {"type": ..., "sdp": ...} message to a Java object.
+  static SessionDescription toJavaSessionDescription(JSONObject json) throws JSONException {
+    return new SessionDescription(
+        SessionDescription.Type.fromCanonicalForm(json.getString("type")),
+        json.getString("sdp"));
+  }
+}
@@ -0,0 +1,197 @@
+package com.test.myownrtcapp.webrtc;
+
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Schedules getStats() polls on the peer connection executor. Polls every
+ * |fastIntervalMs| while the call is degraded (loss, RTT or a frozen remote
+ * video) and backs off towards |fastIntervalMs| * STABLE_INTERVAL_FACTOR
+ * while it is stable. The next poll is only scheduled once the previous one
+ * completed, so polls never pile up on the executor.
+ *
+ * <p>Also keeps track of its own cost: the time from issuing a poll to the
+ * stats callback and the time spent processing the callback on the executor.
+ *
+ * <p>All methods must be called on the executor.
+ */
+class StatsPollingScheduler {
+  private static final String TAG = "StatsPollingScheduler";
+
+  /** Issues one stats request; onPollCompleted() must follow once it is done. */
+  interface Poller {
+    /** Returns false if no request was issued. */
+    boolean poll();
+  }
+
+  private static final int STABLE_INTERVAL_FACTOR = 4;
+  // Stable polls needed before backing off after a degraded one.
+  private static final int STABLE_POLLS_BEFORE_BACKOFF = 3;
+  private static final double DEGRADED_LOSS_PERCENT = 2;
+  private static final double DEGRADED_RTT_MS = 300;
+  private static final int POLLS_PER_OVERHEAD_LOG = 30;
+
+  private final ScheduledExecutorService executor;
+  private final Poller poller;
+
+  private int fastIntervalMs;
+  private int intervalMs;
+  private int stablePolls;
+  private boolean started;
+  private boolean paused;
+  private boolean pollInFlight;
+  @Nullable private ScheduledFuture<?> nextPoll;
+  private long pollStartNs;
+
+  // Overhead since start().
+  private int pollCount;
+  private long totalRoundTripUs;
+  private long maxRoundTripUs;
+  private long totalCallbackUs;
+  private long maxCallbackUs;
+  private long startedNs;
+
+  StatsPollingScheduler(ScheduledExecutorService executor, Poller poller) {
+    this.executor = executor;
+    this.poller = poller;
+  }
+
+  /** Starts polling immediately, then every |fastIntervalMs| or slower. */
+  void start(int fastIntervalMs) {
+    stop();
+    this.fastIntervalMs = fastIntervalMs;
+    intervalMs = fastIntervalMs;
+    stablePolls = 0;
+    pollCount = 0;
+    totalRoundTripUs = 0;
+    maxRoundTripUs = 0;
+    totalCallbackUs = 0;
+    maxCallbackUs = 0;
+    startedNs = System.nanoTime();
+    started = true;
+    Log.d(TAG, "Start polling, interval " + fastIntervalMs + "-"
+        + fastIntervalMs * STABLE_INTERVAL_FACTOR + " ms");
+    schedule(0);
+  }
+
+  /** Stops polling and logs the overhead summary. */
+  void stop() {
+    if (!started) {
+      return;
+    }
+    started = false;
+    cancelNextPoll();
+    logOverhead();
+  }
+
+  /** Pauses polling, e.g. while the call UI is in the background. */
+  void setPaused(boolean paused) {
+    if (this.paused == paused) {
+      return;
+    }
+    this.paused = paused;
+    Log.d(TAG, paused ? "Polling paused" : "Polling resumed");
+    if (paused) {
+      cancelNextPoll();
+    } else if (started && !pollInFlight) {
+      schedule(0);
+    }
+  }
+
+  /**
+   * Reports the outcome of the poll in flight. |snapshot| is null if the
+   * result was discarded. |callbackStartNs| is when the callback started
+   * running on the executor.
+   */
+  void onPollCompleted(@Nullable RtcStatsSnapshot snapshot, long callbackStartNs) {
+    if (!pollInFlight) {
+      return;
+    }
+    pollInFlight = false;
+    final long nowNs = System.nanoTime();
+    final long roundTripUs = (callbackStartNs - pollStartNs) / 1000;
+    final long callbackUs = (nowNs - callbackStartNs) / 1000;
+    pollCount++;
+    totalRoundTripUs += roundTripUs;
+    maxRoundTripUs = Math.max(maxRoundTripUs, roundTripUs);
+    totalCallbackUs += callbackUs;
+    maxCallbackUs = Math.max(maxCallbackUs, callbackUs);
+    if (pollCount % POLLS_PER_OVERHEAD_LOG == 0) {
+      logOverhead();
+    }
+
+    if (snapshot != null) {
+      adaptInterval(snapshot);
+    }
+    if (started && !paused) {
+      schedule(intervalMs);
+    }
+  }
+
+  private void adaptInterval(RtcStatsSnapshot snapshot) {
+    final int previousIntervalMs = intervalMs;
+    if (isDegraded(snapshot)) {
+      stablePolls = 0;
+      intervalMs = fastIntervalMs;
+    } else if (++stablePolls >= STABLE_POLLS_BEFORE_BACKOFF) {
+      stablePolls = 0;
+      intervalMs = Math.min(intervalMs * 2, fastIntervalMs * STABLE_INTERVAL_FACTOR);
+    }
+    if (intervalMs != previousIntervalMs) {
+      Log.d(TAG, "Stats interval " + previousIntervalMs + " -> " + intervalMs + " ms");
+    }
+  }
+
+  private static boolean isDegraded(RtcStatsSnapshot snapshot) {
+    if (snapshot.videoPacketLossPercent >= DEGRADED_LOSS_PERCENT
+        || snapshot.audioPacketLossPercent >= DEGRADED_LOSS_PERCENT) {
+      return true;
+    }
+    if (snapshot.hasCandidatePair && snapshot.rttMs >= DEGRADED_RTT_MS) {
+      return true;
+    }
+    return snapshot.isRemoteVideoFrozen();
+  }
+
+  private void schedule(long delayMs) {
+    cancelNextPoll();
+    nextPoll = executor.schedule(this::poll, delayMs, TimeUnit.MILLISECONDS);
+  }
+
+  private void poll() {
+    nextPoll = null;
+    if (!started || paused || pollInFlight) {
+      return;
+    }
+    pollStartNs = System.nanoTime();
+    pollInFlight = true;
+    if (!poller.poll()) {
+      pollInFlight = false;
+      schedule(intervalMs);
+    }
+  }
+
+  private void cancelNextPoll() {
+    if (nextPoll != null) {
+      nextPoll.cancel(false);
+      nextPoll = null;
+    }
+  }
+
+  private void logOverhead() {
+    if (pollCount == 0) {
+      return;
+    }
+    final long elapsedUs = Math.max(1, (System.nanoTime() - startedNs) / 1000);
+    Log.i(TAG, "Stats overhead: polls=" + pollCount + ", interval=" + intervalMs + " ms"
+        + ", round trip avg/max=" + totalRoundTripUs / pollCount / 1000 + "/"
+        + maxRoundTripUs / 1000 + " ms"
+        + ", callback avg/max=" + totalCallbackUs / pollCount + "/" + maxCallbackUs + " us"
+        + ", executor share=" + totalCallbackUs * 1000 / elapsedUs / 10.0 + "%");
+  }
+}
@@ -0,0 +1,323 @@
+package com.test.myownrtcapp.webrtc;
+
+import android.content.Context;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+
+import org.webrtc.CapturerObserver;
+import org.webrtc.JavaI420Buffer;
+import org.webrtc.SurfaceTextureHelper;
+import org.webrtc.VideoCapturer;
+import org.webrtc.VideoFrame;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Generates frames in memory instead of capturing them, for load tests and
+ * encoder benchmarks on devices without a camera. The content of a frame
+ * depends only on its index, the resolution and the MotionComplexity, so runs
+ * are reproducible: a panning background, bouncing boxes and, at HIGH, blocks
+ * of noise. The index is embedded in a strip of black and white blocks at
+ * the top that survives encoding; readFrameId() reads it back, e.g. from
+ * the remote frames of a loopback call.
+ *
+ * <p>Frame buffers are pooled, so steady state capture does not allocate.
+ */
+public class SyntheticVideoCapturer implements VideoCapturer {
+  private static final String TAG = "SyntheticVideoCapturer";
+
+  /** How much of the frame changes from one frame to the next. */
+  public enum MotionComplexity {
+    STATIC(0, 0, 0),
+    LOW(1, 1, 0),
+    MEDIUM(4, 3, 0),
+    HIGH(8, 6, 8);
+
+    // Pixels the background pans per frame.
+    final int panSpeed;
+    final int boxCount;
+    // One in this many 16x16 blocks is noise, 0 for none.
+    final int noiseBlockRatio;
+
+    MotionComplexity(int panSpeed, int boxCount, int noiseBlockRatio) {
+      this.panSpeed = panSpeed;
+      this.boxCount = boxCount;
+      this.noiseBlockRatio = noiseBlockRatio;
+    }
+  }
+
+  // The frame ID strip: a marker of alternating blocks, then the index with
+  // the most significant bit first.
+  private static final int ID_MARKER_BITS = 4;
+  private static final int ID_BITS = 32;
+  private static final int ID_STRIP_BLOCKS = ID_MARKER_BITS + ID_BITS;
+  private static final byte BLACK = 16;
+  private static final byte WHITE = (byte) 235;
+  private static final byte NEUTRAL_CHROMA = (byte) 128;
+  private static final int PATTERN_PERIOD = 128;
+  private static final int NOISE_BLOCK_SIZE = 16;
+
+  private final MotionComplexity complexity;
+  private final ScheduledExecutorService executor =
+      Executors.newSingleThreadScheduledExecutor(r -> new Thread(r, TAG));
+  @Nullable private CapturerObserver capturerObserver;
+
+  // Executor thread.
+  @Nullable private ScheduledFuture<?> captureTask;
+  private int width;
+  private int height;
+  private long frameIndex;
+  private byte[] pattern = new byte[0];
+  private byte[] rowBuffer = new byte[0];
+  private final Queue<ByteBuffer> bufferPool = new ConcurrentLinkedQueue<>();
+  private volatile int frameSize;
+
+  public SyntheticVideoCapturer(MotionComplexity complexity) {
+    this.complexity = complexity;
+  }
+
+  @Override
+  public void initialize(SurfaceTextureHelper surfaceTextureHelper, Context applicationContext,
+      CapturerObserver capturerObserver) {
+    this.capturerObserver = capturerObserver;
+  }
+
+  @Override
+  public void startCapture(int width, int height, int framerate) {
+    executor.execute(() -> startCaptureInternal(width, height, framerate));
+  }
+
+  @Override
+  public void stopCapture() throws InterruptedException {
+    // Also waits for a frame being generated.
+    try {
+      executor.submit(this::stopCaptureInternal).get();
+    } catch (ExecutionException e) {
+      throw new RuntimeException(e.getCause());
+    }
+  }
+
+  @Override
+  public void changeCaptureFormat(int width, int height, int framerate) {
+    executor.execute(() -> {
+      stopCaptureInternal();
+      startCaptureInternal(width, height, framerate);
+    });
+  }
+
+  @Override
+  public void dispose() {
+    executor.shutdownNow();
+  }
+
+  @Override
+  public boolean isScreencast() {
+    return false;
+  }
+
+  /**
+   * Returns the index embedded in a frame of this capturer, or -1 if the ID
+   * strip cannot be read, e.g. because the frame was scaled down too much.
+   */
+  public static long readFrameId(VideoFrame.I420Buffer buffer) {
+    final int blockSize = idBlockSize(buffer.getWidth());
+    if (blockSize * ID_STRIP_BLOCKS > buffer.getWidth() || blockSize > buffer.getHeight()) {
+      return -1;
+    }
+    final ByteBuffer dataY = buffer.getDataY();
+    final int strideY = buffer.getStrideY();
+    long id = 0;
+    for (int i = 0; i < ID_STRIP_BLOCKS; i++) {
+      // The centre pixel is the least affected by compression.
+      final int value =
+          dataY.get((blockSize / 2) * strideY + i * blockSize + blockSize / 2) & 0xFF;
+      final boolean bit = value >= 128;
+      if (i < ID_MARKER_BITS) {
+        if (bit != (i % 2 == 0)) {
+          return -1;
+        }
+      } else {
+        id = (id << 1) | (bit ? 1 : 0);
+      }
+    }
+    return id;
+  }
+
+  private void startCaptureInternal(int width, int height, int framerate) {
+    if (captureTask != null || executor.isShutdown()) {
+      return;
+    }
+    this.width = width & ~1;
+    this.height = height & ~1;
+    frameSize = this.width * this.height + 2 * (this.width / 2) * (this.height / 2);
+    bufferPool.clear();
+    pattern = new byte[this.width + PATTERN_PERIOD];
+    for (int i = 0; i < pattern.length; i++) {
+      // Triangle wave, which keeps the background smooth.
+      final int phase = i % PATTERN_PERIOD;
+      final int level = phase < PATTERN_PERIOD / 2 ? phase : PATTERN_PERIOD - 1 - phase;
+      pattern[i] = (byte) (BLACK + level * (235 - BLACK) / (PATTERN_PERIOD / 2 - 1));
+    }
+    rowBuffer = new byte[Math.max(this.width, NOISE_BLOCK_SIZE)];
+    final long intervalNs = TimeUnit.SECONDS.toNanos(1) / Math.max(1, framerate);
+    captureTask =
+        executor.scheduleAtFixedRate(this::captureFrame, 0, intervalNs, TimeUnit.NANOSECONDS);
+    Log.d(TAG, "Generating " + this.width + "x" + this.height + "@" + framerate + " frames, "
+        + complexity + " motion");
+    if (capturerObserver != null) {
+      capturerObserver.onCapturerStarted(true);
+    }
+  }
+
+  private void stopCaptureInternal() {
+    if (captureTask == null) {
+      return;
+    }
+    captureTask.cancel(false);
+    captureTask = null;
+    Log.d(TAG, "Stopped after " + frameIndex + " frames");
+    if (capturerObserver != null) {
+      capturerObserver.onCapturerStopped();
+    }
+  }
+
+  private void captureFrame() {
+    final long timestampNs = SystemClock.elapsedRealtimeNanos();
+    ByteBuffer data = bufferPool.poll();
+    if (data == null) {
+      data = ByteBuffer.allocateDirect(frameSize);
+    }
+    final int chromaWidth = width / 2;
+    final int chromaHeight = height / 2;
+    final ByteBuffer dataY = slice(data, 0, width * height);
+    final ByteBuffer dataU = slice(data, width * height, chromaWidth * chromaHeight);
+    final ByteBuffer dataV = slice(data, width * height + chromaWidth * chromaHeight,
+        chromaWidth * chromaHeight);
+    drawFrame(frameIndex, dataY, dataU, dataV);
+    final ByteBuffer pooled = data;
+    final JavaI420Buffer buffer = JavaI420Buffer.wrap(width, height, dataY, width, dataU,
+        chromaWidth, dataV, chromaWidth, () -> {
+          if (pooled.capacity() == frameSize) {
+            bufferPool.offer(pooled);
+          }
+        });
+    final VideoFrame frame = new VideoFrame(buffer, 0 /* rotation */, timestampNs);
+    frameIndex++;
+    if (capturerObserver != null) {
+      capturerObserver.onFrameCaptured(frame);
+    }
+    frame.release();
+  }
+
+  private void drawFrame(long index, ByteBuffer dataY, ByteBuffer dataU, ByteBuffer dataV) {
+    // Background, panning diagonally.
+    final int pan = (int) ((index * complexity.panSpeed) % PATTERN_PERIOD);
+    for (int y = 0; y < height; y++) {
+      dataY.position(y * width);
+      dataY.put(pattern, (y + pan) % PATTERN_PERIOD, width);
+    }
+    Arrays.fill(rowBuffer, NEUTRAL_CHROMA);
+    final int chromaWidth = width / 2;
+    for (int y = 0; y < height / 2; y++) {
+      dataU.position(y * chromaWidth);
+      dataU.put(rowBuffer, 0, chromaWidth);
+      dataV.position(y * chromaWidth);
+      dataV.put(rowBuffer, 0, chromaWidth);
+    }
+
+    final int boxSize = Math.max(2, (Math.min(width, height) / 6) & ~1);
+    for (int i = 0; i < complexity.boxCount; i++) {
+      final int x = bounce(index * (3 + 2 * i) + i * 97, width - boxSize) & ~1;
+      final int y = bounce(index * (2 + i) + i * 53, height - boxSize) & ~1;
+      fillRect(dataY, width, x, y, boxSize, boxSize, (byte) (BLACK + (60 + 40 * i) % 200));
+      fillRect(dataU, chromaWidth, x / 2, y / 2, boxSize / 2, boxSize / 2,
+          (byte) (64 + 48 * i));
+      fillRect(dataV, chromaWidth, x / 2, y / 2, boxSize / 2, boxSize / 2,
+          (byte) (192 - 40 * i));
+    }
+
+    if (complexity.noiseBlockRatio > 0) {
+      final int blocksX = width / NOISE_BLOCK_SIZE;
+      final int blocksY = height / NOISE_BLOCK_SIZE;
+      final int noiseBlocks = blocksX * blocksY / complexity.noiseBlockRatio;
+      long random = index * 0x5DEECE66DL + 11;
+      for (int i = 0; i < noiseBlocks; i++) {
+        random = nextRandom(random);
+        final int block = (int) ((random >>> 16) % (blocksX * blocksY));
+        final int x = (block % blocksX) * NOISE_BLOCK_SIZE;
+        final int y = (block / blocksX) * NOISE_BLOCK_SIZE;
+        for (int row = 0; row < NOISE_BLOCK_SIZE; row++) {
+          for (int column = 0; column < NOISE_BLOCK_SIZE; column += 8) {
+            random = nextRandom(random);
+            for (int b = 0; b < 8; b++) {
+              rowBuffer[column + b] = (byte) (random >>> (8 * b));
+            }
+          }
+          dataY.position((y + row) * width + x);
+          dataY.put(rowBuffer, 0, NOISE_BLOCK_SIZE);
+        }
+      }
+    }
+
+    // Frame ID strip.
+    final int blockSize = idBlockSize(width);
+    if (blockSize * ID_STRIP_BLOCKS <= width && blockSize <= height) {
+      for (int i = 0; i < ID_STRIP_BLOCKS; i++) {
+        final boolean bit = i < ID_MARKER_BITS
+            ? i % 2 == 0
+            : ((index >>> (ID_BITS - 1 - (i - ID_MARKER_BITS))) & 1) != 0;
+        fillRect(dataY, width, i * blockSize, 0, blockSize, blockSize, bit ? WHITE : BLACK);
+        fillRect(dataU, chromaWidth, i * blockSize / 2, 0, blockSize / 2, blockSize / 2,
+            NEUTRAL_CHROMA);
+        fillRect(dataV, chromaWidth, i * blockSize / 2, 0, blockSize / 2, blockSize / 2,
+            NEUTRAL_CHROMA);
+      }
+    }
+    dataY.rewind();
+    dataU.rewind();
+    dataV.rewind();
+  }
+
+  private void fillRect(
+      ByteBuffer plane, int stride, int x, int y, int width, int height, byte value) {
+    Arrays.fill(rowBuffer, 0, width, value);
+    for (int row = y; row < y + height; row++) {
+      plane.position(row * stride + x);
+      plane.put(rowBuffer, 0, width);
+    }
+  }
+
+  // Blocks are large enough to survive encoding at 1/4 of the width.
+  private static int idBlockSize(int width) {
+    return Math.max(2, (width / (ID_STRIP_BLOCKS + 4)) & ~1);
+  }
+
+  // Position moving back and forth between 0 and |range|.
+  private static int bounce(long distance, int range) {
+    if (range <= 0) {
+      return 0;
+    }
+    final long phase = distance % (2L * range);
+    return (int) (phase < range ? phase : 2L * range - phase);
+  }
+
+  private static long nextRandom(long random) {
+    return random * 6364136223846793005L + 1442695040888963407L;
+  }
+
+  private static ByteBuffer slice(ByteBuffer data, int offset, int length) {
+    final ByteBuffer slice = data.duplicate();
+    slice.position(offset).limit(offset + length);
+    return slice.slice();
+  }
+}
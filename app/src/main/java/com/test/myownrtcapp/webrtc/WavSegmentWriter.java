@@ -0,0 +1,262 @@
+package com.test.myownrtcapp.webrtc;
+
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.text.DateFormat;
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.Locale;
+
+/**
+ * Writes a recording of 16-bit PCM as a series of WAV files (segments) in
+ * one directory, e.g. recorded_audio_20200131_143000_000.wav. A segment is
+ * closed once it holds MAX_SEGMENT_DURATION_MS of audio or
+ * MAX_SEGMENT_SIZE_IN_BYTES, and recording continues in the next one. The
+ * header is written as a placeholder when a segment is opened and patched
+ * with the final sizes when it is closed.
+ *
+ * <p>After every closed segment the oldest recordings in the directory, WAV
+ * or compressed, are deleted until all of them fit into the disk budget.
+ * The closed segment, segments the SegmentListener still holds and its
+ * ".tmp" files count against the budget but are never deleted. Then the
+ * segment is handed to the SegmentListener, if any.
+ *
+ * <p>Not thread safe; RecordedAudioToFileController uses it on its writer
+ * thread.
+ */
+class WavSegmentWriter {
+  private static final String TAG = "WavSegmentWriter";
+  static final String FILE_PREFIX = "recorded_audio_";
+  static final String FILE_SUFFIX = ".wav";
+  // Suffix of files still being written by the SegmentListener.
+  static final String TMP_SUFFIX = ".tmp";
+  private static final int HEADER_SIZE = 44;
+  private static final int BYTES_PER_SAMPLE = 2;
+  private static final long MAX_SEGMENT_DURATION_MS = 5 * 60 * 1000;
+  // The former single file limit, about 10 minutes of 48 kHz mono.
+  private static final long MAX_SEGMENT_SIZE_IN_BYTES = 58348800L;
+
+  /** Notified on the writer thread of every closed, non-empty segment. */
+  interface SegmentListener {
+    void onSegmentClosed(File segment);
+
+    /** Whether |segment| was handed over and is still in use. */
+    boolean isPending(File segment);
+  }
+
+  private final File directory;
+  private final long maxTotalSizeInBytes;
+  @Nullable
+  private final SegmentListener listener;
+  private final String baseName;
+  private final ByteBuffer header =
+      ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+
+  private int sampleRate;
+  private int channelCount;
+  private long maxSegmentDataBytes = MAX_SEGMENT_SIZE_IN_BYTES;
+  private int segmentIndex;
+  @Nullable
+  private RandomAccessFile segmentFile;
+  @Nullable
+  private File segment;
+  private long segmentDataBytes;
+
+  /**
+   * Records into |directory|, which is shared with earlier recordings. All
+   * recordings together are kept below |maxTotalSizeInBytes|.
+   */
+  WavSegmentWriter(
+      File directory, long maxTotalSizeInBytes, @Nullable SegmentListener listener) {
+    this.directory = directory;
+    this.maxTotalSizeInBytes = maxTotalSizeInBytes;
+    this.listener = listener;
+    DateFormat dateFormat = new SimpleDateFormat("yyyyMMdd_HHmmss", Locale.US);
+    baseName = FILE_PREFIX + dateFormat.format(new Date()) + "_";
+  }
+
+  /** Opens the first segment ahead of the first samples. */
+  boolean open() {
+    if (!directory.isDirectory() && !directory.mkdirs()) {
+      Log.e(TAG, "Failed to create " + directory);
+      return false;
+    }
+    try {
+      openSegment();
+    } catch (IOException e) {
+      Log.e(TAG, "Failed to open audio output file: " + e.getMessage());
+      return false;
+    }
+    return true;
+  }
+
+  /** Sets the audio format; must be called before the first write(). */
+  void setFormat(int sampleRate, int channelCount) {
+    this.sampleRate = sampleRate;
+    this.channelCount = channelCount;
+    final int blockAlign = channelCount * BYTES_PER_SAMPLE;
+    final long maxDurationBytes = MAX_SEGMENT_DURATION_MS * sampleRate / 1000 * blockAlign;
+    // Segments end on a sample frame boundary.
+    maxSegmentDataBytes =
+        Math.min(maxDurationBytes, MAX_SEGMENT_SIZE_IN_BYTES) / blockAlign * blockAlign;
+    Log.d(TAG, "Format " + sampleRate + " Hz, " + channelCount + " channels, segments of "
+        + maxSegmentDataBytes + " bytes");
+  }
+
+  boolean hasFormat() {
+    return sampleRate > 0;
+  }
+
+  /**
+   * Writes the next |count| bytes of |ring|, rotating segments as needed.
+   * On a write error the current segment is closed and the rest of |count|
+   * is dropped; the next write starts a new segment.
+   */
+  void write(PcmRingBuffer ring, int count) {
+    try {
+      while (count > 0) {
+        if (segmentFile == null) {
+          openSegment();
+        }
+        final int n = (int) Math.min(count, maxSegmentDataBytes - segmentDataBytes);
+        // The ring consumes the bytes even if the write fails, but only bytes
+        // that were written count towards the header.
+        count -= n;
+        ring.drainTo(segmentFile.getChannel(), n);
+        segmentDataBytes += n;
+        if (segmentDataBytes >= maxSegmentDataBytes) {
+          closeSegment();
+        }
+      }
+    } catch (IOException e) {
+      Log.e(TAG, "Failed to write audio to file: " + e.getMessage());
+      ring.skip(count);
+      closeSegment();
+    }
+  }
+
+  /** Closes the current segment; an empty one is deleted. */
+  void close() {
+    closeSegment();
+  }
+
+  private void openSegment() throws IOException {
+    final File file =
+        new File(directory, baseName + String.format(Locale.US, "%03d", segmentIndex++)
+            + FILE_SUFFIX);
+    RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+    try {
+      randomAccessFile.setLength(0);
+      // Placeholder until the sizes are known.
+      header.clear();
+      header.put(new byte[HEADER_SIZE]);
+      header.flip();
+      randomAccessFile.getChannel().write(header);
+    } catch (IOException e) {
+      randomAccessFile.close();
+      throw e;
+    }
+    segmentFile = randomAccessFile;
+    segment = file;
+    segmentDataBytes = 0;
+    Log.d(TAG, "Opened segment " + file);
+  }
+
+  private void closeSegment() {
+    if (segmentFile == null) {
+      return;
+    }
+    final File file = segment;
+    try {
+      if (segmentDataBytes > 0) {
+        writeHeader(segmentFile.getChannel());
+      }
+    } catch (IOException e) {
+      Log.e(TAG, "Failed to write header of " + file + ": " + e.getMessage());
+    }
+    try {
+      segmentFile.close();
+    } catch (IOException e) {
+      Log.e(TAG, "Failed to close " + file + ": " + e.getMessage());
+    }
+    segmentFile = null;
+    segment = null;
+    if (segmentDataBytes == 0) {
+      file.delete();
+      return;
+    }
+    Log.d(TAG, "Closed segment " + file + ": " + segmentDataBytes + " bytes, "
+        + getDurationMs(segmentDataBytes) + " ms");
+    enforceRetention(file);
+    if (listener != null) {
+      listener.onSegmentClosed(file);
+    }
+  }
+
+  private void writeHeader(FileChannel channel) throws IOException {
+    final int blockAlign = channelCount * BYTES_PER_SAMPLE;
+    header.clear();
+    header.put(ascii("RIFF")).putInt((int) (HEADER_SIZE - 8 + segmentDataBytes));
+    header.put(ascii("WAVE"));
+    header.put(ascii("fmt ")).putInt(16);
+    header.putShort((short) 1); // PCM
+    header.putShort((short) channelCount);
+    header.putInt(sampleRate);
+    header.putInt(sampleRate * blockAlign);
+    header.putShort((short) blockAlign);
+    header.putShort((short) (BYTES_PER_SAMPLE * 8));
+    header.put(ascii("data")).putInt((int) segmentDataBytes);
+    header.flip();
+    while (header.hasRemaining()) {
+      channel.write(header, header.position());
+    }
+  }
+
+  // Deletes the oldest recordings until all of them fit into the budget,
+  // skipping |closedSegment|, temporary files and segments the listener still
+  // holds. Names sort in recording order. Only called while no segment is
+  // open.
+  private void enforceRetention(File closedSegment) {
+    final File[] files = directory.listFiles((dir, name) -> name.startsWith(FILE_PREFIX));
+    if (files == null) {
+      return;
+    }
+    Arrays.sort(files);
+    long totalSize = 0;
+    for (File file : files) {
+      totalSize += file.length();
+    }
+    for (int i = 0; i < files.length && totalSize > maxTotalSizeInBytes; i++) {
+      if (files[i].equals(closedSegment) || files[i].getName().endsWith(TMP_SUFFIX)
+          || (listener != null && listener.isPending(files[i]))) {
+        continue;
+      }
+      final long size = files[i].length();
+      if (files[i].delete()) {
+        totalSize -= size;
+        Log.d(TAG, "Deleted " + files[i] + " to stay below " + maxTotalSizeInBytes + " bytes");
+      }
+    }
+  }
+
+  private long getDurationMs(long dataBytes) {
+    return dataBytes * 1000 / ((long) sampleRate * channelCount * BYTES_PER_SAMPLE);
+  }
+
+  private static byte[] ascii(String s) {
+    final byte[] bytes = new byte[s.length()];
+    for (int i = 0; i < bytes.length; i++) {
+      bytes[i] = (byte) s.charAt(i);
+    }
+    return bytes;
+  }
+}
@@ -46,11 +46,28 @@ public class WebRTCClient implements AppRTCClient {
     private ConnectionState roomState;
     private RoomConnectionParameters connectionParameters;
     private Socket clientSocketIO;
+    // Local candidates waiting for the batch window to elapse. Only accessed
+    // on the signaling thread.
+    private final List<IceCandidate> pendingLocalCandidates = new ArrayList<>();
+    private final Runnable flushLocalCandidatesRunnable = new Runnable() {
+        @Override
+        public void run() {
+            flushLocalIceCandidatesInternal();
+        }
+    };
+
+    @Nullable
+    private final CallSetupTimeline timeline;
 
     MessageHandler messageHandler;
 
     public WebRTCClient(SignalingEvents events) {
+        this(events, null /* timeline */);
+    }
+
+    public WebRTCClient(SignalingEvents events, @Nullable CallSetupTimeline timeline) {
         this.events = events;
+        this.timeline = timeline;
         roomState = ConnectionState.NEW;
         final HandlerThread handlerThread = new HandlerThread(TAG);
         handlerThread.start();
@@ -94,6 +111,8 @@ public class WebRTCClient implements AppRTCClient {
 
         try {
             clientSocketIO = IO.socket(connectionParameters.roomUrl);
+            clientSocketIO.once(Socket.EVENT_CONNECT,
+                    args -> markPhase(CallSetupTimeline.Phase.SOCKET_CONNECTED));
             clientSocketIO.connect();
             clientSocketIO.emit("join", connectionParameters.roomId);
             clientSocketIO.once("room_created", messageHandler.room_created);
@@ -102,7 +121,9 @@ public class WebRTCClient implements AppRTCClient {
             clientSocketIO.once("start_call", messageHandler.start_call);
             clientSocketIO.once("webrtc_offer", messageHandler.webrtc_offer);
             clientSocketIO.once("webrtc_answer", messageHandler.webrtc_answer);
-            clientSocketIO.once("webrtc_ice_candidate", messageHandler.webrtc_ice_candidate);
+            // Candidates keep trickling in for the whole call, so this listener
+            // must not be removed after the first message.
+            clientSocketIO.on("webrtc_ice_candidate", messageHandler.webrtc_ice_candidate);
             clientSocketIO.once("webrtc_leave", messageHandler.webrtc_leave);
 
         } catch (URISyntaxException e) {
@@ -113,6 +134,7 @@ public class WebRTCClient implements AppRTCClient {
     // Disconnect from room and send bye messages - runs on a local looper thread.
     private void disconnectFromRoomInternal() {
         Log.d(TAG, "Disconnect. Room state: " + roomState);
+        flushLocalIceCandidatesInternal();
         if (roomState == ConnectionState.CONNECTED) {
             Log.d(TAG, "Closing room.");
             clientSocketIO.emit("webrtc_leave", connectionParameters.roomId);
@@ -140,15 +162,12 @@ public class WebRTCClient implements AppRTCClient {
                     reportError("Sending offer SDP in non connected state.");
                     return;
                 }
-                JSONObject json = new JSONObject();
-                JSONObject jsonRes = new JSONObject();
+                JSONObject jsonRes =
+                        SignalingMessages.toJsonSessionDescription(connectionParameters.roomId, sdp);
 
                 try {
-                    json.put("sdp", sdp.description);
-                    json.put("type", "offer");
-                    jsonRes.put("sdp", json);
-                    jsonRes.put("roomId", connectionParameters.roomId);
                     clientSocketIO.emit("webrtc_offer", jsonRes);
+                    markPhase(CallSetupTimeline.Phase.OFFER_SENT);
                 } catch (Exception exp) {
                     exp.printStackTrace();
                 }
@@ -173,15 +192,12 @@ public class WebRTCClient implements AppRTCClient {
                     Log.e(TAG, "Sending answer in loopback mode.");
                     return;
                 }
-                JSONObject json = new JSONObject();
-                JSONObject jsonRes = new JSONObject();
+                JSONObject jsonRes =
+                        SignalingMessages.toJsonSessionDescription(connectionParameters.roomId, sdp);
 
                 try {
-                    json.put("sdp", sdp.description);
-                    json.put("type", "answer");
-                    jsonRes.put("sdp", json);
-                    jsonRes.put("roomId", connectionParameters.roomId);
                     clientSocketIO.emit("webrtc_answer", jsonRes);
+                    markPhase(CallSetupTimeline.Phase.ANSWER_SENT);
 
                 } catch (Exception e) {
                     e.printStackTrace();
@@ -197,39 +213,73 @@ public class WebRTCClient implements AppRTCClient {
         handler.post(new Runnable() {
             @Override
             public void run() {
-                JSONObject json = new JSONObject();
-                jsonPut(json, "type", "candidate");
-                jsonPut(json, "label", candidate.sdpMLineIndex);
-                jsonPut(json, "id", candidate.sdpMid);
-                jsonPut(json, "candidate", candidate.sdp);
-                jsonPut(json, "roomId", connectionParameters.roomId);
-
-                if (initiator) {
-                    // Call initiator sends ice candidates to GAE server.
-                    if (roomState != ConnectionState.CONNECTED) {
-                        reportError("Sending ICE candidate in non connected state.");
-                        return;
-                    }
-                    try {
-                        clientSocketIO.emit("webrtc_ice_candidate", json);
-                    } catch (Exception e) {
-                        e.printStackTrace();
-                    }
-
-                    if (connectionParameters.loopback) {
+                final int batchWindowMs = connectionParameters.iceCandidateBatchWindowMs;
+                if (batchWindowMs <= 0) {
+                    JSONObject json = SignalingMessages.toJsonCandidateMessage(
+                            connectionParameters.roomId, candidate);
+                    if (emitLocalIceCandidates(json) && connectionParameters.loopback) {
                         events.onRemoteIceCandidate(candidate);
                     }
-                } else {
-
-                    if (candidate instanceof IceCandidate) {
-                        // Call receiver sends ice candidates to websocket server.
-                        clientSocketIO.emit("webrtc_ice_candidate", json);
-                    }
+                    return;
+                }
+                pendingLocalCandidates.add(candidate);
+                if (pendingLocalCandidates.size() == 1) {
+                    // First candidate of a new batch - start the window.
+                    handler.postDelayed(flushLocalCandidatesRunnable, batchWindowMs);
                 }
             }
         });
     }
 
+    @Override
+    public void flushLocalIceCandidates() {
+        handler.post(new Runnable() {
+            @Override
+            public void run() {
+                flushLocalIceCandidatesInternal();
+            }
+        });
+    }
+
+    // Sends all pending local candidates as one "candidates" message - runs on
+    // a local looper thread.
+    private void flushLocalIceCandidatesInternal() {
+        handler.removeCallbacks(flushLocalCandidatesRunnable);
+        if (pendingLocalCandidates.isEmpty()) {
+            return;
+        }
+        final IceCandidate[] candidates =
+                pendingLocalCandidates.toArray(new IceCandidate[pendingLocalCandidates.size()]);
+        JSONObject json = SignalingMessages.toJsonCandidatesMessage(
+                connectionParameters.roomId, pendingLocalCandidates);
+        pendingLocalCandidates.clear();
+        Log.d(TAG, "Sending batch of " + candidates.length + " local ICE candidates.");
+        if (emitLocalIceCandidates(json) && connectionParameters.loopback) {
+            events.onRemoteIceCandidates(candidates);
+        }
+    }
+
+    // Emits a "webrtc_ice_candidate" message. Returns true if it was sent by
+    // the call initiator, which also echoes it back in loopback mode.
+    private boolean emitLocalIceCandidates(JSONObject json) {
+        if (initiator) {
+            // Call initiator sends ice candidates to GAE server.
+            if (roomState != ConnectionState.CONNECTED) {
+                reportError("Sending ICE candidate in non connected state.");
+                return false;
+            }
+            try {
+                clientSocketIO.emit("webrtc_ice_candidate", json);
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+            return true;
+        }
+        // Call receiver sends ice candidates to websocket server.
+        clientSocketIO.emit("webrtc_ice_candidate", json);
+        return false;
+    }
+
     // Send removed Ice candidates to the other participant.
     @Override
     public void sendLocalIceCandidateRemovals(final IceCandidate[] candidates) {
@@ -240,7 +290,7 @@ public class WebRTCClient implements AppRTCClient {
                 jsonPut(json, "type", "remove-candidates");
                 JSONArray jsonArray = new JSONArray();
                 for (final IceCandidate candidate : candidates) {
-                    jsonArray.put(toJsonCandidate(candidate));
+                    jsonArray.put(SignalingMessages.toJsonCandidate(candidate));
                 }
                 jsonPut(json, "candidates", jsonArray);
                 if (initiator) {
@@ -268,6 +318,12 @@ public class WebRTCClient implements AppRTCClient {
 
     // --------------------------------------------------------------------
     // Helper functions.
+    private void markPhase(CallSetupTimeline.Phase phase) {
+        if (timeline != null) {
+            timeline.mark(phase);
+        }
+    }
+
     private void reportError(final String errorMessage) {
         Log.e(TAG, errorMessage);
         handler.post(new Runnable() {
@@ -283,11 +339,7 @@ public class WebRTCClient implements AppRTCClient {
 
     // Put a |key|->|value| mapping in |json|.
     private static void jsonPut(JSONObject json, String key, Object value) {
-        try {
-            json.put(key, value);
-        } catch (JSONException e) {
-            throw new RuntimeException(e);
-        }
+        SignalingMessages.jsonPut(json, key, value);
     }
 
 
@@ -303,19 +355,9 @@ public class WebRTCClient implements AppRTCClient {
         }
     }
 
-    // Converts a Java candidate to a JSONObject.
-    private JSONObject toJsonCandidate(final IceCandidate candidate) {
-        JSONObject json = new JSONObject();
-        jsonPut(json, "label", candidate.sdpMLineIndex);
-        jsonPut(json, "id", candidate.sdpMid);
-        jsonPut(json, "candidate", candidate.sdp);
-        return json;
-    }
-
     // Converts a JSON candidate to a Java object.
     IceCandidate toJavaCandidate(JSONObject json) throws JSONException {
-        return new IceCandidate(
-                "0", json.getInt("label"), json.getString("candidate"));
+        return SignalingMessages.toJavaCandidate(json);
     }
 
     private class MessageHandler {
@@ -325,6 +367,7 @@ public class WebRTCClient implements AppRTCClient {
         }
 
         private Emitter.Listener room_created = args -> {
+            markPhase(CallSetupTimeline.Phase.ROOM_CREATED);
             try {
                 isRoomCreator = true;
             } catch (Exception exp) {
@@ -333,6 +376,7 @@ public class WebRTCClient implements AppRTCClient {
 
         };
         private Emitter.Listener onJoin = args -> {
+            markPhase(CallSetupTimeline.Phase.ROOM_JOINED);
             String str = (String) args[0];
             isRoomCreator = false;
             try {
@@ -344,6 +388,7 @@ public class WebRTCClient implements AppRTCClient {
         };
 
         private Emitter.Listener start_call = args -> {
+            markPhase(CallSetupTimeline.Phase.START_CALL);
             List<IceCandidate> iceCandidates = new ArrayList<>();
 
             try {
@@ -371,8 +416,8 @@ public class WebRTCClient implements AppRTCClient {
             try {
                 messageType = (String) message.get("type");
                 if (messageType.equals("offer")) {
-                    offerSdp = new SessionDescription(
-                            SessionDescription.Type.fromCanonicalForm(messageType), message.getString("sdp"));
+                    markPhase(CallSetupTimeline.Phase.OFFER_RECEIVED);
+                    offerSdp = SignalingMessages.toJavaSessionDescription(message);
 
 
                 } else if (messageType.equals("candidate")) {
@@ -409,8 +454,8 @@ public class WebRTCClient implements AppRTCClient {
 
                 messageType = (String) message.get("type");
                 if (messageType.equals("answer")) {
-                    answerSdp = new SessionDescription(
-                            SessionDescription.Type.fromCanonicalForm(messageType), message.getString("sdp"));
+                    markPhase(CallSetupTimeline.Phase.ANSWER_RECEIVED);
+                    answerSdp = SignalingMessages.toJavaSessionDescription(message);
                     events.onRemoteDescription(answerSdp);
 
                 } else {
@@ -437,7 +482,10 @@ public class WebRTCClient implements AppRTCClient {
             JSONObject message = (JSONObject) args[0];
             try {
 
-                if (message.getString("candidate") != null) {
+                markPhase(CallSetupTimeline.Phase.FIRST_REMOTE_CANDIDATE);
+                if ("candidates".equals(message.optString("type"))) {
+                    events.onRemoteIceCandidates(SignalingMessages.toJavaCandidates(message));
+                } else if (message.getString("candidate") != null) {
                     IceCandidate candidate = new IceCandidate(
                             String.valueOf(message.getString("id")), message.getInt("label"), message.getString("candidate"));
                     iceCandidates.add(candidate);
@@ -463,13 +511,17 @@ public class WebRTCClient implements AppRTCClient {
             }
         };
 
-        private Emitter.Listener webrtc_leave = args -> {
-            try {
-                disconnectFromRoomInternal();
-
-            } catch (Exception exp) {
-                exp.printStackTrace();
+        // Arrives on the socket.io event thread; the room state and pending
+        // local candidates belong to the signaling thread.
+        private Emitter.Listener webrtc_leave = args -> handler.post(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    disconnectFromRoomInternal();
+                } catch (Exception exp) {
+                    exp.printStackTrace();
+                }
             }
-        };
+        });
     }
 }
@@ -0,0 +1,290 @@
+package com.test.myownrtcapp.webrtc;
+
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+
+import org.webrtc.VideoFrame;
+import org.webrtc.VideoSink;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Records the frames of a video track, local or remote, to a Y4M file.
+ * onFrame() only retains the frame and hands it to a worker thread, which
+ * converts it to I420 at the output size and writes the header and the three
+ * planes with one gathering FileChannel write. Planes without row padding
+ * are written straight from the frame buffer. Frames beyond the target frame
+ * rate are skipped, and frames are dropped while the worker is
+ * MAX_BACKLOG_FRAMES behind.
+ *
+ * <p>onFrame() must be called from one thread at a time.
+ */
+public class Y4mVideoRecorder implements VideoSink {
+  private static final String TAG = "Y4mVideoRecorder";
+  private static final int MAX_BACKLOG_FRAMES = 30;
+  private static final int DEFAULT_HEADER_FPS = 30;
+  private static final long RELEASE_TIMEOUT_MS = 10000;
+  private static final Charset US_ASCII = Charset.forName("US-ASCII");
+
+  private final String outputFile;
+  private final FileChannel channel;
+  private final int targetFps;
+  private final long frameIntervalNs;
+  private final ExecutorService executor;
+  private volatile boolean released;
+
+  // Delivery thread.
+  private long nextFrameTimeNs = -1;
+
+  // Worker thread.
+  private int outputWidth;
+  private int outputHeight;
+  private final ByteBuffer frameHeader = ByteBuffer.wrap("FRAME\n".getBytes(US_ASCII));
+  private final ByteBuffer[] frameBuffers = new ByteBuffer[4];
+  private boolean headerWritten;
+  // Planes that need copying, and one of their rows.
+  @Nullable private byte[] copyBuffer;
+  @Nullable private byte[] rowBuffer;
+
+  private final AtomicInteger backlog = new AtomicInteger();
+  private final AtomicInteger maxBacklog = new AtomicInteger();
+  private final AtomicLong skippedFrames = new AtomicLong();
+  private final AtomicLong droppedFrames = new AtomicLong();
+  // Written by the worker only.
+  private volatile long framesWritten;
+  private volatile long bytesWritten;
+  private volatile long writeNs;
+  // Totals at the previous recordInterval().
+  private long intervalBytesWritten;
+  private long intervalWriteNs;
+
+  /**
+   * Records to |outputFile| at |outputWidth|x|outputHeight|, or at the size of
+   * the first frame if they are 0. |targetFps| of 0 records every frame.
+   */
+  public Y4mVideoRecorder(String outputFile, int outputWidth, int outputHeight, int targetFps)
+      throws IOException {
+    this.outputFile = outputFile;
+    this.channel = new FileOutputStream(outputFile).getChannel();
+    this.outputWidth = outputWidth & ~1;
+    this.outputHeight = outputHeight & ~1;
+    this.targetFps = targetFps;
+    this.frameIntervalNs = targetFps > 0 ? TimeUnit.SECONDS.toNanos(1) / targetFps : 0;
+    this.executor = Executors.newSingleThreadExecutor(r -> new Thread(r, TAG));
+  }
+
+  @Override
+  public void onFrame(VideoFrame frame) {
+    if (released) {
+      return;
+    }
+    if (frameIntervalNs > 0) {
+      final long timestampNs = frame.getTimestampNs();
+      if (nextFrameTimeNs >= 0 && timestampNs < nextFrameTimeNs) {
+        skippedFrames.incrementAndGet();
+        return;
+      }
+      // Restarts the schedule after a gap instead of letting frames through
+      // to catch up.
+      nextFrameTimeNs = (nextFrameTimeNs < 0 || timestampNs - nextFrameTimeNs > frameIntervalNs)
+          ? timestampNs + frameIntervalNs
+          : nextFrameTimeNs + frameIntervalNs;
+    }
+    final int pending = backlog.incrementAndGet();
+    if (pending > MAX_BACKLOG_FRAMES) {
+      backlog.decrementAndGet();
+      droppedFrames.incrementAndGet();
+      return;
+    }
+    if (pending > maxBacklog.get()) {
+      maxBacklog.set(pending);
+    }
+    frame.retain();
+    try {
+      executor.execute(() -> writeFrame(frame));
+    } catch (RejectedExecutionException e) {
+      // Released meanwhile.
+      backlog.decrementAndGet();
+      frame.release();
+    }
+  }
+
+  /**
+   * Records the write throughput in MB/s while writing and the largest
+   * backlog in frames since the last call.
+   */
+  public void recordInterval(CallQualityMetrics metrics,
+      CallQualityMetrics.Metric throughputMetric, CallQualityMetrics.Metric backlogMetric) {
+    final long bytes = bytesWritten;
+    final long ns = writeNs;
+    if (ns > intervalWriteNs) {
+      // Bytes per ns are GB/s.
+      metrics.record(throughputMetric,
+          1000.0 * (bytes - intervalBytesWritten) / (ns - intervalWriteNs));
+    }
+    intervalBytesWritten = bytes;
+    intervalWriteNs = ns;
+    metrics.record(backlogMetric, maxBacklog.getAndSet(backlog.get()));
+  }
+
+  /** Writes the frames still in the backlog and closes the file. */
+  public void release() {
+    released = true;
+    executor.shutdown();
+    try {
+      if (!executor.awaitTermination(RELEASE_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+        Log.e(TAG, "Timed out writing " + backlog.get() + " frames to " + outputFile);
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    try {
+      channel.close();
+    } catch (IOException e) {
+      Log.e(TAG, "Failed to close " + outputFile, e);
+    }
+    final long ms = TimeUnit.NANOSECONDS.toMillis(writeNs);
+    Log.d(TAG, "Wrote " + framesWritten + " frames, " + bytesWritten + " bytes in " + ms
+        + " ms to " + outputFile + ", skipped " + skippedFrames.get() + " above " + targetFps
+        + " fps, dropped " + droppedFrames.get() + " behind");
+  }
+
+  private void writeFrame(VideoFrame frame) {
+    try {
+      if (channel.isOpen()) {
+        writeI420(frame);
+      }
+    } catch (IOException e) {
+      Log.e(TAG, "Failed to write frame to " + outputFile, e);
+    } finally {
+      frame.release();
+      backlog.decrementAndGet();
+    }
+  }
+
+  private void writeI420(VideoFrame frame) throws IOException {
+    final int rotation = frame.getRotation();
+    if (outputWidth == 0 || outputHeight == 0) {
+      outputWidth = frame.getRotatedWidth() & ~1;
+      outputHeight = frame.getRotatedHeight() & ~1;
+    }
+    if (!headerWritten) {
+      headerWritten = true;
+      final String header = "YUV4MPEG2 C420 W" + outputWidth + " H" + outputHeight + " Ip F"
+          + (targetFps > 0 ? targetFps : DEFAULT_HEADER_FPS) + ":1 A1:1\n";
+      write(ByteBuffer.wrap(header.getBytes(US_ASCII)));
+    }
+    // The size of the buffer before rotation.
+    final int width = rotation % 180 == 0 ? outputWidth : outputHeight;
+    final int height = rotation % 180 == 0 ? outputHeight : outputWidth;
+
+    VideoFrame.Buffer buffer = frame.getBuffer();
+    VideoFrame.Buffer scaled = null;
+    if (buffer.getWidth() != width || buffer.getHeight() != height) {
+      // Center crop to the output aspect ratio.
+      final int cropWidth = Math.min(buffer.getWidth(), buffer.getHeight() * width / height);
+      final int cropHeight = Math.min(buffer.getHeight(), buffer.getWidth() * height / width);
+      scaled = buffer.cropAndScale((buffer.getWidth() - cropWidth) / 2,
+          (buffer.getHeight() - cropHeight) / 2, cropWidth, cropHeight, width, height);
+      buffer = scaled;
+    }
+    final VideoFrame.I420Buffer i420 = buffer.toI420();
+    if (scaled != null) {
+      scaled.release();
+    }
+    if (i420 == null) {
+      Log.e(TAG, "Failed to convert frame to I420");
+      return;
+    }
+    try {
+      final int chromaWidth = (width + 1) / 2;
+      final int chromaHeight = (height + 1) / 2;
+      final int ySize = width * height;
+      final int chromaSize = chromaWidth * chromaHeight;
+      frameHeader.rewind();
+      frameBuffers[0] = frameHeader;
+      frameBuffers[1] =
+          plane(i420.getDataY(), i420.getStrideY(), width, height, rotation, 0);
+      frameBuffers[2] =
+          plane(i420.getDataU(), i420.getStrideU(), chromaWidth, chromaHeight, rotation, ySize);
+      frameBuffers[3] = plane(i420.getDataV(), i420.getStrideV(), chromaWidth, chromaHeight,
+          rotation, ySize + chromaSize);
+      write(frameBuffers);
+      framesWritten++;
+    } finally {
+      i420.release();
+    }
+  }
+
+  // Returns the |width|x|height| plane in |data| rotated by |rotation|. It is
+  // |data| itself if it has no row padding and no rotation, otherwise a copy
+  // at |offset| of the copy buffer, which has room for all three planes.
+  private ByteBuffer plane(
+      ByteBuffer data, int stride, int width, int height, int rotation, int offset) {
+    if (rotation == 0 && stride == width) {
+      final ByteBuffer plane = data.duplicate();
+      plane.position(0).limit(width * height);
+      return plane;
+    }
+    final int frameSize = outputWidth * outputHeight * 3 / 2;
+    if (copyBuffer == null || copyBuffer.length < frameSize) {
+      copyBuffer = new byte[frameSize];
+      rowBuffer = new byte[Math.max(outputWidth, outputHeight)];
+    }
+    final byte[] out = copyBuffer;
+    final byte[] row = rowBuffer;
+    final ByteBuffer src = data.duplicate();
+    for (int y = 0; y < height; y++) {
+      src.position(y * stride);
+      src.get(row, 0, width);
+      switch (rotation) {
+        case 90:
+          // Row y becomes column height - 1 - y.
+          for (int x = 0; x < width; x++) {
+            out[offset + x * height + height - 1 - y] = row[x];
+          }
+          break;
+        case 180:
+          for (int x = 0; x < width; x++) {
+            out[offset + (height - 1 - y) * width + width - 1 - x] = row[x];
+          }
+          break;
+        case 270:
+          // Row y becomes column y, bottom up.
+          for (int x = 0; x < width; x++) {
+            out[offset + (width - 1 - x) * height + y] = row[x];
+          }
+          break;
+        default:
+          System.arraycopy(row, 0, out, offset + y * width, width);
+          break;
+      }
+    }
+    return ByteBuffer.wrap(out, offset, width * height);
+  }
+
+  private void write(ByteBuffer... buffers) throws IOException {
+    long remaining = 0;
+    for (ByteBuffer buffer : buffers) {
+      remaining += buffer.remaining();
+    }
+    final long size = remaining;
+    final long startNs = System.nanoTime();
+    while (remaining > 0) {
+      remaining -= channel.write(buffers);
+    }
+    writeNs += System.nanoTime() - startNs;
+    bytesWritten += size;
+  }
+}
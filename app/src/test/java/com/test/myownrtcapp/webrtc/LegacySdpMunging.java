@@ -0,0 +1,140 @@
+package com.test.myownrtcapp.webrtc;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * The split + regex SDP munging that PeerConnectionClient used before
+ * SdpDescription, minus logging. SdpDescriptionTest checks that SdpMunging
+ * produces exactly its output, and SdpMungingBenchmark uses it as the
+ * baseline.
+ */
+final class LegacySdpMunging {
+  private static final String VIDEO_CODEC_PARAM_START_BITRATE = "x-google-start-bitrate";
+  private static final String AUDIO_CODEC_PARAM_BITRATE = "maxaveragebitrate";
+
+  private LegacySdpMunging() {}
+
+  @SuppressWarnings("StringSplitter")
+  static String setStartBitrate(
+      String codec, boolean isVideoCodec, String sdpDescription, int bitrateKbps) {
+    String[] lines = sdpDescription.split("\r\n");
+    int rtpmapLineIndex = -1;
+    boolean sdpFormatUpdated = false;
+    String codecRtpMap = null;
+    String regex = "^a=rtpmap:(\\d+) " + codec + "(/\\d+)+[\r]?$";
+    Pattern codecPattern = Pattern.compile(regex);
+    for (int i = 0; i < lines.length; i++) {
+      Matcher codecMatcher = codecPattern.matcher(lines[i]);
+      if (codecMatcher.matches()) {
+        codecRtpMap = codecMatcher.group(1);
+        rtpmapLineIndex = i;
+        break;
+      }
+    }
+    if (codecRtpMap == null) {
+      return sdpDescription;
+    }
+    regex = "^a=fmtp:" + codecRtpMap + " \\w+=\\d+.*[\r]?$";
+    codecPattern = Pattern.compile(regex);
+    for (int i = 0; i < lines.length; i++) {
+      Matcher codecMatcher = codecPattern.matcher(lines[i]);
+      if (codecMatcher.matches()) {
+        if (isVideoCodec) {
+          lines[i] += "; " + VIDEO_CODEC_PARAM_START_BITRATE + "=" + bitrateKbps;
+        } else {
+          lines[i] += "; " + AUDIO_CODEC_PARAM_BITRATE + "=" + (bitrateKbps * 1000);
+        }
+        sdpFormatUpdated = true;
+        break;
+      }
+    }
+    StringBuilder newSdpDescription = new StringBuilder();
+    for (int i = 0; i < lines.length; i++) {
+      newSdpDescription.append(lines[i]).append("\r\n");
+      if (!sdpFormatUpdated && i == rtpmapLineIndex) {
+        String bitrateSet;
+        if (isVideoCodec) {
+          bitrateSet =
+              "a=fmtp:" + codecRtpMap + " " + VIDEO_CODEC_PARAM_START_BITRATE + "=" + bitrateKbps;
+        } else {
+          bitrateSet = "a=fmtp:" + codecRtpMap + " " + AUDIO_CODEC_PARAM_BITRATE + "="
+              + (bitrateKbps * 1000);
+        }
+        newSdpDescription.append(bitrateSet).append("\r\n");
+      }
+    }
+    return newSdpDescription.toString();
+  }
+
+  private static int findMediaDescriptionLine(boolean isAudio, String[] sdpLines) {
+    final String mediaDescription = isAudio ? "m=audio " : "m=video ";
+    for (int i = 0; i < sdpLines.length; ++i) {
+      if (sdpLines[i].startsWith(mediaDescription)) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  private static String joinString(
+      Iterable<? extends CharSequence> s, String delimiter, boolean delimiterAtEnd) {
+    Iterator<? extends CharSequence> iter = s.iterator();
+    if (!iter.hasNext()) {
+      return "";
+    }
+    StringBuilder buffer = new StringBuilder(iter.next());
+    while (iter.hasNext()) {
+      buffer.append(delimiter).append(iter.next());
+    }
+    if (delimiterAtEnd) {
+      buffer.append(delimiter);
+    }
+    return buffer.toString();
+  }
+
+  static String movePayloadTypesToFront(List<String> preferredPayloadTypes, String mLine) {
+    final List<String> origLineParts = Arrays.asList(mLine.split(" "));
+    if (origLineParts.size() <= 3) {
+      return null;
+    }
+    final List<String> header = origLineParts.subList(0, 3);
+    final List<String> unpreferredPayloadTypes =
+        new ArrayList<>(origLineParts.subList(3, origLineParts.size()));
+    unpreferredPayloadTypes.removeAll(preferredPayloadTypes);
+    final List<String> newLineParts = new ArrayList<>();
+    newLineParts.addAll(header);
+    newLineParts.addAll(preferredPayloadTypes);
+    newLineParts.addAll(unpreferredPayloadTypes);
+    return joinString(newLineParts, " ", false /* delimiterAtEnd */);
+  }
+
+  static String preferCodec(String sdpDescription, String codec, boolean isAudio) {
+    final String[] lines = sdpDescription.split("\r\n");
+    final int mLineIndex = findMediaDescriptionLine(isAudio, lines);
+    if (mLineIndex == -1) {
+      return sdpDescription;
+    }
+    final List<String> codecPayloadTypes = new ArrayList<>();
+    final Pattern codecPattern = Pattern.compile("^a=rtpmap:(\\d+) " + codec + "(/\\d+)+[\r]?$");
+    for (String line : lines) {
+      Matcher codecMatcher = codecPattern.matcher(line);
+      if (codecMatcher.matches()) {
+        codecPayloadTypes.add(codecMatcher.group(1));
+      }
+    }
+    if (codecPayloadTypes.isEmpty()) {
+      return sdpDescription;
+    }
+    final String newMLine = movePayloadTypesToFront(codecPayloadTypes, lines[mLineIndex]);
+    if (newMLine == null) {
+      return sdpDescription;
+    }
+    lines[mLineIndex] = newMLine;
+    return joinString(Arrays.asList(lines), "\r\n", true /* delimiterAtEnd */);
+  }
+}
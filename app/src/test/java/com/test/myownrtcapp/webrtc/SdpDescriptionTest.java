@@ -0,0 +1,183 @@
+package com.test.myownrtcapp.webrtc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+
+/**
+ * Checks that SdpDescription serializes what it parsed unchanged, and that
+ * the munging PeerConnectionClient runs through SdpMunging yields exactly the
+ * output of the former string/regex munging in LegacySdpMunging.
+ */
+public class SdpDescriptionTest {
+  private static final int AUDIO_START_BITRATE_KBPS = 32;
+  private static final int VIDEO_START_BITRATE_KBPS = 1700;
+
+  // Stereo opus with its fmtp line, as negotiated for music.
+  private static final String STEREO_OPUS_ANSWER = sdp(
+      "v=0",
+      "o=- 7614219274584779017 2 IN IP4 127.0.0.1",
+      "s=-",
+      "t=0 0",
+      "a=group:BUNDLE 0",
+      "m=audio 9 UDP/TLS/RTP/SAVPF 103 111 9 0",
+      "c=IN IP4 0.0.0.0",
+      "a=rtcp:9 IN IP4 0.0.0.0",
+      "a=mid:0",
+      "a=sendrecv",
+      "a=rtcp-mux",
+      "a=rtpmap:103 ISAC/16000",
+      "a=rtpmap:111 opus/48000/2",
+      "a=rtcp-fb:111 transport-cc",
+      "a=fmtp:111 minptime=10;useinbandfec=1;stereo=1;sprop-stereo=1",
+      "a=rtpmap:9 G722/8000",
+      "a=rtpmap:0 PCMU/8000",
+      "a=ssrc:3344556677 cname:sM0QtFfYJmUmVJ0M");
+
+  // Opus without an fmtp line, and no video section.
+  private static final String OPUS_WITHOUT_FMTP_OFFER = sdp(
+      "v=0",
+      "o=- 1053424651302385207 2 IN IP4 127.0.0.1",
+      "s=-",
+      "t=0 0",
+      "m=audio 9 UDP/TLS/RTP/SAVPF 0 8 111",
+      "c=IN IP4 0.0.0.0",
+      "a=mid:audio",
+      "a=sendrecv",
+      "a=rtpmap:0 PCMU/8000",
+      "a=rtpmap:8 PCMA/8000",
+      "a=rtpmap:111 opus/48000/2",
+      "a=ssrc:1122334455 cname:q0Lo2yCuHzpYrVcS");
+
+  @Test
+  public void parseAndSerializeKeepsSdpUnchanged() {
+    for (String sdp : new String[] {
+        multiCodecOffer(), STEREO_OPUS_ANSWER, OPUS_WITHOUT_FMTP_OFFER}) {
+      assertEquals(sdp, SdpDescription.parse(sdp).toString());
+    }
+  }
+
+  @Test
+  public void preferAudioCodecMatchesLegacy() {
+    for (String sdp : new String[] {multiCodecOffer(), STEREO_OPUS_ANSWER}) {
+      for (String codec : new String[] {"ISAC", "opus", "G722", "PCMU"}) {
+        assertPreferCodecMatchesLegacy(sdp, codec, true);
+      }
+    }
+  }
+
+  @Test
+  public void preferVideoCodecMatchesLegacy() {
+    for (String codec : new String[] {"VP8", "VP9", "H264", "AV1X"}) {
+      assertPreferCodecMatchesLegacy(multiCodecOffer(), codec, false);
+    }
+  }
+
+  @Test
+  public void preferMissingCodecOrSectionMatchesLegacy() {
+    assertPreferCodecMatchesLegacy(OPUS_WITHOUT_FMTP_OFFER, "ISAC", true);
+    assertPreferCodecMatchesLegacy(OPUS_WITHOUT_FMTP_OFFER, "VP8", false);
+  }
+
+  @Test
+  public void opusStartBitrateMatchesLegacy() {
+    assertStartBitrateMatchesLegacy(multiCodecOffer(), "opus", false, AUDIO_START_BITRATE_KBPS);
+  }
+
+  @Test
+  public void stereoOpusStartBitrateMatchesLegacy() {
+    assertStartBitrateMatchesLegacy(
+        STEREO_OPUS_ANSWER, "opus", false, AUDIO_START_BITRATE_KBPS);
+  }
+
+  @Test
+  public void opusStartBitrateWithoutFmtpMatchesLegacy() {
+    assertStartBitrateMatchesLegacy(
+        OPUS_WITHOUT_FMTP_OFFER, "opus", false, AUDIO_START_BITRATE_KBPS);
+  }
+
+  @Test
+  public void videoStartBitrateMatchesLegacy() {
+    assertStartBitrateMatchesLegacy(multiCodecOffer(), "VP8", true, VIDEO_START_BITRATE_KBPS);
+  }
+
+  @Test
+  public void startBitrateOfMissingCodecMatchesLegacy() {
+    assertStartBitrateMatchesLegacy(
+        OPUS_WITHOUT_FMTP_OFFER, "ISAC", false, AUDIO_START_BITRATE_KBPS);
+  }
+
+  @Test
+  public void getOrCreateFmtpRejectsInvalidPayloadType() {
+    SdpDescription sdpDescription = SdpDescription.parse(OPUS_WITHOUT_FMTP_OFFER);
+    SdpDescription.MediaSection audio = sdpDescription.findMediaSection("audio");
+    assertNull(audio.getOrCreateFmtp(-1));
+    assertNull(audio.getOrCreateFmtp(128));
+    assertEquals(OPUS_WITHOUT_FMTP_OFFER, sdpDescription.toString());
+  }
+
+  // The steps of PeerConnectionClient.setRemoteDescription(), in its order.
+  @Test
+  public void remoteDescriptionMungingMatchesLegacy() {
+    for (String sdp : new String[] {multiCodecOffer(), STEREO_OPUS_ANSWER}) {
+      for (String videoCodec : new String[] {"VP8", "H264"}) {
+        String legacy = LegacySdpMunging.preferCodec(sdp, "ISAC", true);
+        legacy = LegacySdpMunging.preferCodec(legacy, videoCodec, false);
+        legacy = LegacySdpMunging.setStartBitrate(
+            "opus", false, legacy, AUDIO_START_BITRATE_KBPS);
+
+        SdpDescription sdpDescription = SdpDescription.parse(sdp);
+        SdpMunging.preferCodec(sdpDescription, "ISAC", true);
+        SdpMunging.preferCodec(sdpDescription, videoCodec, false);
+        SdpMunging.setStartBitrate("opus", false, sdpDescription, AUDIO_START_BITRATE_KBPS);
+        assertEquals(legacy, sdpDescription.toString());
+      }
+    }
+  }
+
+  private static void assertPreferCodecMatchesLegacy(String sdp, String codec, boolean isAudio) {
+    SdpDescription sdpDescription = SdpDescription.parse(sdp);
+    SdpMunging.preferCodec(sdpDescription, codec, isAudio);
+    assertEquals(codec, LegacySdpMunging.preferCodec(sdp, codec, isAudio),
+        sdpDescription.toString());
+  }
+
+  private static void assertStartBitrateMatchesLegacy(
+      String sdp, String codec, boolean isVideoCodec, int bitrateKbps) {
+    SdpDescription sdpDescription = SdpDescription.parse(sdp);
+    SdpMunging.setStartBitrate(codec, isVideoCodec, sdpDescription, bitrateKbps);
+    assertEquals(codec, LegacySdpMunging.setStartBitrate(codec, isVideoCodec, sdp, bitrateKbps),
+        sdpDescription.toString());
+  }
+
+  private static String sdp(String... lines) {
+    StringBuilder builder = new StringBuilder();
+    for (String line : lines) {
+      builder.append(line).append("\r\n");
+    }
+    return builder.toString();
+  }
+
+  // Chrome-style unified plan offer with the full audio and video codec list.
+  private static String multiCodecOffer() {
+    try (InputStream stream =
+             SdpDescriptionTest.class.getResourceAsStream("/multi_codec_offer.sdp")) {
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      byte[] buffer = new byte[4096];
+      int read;
+      while ((read = stream.read(buffer)) != -1) {
+        bytes.write(buffer, 0, read);
+      }
+      // The resource is stored with LF; SDP on the wire uses CRLF.
+      return new String(bytes.toByteArray(), Charset.forName("UTF-8")).replace("\n", "\r\n");
+    } catch (IOException e) {
+      throw new IllegalStateException("Failed to read multi_codec_offer.sdp", e);
+    }
+  }
+}
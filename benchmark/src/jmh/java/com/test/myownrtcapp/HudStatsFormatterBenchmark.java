@@ -0,0 +1,205 @@
+package com.test.myownrtcapp;
+
+import com.test.myownrtcapp.webrtc.RtcStatsEngine;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.webrtc.RTCStats;
+import org.webrtc.RTCStatsReport;
+import org.webrtc.StatsReport;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The HUD text produced for one getStats() callback of a video call: the
+ * legacy StatsReport formatting against mapping a standard RTCStatsReport
+ * into a snapshot and formatting that. Both fixtures describe the same call:
+ * send/receive video and audio, BWE and a handful of candidate pairs.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class HudStatsFormatterBenchmark {
+  private static final String VIDEO_TRACK_ID = "ARDAMSv0";
+
+  private LegacyHudStatsFormatter legacyFormatter;
+  private StatsReport[] reports;
+  private HudStatsFormatter formatter;
+  private RtcStatsEngine engine;
+  // Two consecutive reports, one second apart, fed alternately; every other
+  // update computes rates, the rest see a clock going backwards.
+  private RTCStatsReport[] rtcReports;
+  private int nextReport;
+
+  @Setup
+  public void setUp() {
+    legacyFormatter = new LegacyHudStatsFormatter(VIDEO_TRACK_ID);
+    formatter = new HudStatsFormatter();
+    engine = new RtcStatsEngine();
+    rtcReports = new RTCStatsReport[] {rtcReport(0), rtcReport(1)};
+    List<StatsReport> list = new ArrayList<>();
+    list.add(report("ssrc_2866410451_send", "ssrc", "googTrackId", VIDEO_TRACK_ID,
+        "ssrcs", "2866410451", "bytesSent", "1843921", "packetsSent", "1710",
+        "packetsLost", "3", "googFrameRateSent", "30", "googFrameRateInput", "30",
+        "googFrameWidthSent", "1280", "googFrameHeightSent", "720", "googRtt", "42",
+        "googEncodeUsagePercent", "61", "googAvgEncodeMs", "9", "googAdaptationChanges", "0",
+        "googCpuLimitedResolution", "false", "googBandwidthLimitedResolution", "false",
+        "googCodecName", "VP8", "googNacksReceived", "4", "googPlisReceived", "0",
+        "googFirsReceived", "0", "framesEncoded", "1024", "qpSum", "23140",
+        "googContentType", "realtime", "googHasEnteredLowResolution", "false"));
+    list.add(report("ssrc_1817357312_send", "ssrc", "googTrackId", "ARDAMSa0",
+        "ssrcs", "1817357312", "bytesSent", "92411", "packetsSent", "1702",
+        "audioInputLevel", "412", "googCodecName", "opus", "googRtt", "42",
+        "googJitterReceived", "3", "packetsLost", "0"));
+    list.add(report("ssrc_3310292207_recv", "ssrc", "googTrackId", "ARDAMSv0",
+        "ssrcs", "3310292207", "bytesReceived", "1733120", "packetsReceived", "1655",
+        "packetsLost", "7", "googFrameWidthReceived", "1280", "googFrameHeightReceived", "720",
+        "googFrameRateReceived", "29", "googFrameRateDecoded", "29", "googFrameRateOutput", "29",
+        "googDecodeMs", "4", "googMaxDecodeMs", "11", "googCurrentDelayMs", "78",
+        "googTargetDelayMs", "78", "googJitterBufferMs", "51", "googRenderDelayMs", "10",
+        "googCodecName", "VP8", "framesDecoded", "1010", "googNacksSent", "6",
+        "googPlisSent", "1", "googFirsSent", "0", "googInterframeDelayMax", "67"));
+    list.add(report("ssrc_4006471313_recv", "ssrc", "googTrackId", "ARDAMSa0",
+        "ssrcs", "4006471313", "bytesReceived", "90233", "packetsReceived", "1699",
+        "audioOutputLevel", "1021", "googJitterReceived", "4", "googJitterBufferMs", "40",
+        "googCodecName", "opus", "packetsLost", "1"));
+    list.add(report("bweforvideo", "VideoBwe", "googAvailableSendBandwidth", "1703000",
+        "googAvailableReceiveBandwidth", "2411000", "googTargetEncBitrate", "1500000",
+        "googActualEncBitrate", "1482311", "googRetransmitBitrate", "0",
+        "googTransmitBitrate", "1511892", "googBucketDelay", "0"));
+    for (int i = 0; i < 4; i++) {
+      list.add(report("Conn-audio-1-" + i, "googCandidatePair",
+          "googActiveConnection", i == 0 ? "true" : "false", "googReadable", "true",
+          "googWritable", "true", "googLocalAddress", "10.0.2.15:4615" + i,
+          "googRemoteAddress", "203.0.113.9:5310" + i, "googLocalCandidateType", "local",
+          "googRemoteCandidateType", "stun", "googRtt", "41", "bytesSent", "1936332",
+          "bytesReceived", "1823353", "packetsSent", "3412", "packetsDiscardedOnSend", "0",
+          "googTransportType", "udp", "googChannelId", "Channel-audio-1"));
+    }
+    list.add(report("googTrack_ARDAMSv0", "googTrack", "googTrackId", VIDEO_TRACK_ID));
+    reports = list.toArray(new StatsReport[0]);
+  }
+
+  @Benchmark
+  public String updateEncoderStatisticsLegacy() {
+    LegacyHudStatsFormatter.HudText text = legacyFormatter.format(reports);
+    StringBuilder encoderStat = new StringBuilder(128);
+    LegacyHudStatsFormatter.appendEncoderStat(encoderStat, text);
+    return encoderStat.toString();
+  }
+
+  @Benchmark
+  public Object getReportMapLegacy() {
+    return LegacyHudStatsFormatter.getReportMap(reports[0]);
+  }
+
+  @Benchmark
+  public Object updateSnapshot() {
+    nextReport ^= 1;
+    return engine.update(rtcReports[nextReport]);
+  }
+
+  @Benchmark
+  public String updateEncoderStatistics() {
+    return formatNextReport(true /* includePanels */);
+  }
+
+  @Benchmark
+  public String updateEncoderStatisticsPanelsHidden() {
+    return formatNextReport(false /* includePanels */);
+  }
+
+  private static StatsReport report(String id, String type, String... namesAndValues) {
+    StatsReport.Value[] values = new StatsReport.Value[namesAndValues.length / 2];
+    for (int i = 0; i < values.length; i++) {
+      values[i] = new StatsReport.Value(namesAndValues[2 * i], namesAndValues[2 * i + 1]);
+    }
+    return new StatsReport(id, type, 0, values);
+  }
+
+  private String formatNextReport(boolean includePanels) {
+    nextReport ^= 1;
+    HudStatsFormatter.HudText text =
+        formatter.format(engine.update(rtcReports[nextReport]), includePanels);
+    StringBuilder encoderStat = new StringBuilder(128);
+    HudStatsFormatter.appendEncoderStat(encoderStat, text);
+    return encoderStat.toString();
+  }
+
+  // The standard stats of the same call |second| seconds in.
+  private static RTCStatsReport rtcReport(int second) {
+    final long timestampUs = 1600000000000000L + second * 1000000L;
+    final long n = second + 1;
+    Map<String, RTCStats> map = new HashMap<>();
+    put(map, stats(timestampUs, "OT01V2866410451", "outbound-rtp", "kind", "video",
+        "ssrc", 2866410451L, "bytesSent", n * 184392L, "packetsSent", n * 171L,
+        "framesEncoded", n * 30L, "framesPerSecond", 30.0, "frameWidth", 1280,
+        "frameHeight", 720, "codecId", "COT01_96", "qualityLimitationReason", "none",
+        "nackCount", 4L, "pliCount", 0L, "firCount", 0L, "qpSum", n * 2314L,
+        "totalEncodeTime", n * 0.27, "targetBitrate", 1500000.0, "contentType", "realtime"));
+    put(map, stats(timestampUs, "OT01A1817357312", "outbound-rtp", "kind", "audio",
+        "ssrc", 1817357312L, "bytesSent", n * 9241L, "packetsSent", n * 50L,
+        "codecId", "COT01_111"));
+    put(map, stats(timestampUs, "IT01V3310292207", "inbound-rtp", "kind", "video",
+        "ssrc", 3310292207L, "bytesReceived", n * 173312L, "packetsReceived", n * 165L,
+        "packetsLost", n * 1, "jitter", 0.012, "framesDecoded", n * 29L,
+        "framesDropped", 0L, "frameWidth", 1280, "frameHeight", 720,
+        "codecId", "CIT01_96", "nackCount", 6L, "pliCount", 1L, "firCount", 0L,
+        "totalDecodeTime", n * 0.12, "jitterBufferDelay", n * 1.5));
+    put(map, stats(timestampUs, "IT01A4006471313", "inbound-rtp", "kind", "audio",
+        "ssrc", 4006471313L, "bytesReceived", n * 9023L, "packetsReceived", n * 50L,
+        "packetsLost", 0, "jitter", 0.004, "codecId", "CIT01_111"));
+    put(map, stats(timestampUs, "SV2", "media-source", "kind", "video",
+        "trackIdentifier", VIDEO_TRACK_ID, "width", 1280, "height", 720,
+        "framesPerSecond", 30.0));
+    put(map, stats(timestampUs, "COT01_96", "codec", "mimeType", "video/VP8",
+        "payloadType", 96L, "clockRate", 90000L));
+    put(map, stats(timestampUs, "CIT01_96", "codec", "mimeType", "video/VP8",
+        "payloadType", 96L, "clockRate", 90000L));
+    put(map, stats(timestampUs, "COT01_111", "codec", "mimeType", "audio/opus",
+        "payloadType", 111L, "clockRate", 48000L));
+    put(map, stats(timestampUs, "CIT01_111", "codec", "mimeType", "audio/opus",
+        "payloadType", 111L, "clockRate", 48000L));
+    put(map, stats(timestampUs, "T01", "transport", "selectedCandidatePairId", "CP0",
+        "dtlsState", "connected", "bytesSent", n * 193633L, "bytesReceived", n * 182335L));
+    for (int i = 0; i < 4; i++) {
+      put(map, stats(timestampUs, "CP" + i, "candidate-pair", "transportId", "T01",
+          "localCandidateId", "L" + i, "remoteCandidateId", "R" + i,
+          "state", i == 0 ? "succeeded" : "waiting", "nominated", i == 0,
+          "currentRoundTripTime", 0.041, "availableOutgoingBitrate", 1703000.0,
+          "availableIncomingBitrate", 2411000.0, "bytesSent", n * 193633L,
+          "bytesReceived", n * 182335L));
+    }
+    put(map, stats(timestampUs, "RTCMediaStreamTrack_sender_1", "track",
+        "trackIdentifier", VIDEO_TRACK_ID, "kind", "video", "frameWidth", 1280L));
+    return new RTCStatsReport(timestampUs, map);
+  }
+
+  private static RTCStats stats(long timestampUs, String id, String type,
+      Object... namesAndValues) {
+    Map<String, Object> members = new HashMap<>();
+    for (int i = 0; i < namesAndValues.length; i += 2) {
+      members.put((String) namesAndValues[i], namesAndValues[i + 1]);
+    }
+    return new RTCStats(timestampUs, type, id, members);
+  }
+
+  private static void put(Map<String, RTCStats> map, RTCStats stats) {
+    map.put(stats.getId(), stats);
+  }
+}
@@ -0,0 +1,116 @@
+package com.test.myownrtcapp;
+
+import androidx.annotation.Nullable;
+
+import org.webrtc.StatsReport;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The HUD formatting of legacy StatsReports that HudStatsFormatter replaced,
+ * kept as the baseline of HudStatsFormatterBenchmark.
+ */
+class LegacyHudStatsFormatter {
+  private final String videoTrackId;
+
+  /** Text for the HUD panels produced from one stats callback. */
+  static class HudText {
+    String bweStat;
+    String connectionStat;
+    String videoSendStat;
+    String videoRecvStat;
+    @Nullable String fps;
+    @Nullable String targetBitrate;
+    @Nullable String actualBitrate;
+  }
+
+  LegacyHudStatsFormatter(String videoTrackId) {
+    this.videoTrackId = videoTrackId;
+  }
+
+  static Map<String, String> getReportMap(StatsReport report) {
+    Map<String, String> reportMap = new HashMap<>();
+    for (StatsReport.Value value : report.values) {
+      reportMap.put(value.name, value.value);
+    }
+    return reportMap;
+  }
+
+  HudText format(final StatsReport[] reports) {
+    HudText text = new HudText();
+    StringBuilder bweStat = new StringBuilder();
+    StringBuilder connectionStat = new StringBuilder();
+    StringBuilder videoSendStat = new StringBuilder();
+    StringBuilder videoRecvStat = new StringBuilder();
+
+    for (StatsReport report : reports) {
+      if (report.type.equals("ssrc") && report.id.contains("ssrc") && report.id.contains("send")) {
+        // Send video statistics.
+        Map<String, String> reportMap = getReportMap(report);
+        String trackId = reportMap.get("googTrackId");
+        if (trackId != null && trackId.contains(videoTrackId)) {
+          text.fps = reportMap.get("googFrameRateSent");
+          videoSendStat.append(report.id).append("\n");
+          for (StatsReport.Value value : report.values) {
+            String name = value.name.replace("goog", "");
+            videoSendStat.append(name).append("=").append(value.value).append("\n");
+          }
+        }
+      } else if (report.type.equals("ssrc") && report.id.contains("ssrc")
+          && report.id.contains("recv")) {
+        // Receive video statistics.
+        Map<String, String> reportMap = getReportMap(report);
+        // Check if this stat is for video track.
+        String frameWidth = reportMap.get("googFrameWidthReceived");
+        if (frameWidth != null) {
+          videoRecvStat.append(report.id).append("\n");
+          for (StatsReport.Value value : report.values) {
+            String name = value.name.replace("goog", "");
+            videoRecvStat.append(name).append("=").append(value.value).append("\n");
+          }
+        }
+      } else if (report.id.equals("bweforvideo")) {
+        // BWE statistics.
+        Map<String, String> reportMap = getReportMap(report);
+        text.targetBitrate = reportMap.get("googTargetEncBitrate");
+        text.actualBitrate = reportMap.get("googActualEncBitrate");
+
+        bweStat.append(report.id).append("\n");
+        for (StatsReport.Value value : report.values) {
+          String name = value.name.replace("goog", "").replace("Available", "");
+          bweStat.append(name).append("=").append(value.value).append("\n");
+        }
+      } else if (report.type.equals("googCandidatePair")) {
+        // Connection statistics.
+        Map<String, String> reportMap = getReportMap(report);
+        String activeConnection = reportMap.get("googActiveConnection");
+        if (activeConnection != null && activeConnection.equals("true")) {
+          connectionStat.append(report.id).append("\n");
+          for (StatsReport.Value value : report.values) {
+            String name = value.name.replace("goog", "");
+            connectionStat.append(name).append("=").append(value.value).append("\n");
+          }
+        }
+      }
+    }
+    text.bweStat = bweStat.toString();
+    text.connectionStat = connectionStat.toString();
+    text.videoSendStat = videoSendStat.toString();
+    text.videoRecvStat = videoRecvStat.toString();
+    return text;
+  }
+
+  /** Appends the encoder summary (fps and bitrates) of |text| to |encoderStat|. */
+  static void appendEncoderStat(StringBuilder encoderStat, HudText text) {
+    if (text.fps != null) {
+      encoderStat.append("Fps:  ").append(text.fps).append("\n");
+    }
+    if (text.targetBitrate != null) {
+      encoderStat.append("Target BR: ").append(text.targetBitrate).append("\n");
+    }
+    if (text.actualBitrate != null) {
+      encoderStat.append("Actual BR: ").append(text.actualBitrate).append("\n");
+    }
+  }
+}
@@ -0,0 +1,66 @@
+package com.test.myownrtcapp;
+
+import java.io.BufferedReader;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+
+/**
+ * The stream based /proc/stat and cpufreq readers that CpuMonitor used
+ * before ProcFileReader, kept as the baseline of ProcFileReaderBenchmark.
+ * Logging is left out.
+ */
+class LegacyProcReaders {
+  static long readFreqFromFile(String fileName) {
+    long number = 0;
+    try (FileInputStream stream = new FileInputStream(fileName);
+         InputStreamReader streamReader = new InputStreamReader(stream, Charset.forName("UTF-8"));
+         BufferedReader reader = new BufferedReader(streamReader)) {
+      String line = reader.readLine();
+      number = parseLong(line);
+    } catch (IOException e) {
+      // CPU core is off. This is not an error.
+    }
+    return number;
+  }
+
+  // Returns user, system and idle time.
+  @SuppressWarnings("StringSplitter")
+  static long[] readProcStat() {
+    long userTime = 0;
+    long systemTime = 0;
+    long idleTime = 0;
+    try (FileInputStream stream = new FileInputStream("/proc/stat");
+         InputStreamReader streamReader = new InputStreamReader(stream, Charset.forName("UTF-8"));
+         BufferedReader reader = new BufferedReader(streamReader)) {
+      String line = reader.readLine();
+      String[] lines = line.split("\\s+");
+      int length = lines.length;
+      if (length >= 5) {
+        userTime = parseLong(lines[1]); // user
+        userTime += parseLong(lines[2]); // nice
+        systemTime = parseLong(lines[3]); // system
+        idleTime = parseLong(lines[4]); // idle
+      }
+      if (length >= 8) {
+        userTime += parseLong(lines[5]); // iowait
+        systemTime += parseLong(lines[6]); // irq
+        systemTime += parseLong(lines[7]); // softirq
+      }
+    } catch (Exception e) {
+      return null;
+    }
+    return new long[] {userTime, systemTime, idleTime};
+  }
+
+  private static long parseLong(String value) {
+    long number = 0;
+    try {
+      number = Long.parseLong(value);
+    } catch (NumberFormatException e) {
+      // Logged by CpuMonitor.
+    }
+    return number;
+  }
+}
@@ -0,0 +1,41 @@
+package com.test.myownrtcapp;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/** The per-sample smoothing done by CpuMonitor. */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class MovingAverageBenchmark {
+  // Same window as CpuMonitor.MOVING_AVERAGE_SAMPLES.
+  private static final int SAMPLES = 5;
+
+  private MovingAverage movingAverage;
+  private double value;
+
+  @Setup
+  public void setUp() {
+    movingAverage = new MovingAverage(SAMPLES);
+  }
+
+  @Benchmark
+  public double addValueAndAverage() {
+    value = value < 1.0 ? value + 0.01 : 0;
+    movingAverage.addValue(value);
+    return movingAverage.getAverage();
+  }
+}
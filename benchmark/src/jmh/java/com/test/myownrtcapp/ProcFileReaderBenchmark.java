@@ -0,0 +1,76 @@
+package com.test.myownrtcapp;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One CpuMonitor sample worth of file reads: the first line of /proc/stat
+ * and the current frequency of a CPU, stream based against kept-open files
+ * parsed in place. Needs a Linux host. Without cpufreq in sysfs, e.g. in a
+ * VM, a single number file of procfs stands in for scaling_cur_freq. Run
+ * with -prof gc to compare allocations.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ProcFileReaderBenchmark {
+  private static final String CUR_FREQ = "/sys/devices/system/cpu/cpu0/cpufreq/scaling_cur_freq";
+  private static final String NUMBER_FALLBACK = "/proc/sys/kernel/pid_max";
+
+  private String freqPath;
+  private ProcFileReader procStatReader;
+  private ProcFileReader freqReader;
+  private final long[] fields = new long[8];
+
+  @Setup
+  public void setUp() {
+    freqPath = new File(CUR_FREQ).canRead() ? CUR_FREQ : NUMBER_FALLBACK;
+    ByteBuffer buffer = ByteBuffer.allocate(ProcFileReader.BUFFER_SIZE);
+    procStatReader = new ProcFileReader("/proc/stat", buffer);
+    freqReader = new ProcFileReader(freqPath, buffer);
+  }
+
+  @TearDown
+  public void tearDown() {
+    procStatReader.close();
+    freqReader.close();
+  }
+
+  @Benchmark
+  public Object readProcStatLegacy() {
+    return LegacyProcReaders.readProcStat();
+  }
+
+  @Benchmark
+  public long readProcStat() {
+    procStatReader.read();
+    procStatReader.parseFields(0, fields);
+    return fields[1] + fields[2] + fields[3] + fields[4];
+  }
+
+  @Benchmark
+  public long readFreqLegacy() {
+    return LegacyProcReaders.readFreqFromFile(freqPath);
+  }
+
+  @Benchmark
+  public long readFreq() {
+    return freqReader.readLong();
+  }
+}
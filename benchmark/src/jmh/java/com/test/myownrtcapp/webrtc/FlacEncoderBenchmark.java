@@ -0,0 +1,92 @@
+package com.test.myownrtcapp.webrtc;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Encoding one second of recorded input audio with FlacEncoder, the work
+ * RecordedAudioArchiver does per second of a closed segment. The score in
+ * ms is the fraction of real time spent, e.g. 5 ms is 200x real time. The
+ * input is synthetic voiced speech: harmonics of a gliding pitch under a
+ * syllable envelope, plus background noise and pauses.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class FlacEncoderBenchmark {
+  private static final int SAMPLE_RATE = 48000;
+
+  private ByteBuffer mono;
+  private ByteBuffer stereo;
+  private FlacEncoder monoEncoder;
+  private FlacEncoder stereoEncoder;
+
+  @Setup
+  public void setUp() {
+    mono = speech(1);
+    stereo = speech(2);
+    monoEncoder = new FlacEncoder(SAMPLE_RATE, 1);
+    stereoEncoder = new FlacEncoder(SAMPLE_RATE, 2);
+  }
+
+  @Benchmark
+  public int encodeOneSecondMono() {
+    return encode(monoEncoder, mono, 1);
+  }
+
+  @Benchmark
+  public int encodeOneSecondStereo() {
+    return encode(stereoEncoder, stereo, 2);
+  }
+
+  // Returns the compressed size so that the work is not optimized away.
+  private static int encode(FlacEncoder encoder, ByteBuffer pcm, int channelCount) {
+    final int blockBytes = FlacEncoder.BLOCK_SIZE * channelCount * FlacEncoder.BYTES_PER_SAMPLE;
+    int size = 0;
+    for (int position = 0; position < pcm.capacity(); position += blockBytes) {
+      pcm.limit(Math.min(position + blockBytes, pcm.capacity())).position(position);
+      size += encoder.encodeBlock(pcm).remaining();
+    }
+    return size;
+  }
+
+  private static ByteBuffer speech(int channelCount) {
+    final Random random = new Random(42);
+    final ByteBuffer pcm = ByteBuffer.allocate(SAMPLE_RATE * channelCount * 2)
+        .order(ByteOrder.LITTLE_ENDIAN);
+    double phase = 0;
+    for (int i = 0; i < SAMPLE_RATE; i++) {
+      final double t = (double) i / SAMPLE_RATE;
+      // 4 syllables per second with a pause after every third.
+      final double syllable = (t * 4) % 1;
+      final double envelope = ((int) (t * 4) % 4 == 3) ? 0 : Math.sin(Math.PI * syllable);
+      phase += 2 * Math.PI * (120 + 40 * syllable) / SAMPLE_RATE;
+      double voiced = 0;
+      for (int harmonic = 1; harmonic <= 12; harmonic++) {
+        voiced += Math.sin(harmonic * phase) / harmonic;
+      }
+      for (int channel = 0; channel < channelCount; channel++) {
+        final double sample = 6000 * envelope * voiced + 60 * random.nextGaussian();
+        pcm.putShort((short) Math.max(-32768, Math.min(32767, Math.round(sample))));
+      }
+    }
+    pcm.flip();
+    return pcm;
+  }
+}
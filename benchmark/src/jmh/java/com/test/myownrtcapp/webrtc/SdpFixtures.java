@@ -0,0 +1,34 @@
+package com.test.myownrtcapp.webrtc;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+
+/** Loads the SDP blobs used by the benchmarks. */
+final class SdpFixtures {
+  private SdpFixtures() {}
+
+  // Chrome-style unified plan offer with the full audio and video codec list.
+  static String multiCodecOffer() {
+    return load("/multi_codec_offer.sdp");
+  }
+
+  private static String load(String resource) {
+    try (InputStream stream = SdpFixtures.class.getResourceAsStream(resource)) {
+      if (stream == null) {
+        throw new IllegalStateException("Missing benchmark resource " + resource);
+      }
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      byte[] buffer = new byte[4096];
+      int read;
+      while ((read = stream.read(buffer)) != -1) {
+        bytes.write(buffer, 0, read);
+      }
+      // Resources are stored with LF; SDP on the wire uses CRLF.
+      return new String(bytes.toByteArray(), Charset.forName("UTF-8")).replace("\n", "\r\n");
+    } catch (IOException e) {
+      throw new IllegalStateException("Failed to read benchmark resource " + resource, e);
+    }
+  }
+}
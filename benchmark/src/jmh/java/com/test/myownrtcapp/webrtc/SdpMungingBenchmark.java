@@ -0,0 +1,91 @@
+package com.test.myownrtcapp.webrtc;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * SDP munging done by PeerConnectionClient on every local and remote
+ * description: codec preference for audio and video plus the opus start
+ * bitrate, through the SdpMunging helpers PeerConnectionClient calls. The
+ * legacy* benchmarks run the previous string/regex implementation on the
+ * same input.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class SdpMungingBenchmark {
+  private static final int AUDIO_START_BITRATE_KBPS = 32;
+
+  @Param({"VP8", "H264"})
+  public String videoCodec;
+
+  private String offer;
+  private SdpDescription.MediaSection videoSection;
+  private String videoMLine;
+  private List<String> videoPayloadTypes;
+
+  @Setup
+  public void setUp() {
+    offer = SdpFixtures.multiCodecOffer();
+    videoSection = SdpDescription.parse(offer).findMediaSection("video");
+    videoMLine = videoSection.getMediaLine();
+    videoPayloadTypes = videoSection.findPayloadTypes(videoCodec);
+  }
+
+  @Benchmark
+  public String preferCodecLocal() {
+    SdpDescription sdp = SdpDescription.parse(offer);
+    SdpMunging.preferCodec(sdp, "ISAC", true);
+    SdpMunging.preferCodec(sdp, videoCodec, false);
+    return sdp.toString();
+  }
+
+  @Benchmark
+  public String legacyPreferCodecLocal() {
+    String sdp = LegacySdpMunging.preferCodec(offer, "ISAC", true);
+    return LegacySdpMunging.preferCodec(sdp, videoCodec, false);
+  }
+
+  @Benchmark
+  public String setRemoteDescriptionMunging() {
+    SdpDescription sdp = SdpDescription.parse(offer);
+    SdpMunging.preferCodec(sdp, "ISAC", true);
+    SdpMunging.preferCodec(sdp, videoCodec, false);
+    SdpMunging.setStartBitrate("opus", false, sdp, AUDIO_START_BITRATE_KBPS);
+    return sdp.toString();
+  }
+
+  @Benchmark
+  public String legacySetRemoteDescriptionMunging() {
+    String sdp = LegacySdpMunging.preferCodec(offer, "ISAC", true);
+    sdp = LegacySdpMunging.preferCodec(sdp, videoCodec, false);
+    return LegacySdpMunging.setStartBitrate("opus", false, sdp, AUDIO_START_BITRATE_KBPS);
+  }
+
+  // Reordering is idempotent, so the already parsed section can be reused.
+  @Benchmark
+  public String movePayloadTypesToFront() {
+    videoSection.movePayloadTypesToFront(videoPayloadTypes);
+    return videoSection.getMediaLine();
+  }
+
+  @Benchmark
+  public String legacyMovePayloadTypesToFront() {
+    return LegacySdpMunging.movePayloadTypesToFront(videoPayloadTypes, videoMLine);
+  }
+}
@@ -0,0 +1,96 @@
+package com.test.myownrtcapp.webrtc;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.webrtc.IceCandidate;
+import org.webrtc.SessionDescription;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JSON building and parsing done by WebRTCClient for offers, answers and
+ * trickled ICE candidates. Building includes the toString() that socket.io
+ * performs when the message is emitted.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class SignalingMessagesBenchmark {
+  private static final String ROOM_ID = "benchmark-room";
+  // Typical number of host/srflx candidates gathered in one batch window.
+  private static final int BATCH_SIZE = 8;
+
+  private SessionDescription offer;
+  private IceCandidate candidate;
+  private String answerMessage;
+  private String candidateMessage;
+  private List<IceCandidate> candidateBatch;
+
+  @Setup
+  public void setUp() {
+    offer = new SessionDescription(SessionDescription.Type.OFFER, SdpFixtures.multiCodecOffer());
+    candidate = new IceCandidate("0", 0,
+        "candidate:842163049 1 udp 1677729535 203.0.113.7 46154 typ srflx raddr 10.0.2.15 "
+            + "rport 46154 generation 0 ufrag Xk3r network-id 3 network-cost 10");
+    JSONObject answer = new JSONObject();
+    SignalingMessages.jsonPut(answer, "type", "answer");
+    SignalingMessages.jsonPut(answer, "sdp", offer.description);
+    answerMessage = answer.toString();
+    candidateMessage = SignalingMessages.toJsonCandidateMessage(ROOM_ID, candidate).toString();
+    candidateBatch = new ArrayList<>(BATCH_SIZE);
+    for (int i = 0; i < BATCH_SIZE; i++) {
+      candidateBatch.add(candidate);
+    }
+  }
+
+  @Benchmark
+  public String buildOffer() {
+    return SignalingMessages.toJsonSessionDescription(ROOM_ID, offer).toString();
+  }
+
+  @Benchmark
+  public SessionDescription parseAnswer() throws JSONException {
+    return SignalingMessages.toJavaSessionDescription(new JSONObject(answerMessage));
+  }
+
+  @Benchmark
+  public String buildCandidate() {
+    return SignalingMessages.toJsonCandidateMessage(ROOM_ID, candidate).toString();
+  }
+
+  @Benchmark
+  public IceCandidate parseCandidate() throws JSONException {
+    return SignalingMessages.toJavaCandidate(new JSONObject(candidateMessage));
+  }
+
+  // Per-candidate messages for a whole batch, i.e. batching disabled.
+  @Benchmark
+  public int buildCandidatesUnbatched() {
+    int length = 0;
+    for (IceCandidate batchCandidate : candidateBatch) {
+      length += SignalingMessages.toJsonCandidateMessage(ROOM_ID, batchCandidate)
+          .toString().length();
+    }
+    return length;
+  }
+
+  @Benchmark
+  public String buildCandidatesBatched() {
+    return SignalingMessages.toJsonCandidatesMessage(ROOM_ID, candidateBatch).toString();
+  }
+}
@@ -0,0 +1,19 @@
+package org.webrtc;
+
+/**
+ * JVM mirror of the org.webrtc.IceCandidate value class from the WebRTC
+ * Android library.
+ */
+public class IceCandidate {
+  public final String sdpMid;
+  public final int sdpMLineIndex;
+  public final String sdp;
+  public final String serverUrl;
+
+  public IceCandidate(String sdpMid, int sdpMLineIndex, String sdp) {
+    this.sdpMid = sdpMid;
+    this.sdpMLineIndex = sdpMLineIndex;
+    this.sdp = sdp;
+    this.serverUrl = "";
+  }
+}
@@ -0,0 +1,39 @@
+package org.webrtc;
+
+import java.util.Map;
+
+/**
+ * JVM mirror of the org.webrtc.RTCStats value class from the WebRTC Android
+ * library, so that stats mapping can be benchmarked without the native
+ * library.
+ */
+public class RTCStats {
+  private final long timestampUs;
+  private final String type;
+  private final String id;
+  private final Map<String, Object> members;
+
+  public RTCStats(long timestampUs, String type, String id, Map<String, Object> members) {
+    this.timestampUs = timestampUs;
+    this.type = type;
+    this.id = id;
+    this.members = members;
+  }
+
+  // Timestamp in micro seconds.
+  public double getTimestampUs() {
+    return timestampUs;
+  }
+
+  public String getType() {
+    return type;
+  }
+
+  public String getId() {
+    return id;
+  }
+
+  public Map<String, Object> getMembers() {
+    return members;
+  }
+}
@@ -0,0 +1,27 @@
+package org.webrtc;
+
+import java.util.Map;
+
+/**
+ * JVM mirror of the org.webrtc.RTCStatsReport value class from the WebRTC
+ * Android library, so that stats mapping can be benchmarked without the
+ * native library.
+ */
+public class RTCStatsReport {
+  private final long timestampUs;
+  private final Map<String, RTCStats> stats;
+
+  public RTCStatsReport(long timestampUs, Map<String, RTCStats> stats) {
+    this.timestampUs = timestampUs;
+    this.stats = stats;
+  }
+
+  // Timestamp in micro seconds.
+  public double getTimestampUs() {
+    return timestampUs;
+  }
+
+  public Map<String, RTCStats> getStatsMap() {
+    return stats;
+  }
+}
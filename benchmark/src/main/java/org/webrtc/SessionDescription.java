@@ -0,0 +1,31 @@
+package org.webrtc;
+
+import java.util.Locale;
+
+/**
+ * JVM mirror of the org.webrtc.SessionDescription value class from the WebRTC
+ * Android library.
+ */
+public class SessionDescription {
+  public enum Type {
+    OFFER,
+    PRANSWER,
+    ANSWER;
+
+    public String canonicalForm() {
+      return name().toLowerCase(Locale.US);
+    }
+
+    public static Type fromCanonicalForm(String canonical) {
+      return Type.valueOf(Type.class, canonical.toUpperCase(Locale.US));
+    }
+  }
+
+  public final Type type;
+  public final String description;
+
+  public SessionDescription(Type type, String description) {
+    this.type = type;
+    this.description = description;
+  }
+}
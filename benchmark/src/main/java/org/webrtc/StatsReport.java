@@ -0,0 +1,31 @@
+package org.webrtc;
+
+/**
+ * JVM mirror of the org.webrtc.StatsReport value class from the WebRTC
+ * Android library, so that stats formatting can be benchmarked without the
+ * native library.
+ */
+public class StatsReport {
+  public static class Value {
+    public final String name;
+    public final String value;
+
+    public Value(String name, String value) {
+      this.name = name;
+      this.value = value;
+    }
+  }
+
+  public final String id;
+  public final String type;
+  // Time since 1970-01-01T00:00:00Z in milliseconds.
+  public final double timestamp;
+  public final Value[] values;
+
+  public StatsReport(String id, String type, double timestamp, Value[] values) {
+    this.id = id;
+    this.type = type;
+    this.timestamp = timestamp;
+    this.values = values;
+  }
+}